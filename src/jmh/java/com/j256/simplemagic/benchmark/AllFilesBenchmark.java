@@ -0,0 +1,53 @@
+package com.j256.simplemagic.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.j256.simplemagic.ContentInfoUtil;
+
+/**
+ * Benchmark of {@link ContentInfoUtil#findMatch(byte[])} with all of the test files in each operation so there is one
+ * number to compare. This is also what {@link ThreadScaling} runs with more threads.
+ *
+ * @author graywatson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllFilesBenchmark {
+
+	private ContentInfoUtil util;
+	private byte[][] fileBytes;
+
+	@Setup
+	public void setup() throws IOException {
+		util = new ContentInfoUtil();
+		String[] fileNames = BenchmarkUtils.listFileNames();
+		fileBytes = new byte[fileNames.length][];
+		for (int i = 0; i < fileNames.length; i++) {
+			fileBytes[i] = BenchmarkUtils.readFileBytes(fileNames[i]);
+		}
+	}
+
+	@Benchmark
+	public void findMatchAllFiles(Blackhole blackhole) {
+		for (byte[] bytes : fileBytes) {
+			blackhole.consume(util.findMatch(bytes));
+		}
+	}
+}
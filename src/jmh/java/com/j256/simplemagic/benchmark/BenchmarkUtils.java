@@ -0,0 +1,92 @@
+package com.j256.simplemagic.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+
+import com.j256.simplemagic.ContentInfoUtil;
+
+/**
+ * Utility methods for the benchmarks. It is public for the benchmarks of package-private classes in other packages.
+ *
+ * @author graywatson
+ */
+public class BenchmarkUtils {
+
+	private BenchmarkUtils() {
+		// only for static methods
+	}
+
+	/**
+	 * Return the names of the test files in src/test/resources/files.
+	 */
+	public static String[] listFileNames() throws IOException {
+		URL url = BenchmarkUtils.class.getResource("/files");
+		if (url == null) {
+			throw new IOException("Test files not found in class-path");
+		}
+		String[] names;
+		try {
+			names = new File(url.toURI()).list();
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid test files URL: " + url, e);
+		}
+		if (names == null) {
+			throw new IOException("Test files are not in a directory: " + url);
+		}
+		Arrays.sort(names);
+		return names;
+	}
+
+	/**
+	 * Read the start of the test file the same way as {@link ContentInfoUtil#findMatch(File)}.
+	 */
+	public static byte[] readFileBytes(String fileName) throws IOException {
+		byte[] bytes = readResource("/files/" + fileName);
+		if (bytes.length > ContentInfoUtil.DEFAULT_READ_SIZE) {
+			bytes = Arrays.copyOf(bytes, ContentInfoUtil.DEFAULT_READ_SIZE);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Copy the test file to a temporary file so we are reading from the file-system and not a jar.
+	 */
+	static File copyToTempFile(String fileName) throws IOException {
+		File file = File.createTempFile("simplemagic", "-" + fileName);
+		file.deleteOnExit();
+		OutputStream output = new FileOutputStream(file);
+		try {
+			output.write(readResource("/files/" + fileName));
+		} finally {
+			output.close();
+		}
+		return file;
+	}
+
+	public static byte[] readResource(String resource) throws IOException {
+		InputStream input = BenchmarkUtils.class.getResourceAsStream(resource);
+		if (input == null) {
+			throw new IOException("Resource not found in class-path: " + resource);
+		}
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			while (true) {
+				int numRead = input.read(buffer);
+				if (numRead < 0) {
+					return output.toByteArray();
+				}
+				output.write(buffer, 0, numRead);
+			}
+		} finally {
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.j256.simplemagic.benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.j256.simplemagic.ContentInfo;
+import com.j256.simplemagic.ContentInfoUtil;
+import com.j256.simplemagic.entries.MagicEntries;
+
+/**
+ * Benchmarks of {@link MagicEntries#findMatch(byte[])} with the tests of the entries compiled and interpreted.
+ *
+ * @author graywatson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledTestsBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean compileTests;
+
+	private MagicEntries entries;
+	private byte[][] fileBytes;
+	private byte[] binaryBytes;
+
+	@Setup
+	public void setup() throws IOException {
+		entries = new MagicEntries();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new ByteArrayInputStream(BenchmarkUtils.readResource("/magic.gz"))), "UTF-8"));
+		try {
+			entries.readEntries(reader, null);
+		} finally {
+			reader.close();
+		}
+		entries.setCompileTests(compileTests);
+		entries.optimizeFirstBytes();
+		String[] fileNames = BenchmarkUtils.listFileNames();
+		fileBytes = new byte[fileNames.length][];
+		for (int i = 0; i < fileNames.length; i++) {
+			fileBytes[i] = BenchmarkUtils.readFileBytes(fileNames[i]);
+		}
+		// fixed seed so each run is the same
+		binaryBytes = new byte[ContentInfoUtil.DEFAULT_READ_SIZE];
+		new Random(1234567890L).nextBytes(binaryBytes);
+	}
+
+	@Benchmark
+	public void findMatchAllFiles(Blackhole blackhole) {
+		for (byte[] bytes : fileBytes) {
+			blackhole.consume(entries.findMatch(bytes));
+		}
+	}
+
+	@Benchmark
+	public ContentInfo findMatchBinary() {
+		return entries.findMatch(binaryBytes);
+	}
+}
@@ -0,0 +1,58 @@
+package com.j256.simplemagic.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.j256.simplemagic.ContentInfo;
+import com.j256.simplemagic.ContentInfoUtil;
+
+/**
+ * Benchmark of {@link ContentInfoUtil#findMatch(File)} which includes opening and reading the file.
+ *
+ * @author graywatson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileBenchmark {
+
+	/** small text, small binary, and files larger than the read-size */
+	@Param({ "1.xml", "x.gif", "exif2.jpg", "x.pdf" })
+	public String file;
+
+	private ContentInfoUtil util;
+	private File tempFile;
+
+	@Setup
+	public void setup() throws IOException {
+		util = new ContentInfoUtil();
+		tempFile = BenchmarkUtils.copyToTempFile(file);
+	}
+
+	@TearDown
+	public void tearDown() {
+		tempFile.delete();
+	}
+
+	@Benchmark
+	public ContentInfo findMatchFile() throws IOException {
+		return util.findMatch(tempFile);
+	}
+}
@@ -0,0 +1,55 @@
+package com.j256.simplemagic.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.j256.simplemagic.ContentInfo;
+import com.j256.simplemagic.ContentInfoUtil;
+
+/**
+ * Benchmarks of {@link ContentInfoUtil#findMatch(byte[])} with the start of each of the test files.
+ *
+ * @author graywatson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindMatchBenchmark {
+
+	/** the files in src/test/resources/files */
+	@Param({ "1.html", "1.xml", "2.html", "2.xml", "3.html", "3.xml", "4.html", "dos.exe", "dotnet.exe", "exif.jpg",
+			"exif2.jpg", "jfif.jpg", "tiff.jpg", "windows.exe", "x.7z", "x.ai", "x.aiff", "x.amr", "x.bz2", "x.class",
+			"x.doc", "x.docx", "x.fits", "x.gif", "x.gz", "x.javaserial", "x.jp2", "x.m4v", "x.mp3", "x.mpg", "x.nuv",
+			"x.odt", "x.pdf", "x.perl", "x.png", "x.ppt", "x.pptx", "x.rtf", "x.svg", "x.tiff", "x.wav", "x.webm",
+			"x.webp", "x.xls", "x.xlsx", "x.zip" })
+	public String file;
+
+	private ContentInfoUtil util;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		util = new ContentInfoUtil();
+		bytes = BenchmarkUtils.readFileBytes(file);
+	}
+
+	@Benchmark
+	public ContentInfo findMatch() {
+		return util.findMatch(bytes);
+	}
+}
@@ -0,0 +1,97 @@
+package com.j256.simplemagic.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.j256.simplemagic.ContentInfo;
+import com.j256.simplemagic.ContentInfoUtil;
+
+/**
+ * Benchmarks of {@link ContentInfoUtil#findMatch(byte[])} with executable formats whose entries mostly extract and
+ * compare numbers. There are no ELF or Mach-O test files so we build their headers.
+ *
+ * @author graywatson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericFormatBenchmark {
+
+	@Param({ "elf", "macho", "pe", "class" })
+	public String format;
+
+	private ContentInfoUtil util;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		util = new ContentInfoUtil();
+		if (format.equals("elf")) {
+			bytes = elfHeader();
+		} else if (format.equals("macho")) {
+			bytes = machOHeader();
+		} else if (format.equals("pe")) {
+			bytes = BenchmarkUtils.readFileBytes("windows.exe");
+		} else if (format.equals("class")) {
+			bytes = BenchmarkUtils.readFileBytes("x.class");
+		} else {
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+	}
+
+	@Benchmark
+	public ContentInfo findMatch() {
+		return util.findMatch(bytes);
+	}
+
+	@Benchmark
+	public String findMimeType() {
+		return util.findMimeType(bytes);
+	}
+
+	/**
+	 * Header of a 64-bit little-endian x86-64 ELF executable.
+	 */
+	private static byte[] elfHeader() {
+		ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(new byte[] { 0x7F, 'E', 'L', 'F', 2, 1, 1, 0 });
+		buffer.position(16);
+		// type executable, machine x86-64, version
+		buffer.putShort((short) 2).putShort((short) 62).putInt(1);
+		// entry, program-header offset, section-header offset
+		buffer.putLong(0x401000L).putLong(64).putLong(512);
+		// flags, header size, program-header entry size and number, section-header entry size, number, string index
+		buffer.putInt(0).putShort((short) 64).putShort((short) 56).putShort((short) 2).putShort((short) 64);
+		buffer.putShort((short) 5).putShort((short) 4);
+		return buffer.array();
+	}
+
+	/**
+	 * Header of a 32-bit i386 Mach-O executable.
+	 */
+	private static byte[] machOHeader() {
+		ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+		// magic, cpu type i386, cpu sub-type, file type executable
+		buffer.putInt(0xFEEDFACE).putInt(7).putInt(3).putInt(2);
+		// number and size of the load commands, flags
+		buffer.putInt(16).putInt(1368).putInt(0x00200085);
+		return buffer.array();
+	}
+}
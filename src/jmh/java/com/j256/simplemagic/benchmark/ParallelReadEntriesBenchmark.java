@@ -0,0 +1,67 @@
+package com.j256.simplemagic.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.j256.simplemagic.entries.MagicEntries;
+
+/**
+ * Benchmarks of parsing the magic entries with {@link MagicEntries#readEntries(BufferedReader,
+ * com.j256.simplemagic.ContentInfoUtil.ErrorCallBack, ForkJoinPool)} on a pool with different numbers of threads.
+ *
+ * @author graywatson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelReadEntriesBenchmark {
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	private String magicText;
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setup() throws IOException {
+		String magic = new String(BenchmarkUtils.readResource("/magic"), "UTF-8");
+		// a couple copies of our magic file is around the size of the libmagic Magdir
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 4; i++) {
+			sb.append(magic);
+		}
+		magicText = sb.toString();
+		pool = new ForkJoinPool(threads);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public MagicEntries readEntries() throws IOException {
+		MagicEntries entries = new MagicEntries();
+		entries.readEntries(new BufferedReader(new StringReader(magicText)), null, pool);
+		return entries;
+	}
+}
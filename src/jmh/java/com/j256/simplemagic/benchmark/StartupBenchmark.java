@@ -0,0 +1,81 @@
+package com.j256.simplemagic.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.j256.simplemagic.ContentInfoUtil;
+
+/**
+ * Benchmarks of loading the magic entries. The cold one is the first {@link ContentInfoUtil#ContentInfoUtil()} in a new
+ * JVM which is what short-lived processes see. The others load the internal entries again after warming up.
+ *
+ * @author graywatson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StartupBenchmark {
+
+	private byte[] compiledBytes;
+	private String magicText;
+
+	@Setup
+	public void setup() throws IOException {
+		compiledBytes = BenchmarkUtils.readResource("/magic.db");
+		byte[] gzipBytes = BenchmarkUtils.readResource("/magic.gz");
+		GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(gzipBytes));
+		try {
+			StringBuilder sb = new StringBuilder();
+			byte[] buffer = new byte[4096];
+			while (true) {
+				int numRead = input.read(buffer);
+				if (numRead < 0) {
+					break;
+				}
+				sb.append(new String(buffer, 0, numRead, "ISO-8859-1"));
+			}
+			magicText = sb.toString();
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Each fork is a new JVM which measures this once.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public ContentInfoUtil coldDefaultConstructor() {
+		return new ContentInfoUtil();
+	}
+
+	@Benchmark
+	public ContentInfoUtil loadCompiled() throws IOException {
+		return new ContentInfoUtil(new ByteArrayInputStream(compiledBytes), null, null);
+	}
+
+	@Benchmark
+	public ContentInfoUtil loadText() throws IOException {
+		return new ContentInfoUtil(new StringReader(magicText));
+	}
+}
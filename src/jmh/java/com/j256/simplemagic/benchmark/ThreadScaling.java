@@ -0,0 +1,55 @@
+package com.j256.simplemagic.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the {@link AllFilesBenchmark} with 1, 2, 4, ... up to the number of processors threads sharing the same
+ * {@link com.j256.simplemagic.ContentInfoUtil} and prints the throughput and allocation rate of each.
+ *
+ * @author graywatson
+ */
+public class ThreadScaling {
+
+	public static void main(String[] args) throws RunnerException {
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		for (int threads = 1; threads < maxThreads; threads *= 2) {
+			threadCounts.add(threads);
+		}
+		threadCounts.add(maxThreads);
+
+		StringBuilder sb = new StringBuilder();
+		for (int threads : threadCounts) {
+			Options options = new OptionsBuilder().include(AllFilesBenchmark.class.getName())
+					.mode(Mode.Throughput)
+					.timeUnit(TimeUnit.SECONDS)
+					.threads(threads)
+					.addProfiler(GCProfiler.class)
+					.build();
+			Collection<RunResult> results = new Runner(options).run();
+			for (RunResult result : results) {
+				Result<?> primary = result.getPrimaryResult();
+				Result<?> allocRate = result.getSecondaryResults().get("gc.alloc.rate");
+				sb.append(String.format("%3d threads: %12.1f %s", threads, primary.getScore(), primary.getScoreUnit()));
+				if (allocRate != null) {
+					sb.append(String.format(", allocating %.1f %s", allocRate.getScore(), allocRate.getScoreUnit()));
+				}
+				sb.append('\n');
+			}
+		}
+		System.out.println();
+		System.out.print(sb);
+	}
+}
@@ -0,0 +1,63 @@
+package com.j256.simplemagic.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.j256.simplemagic.ContentInfo;
+import com.j256.simplemagic.ContentInfoUtil;
+
+/**
+ * Benchmarks of {@link ContentInfoUtil#findMatch(byte[])} with a full read-size of content which doesn't match any of
+ * the specific entries so all of the rules are tried.
+ *
+ * @author graywatson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorstCaseBenchmark {
+
+	private static final String TEXT_LINE = "nothing special about this line of text 0123456789\n";
+
+	private ContentInfoUtil util;
+	private byte[] textBytes;
+	private byte[] binaryBytes;
+
+	@Setup
+	public void setup() {
+		util = new ContentInfoUtil();
+		StringBuilder sb = new StringBuilder(ContentInfoUtil.DEFAULT_READ_SIZE + TEXT_LINE.length());
+		while (sb.length() < ContentInfoUtil.DEFAULT_READ_SIZE) {
+			sb.append(TEXT_LINE);
+		}
+		sb.setLength(ContentInfoUtil.DEFAULT_READ_SIZE);
+		textBytes = sb.toString().getBytes();
+		// fixed seed so each run is the same
+		binaryBytes = new byte[ContentInfoUtil.DEFAULT_READ_SIZE];
+		new Random(1234567890L).nextBytes(binaryBytes);
+	}
+
+	@Benchmark
+	public ContentInfo findMatchText() {
+		return util.findMatch(textBytes);
+	}
+
+	@Benchmark
+	public ContentInfo findMatchBinary() {
+		return util.findMatch(binaryBytes);
+	}
+}
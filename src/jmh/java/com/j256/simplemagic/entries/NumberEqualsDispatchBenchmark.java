@@ -0,0 +1,85 @@
+package com.j256.simplemagic.entries;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.j256.simplemagic.benchmark.BenchmarkUtils;
+
+/**
+ * Benchmarks of the internal number entries that are grouped by the {@link NumberEqualsDispatch} evaluated one at a
+ * time and dispatched. It is in the entries package because the dispatch is package-private.
+ *
+ * @author graywatson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumberEqualsDispatchBenchmark {
+
+	private List<MagicEntry> entryList;
+	private NumberEqualsDispatch dispatch;
+	private int[] entryIndexes;
+	private byte[][] fileBytes;
+	private long[] candidates;
+
+	@Setup
+	public void setup() throws IOException {
+		MagicEntries entries = new MagicEntries();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new ByteArrayInputStream(BenchmarkUtils.readResource("/magic.gz"))), "UTF-8"));
+		try {
+			entries.readEntries(reader, null);
+		} finally {
+			reader.close();
+		}
+		entries.optimizeFirstBytes();
+		entryList = entries.getEntryList();
+		dispatch = new NumberEqualsDispatch(entryList);
+		entryIndexes = dispatch.getEntryIndexes();
+		String[] fileNames = BenchmarkUtils.listFileNames();
+		fileBytes = new byte[fileNames.length][];
+		for (int i = 0; i < fileNames.length; i++) {
+			fileBytes[i] = BenchmarkUtils.readFileBytes(fileNames[i]);
+		}
+		candidates = new long[(entryList.size() + 63) / 64];
+	}
+
+	@Benchmark
+	public void evaluateEach(Blackhole blackhole) {
+		for (byte[] bytes : fileBytes) {
+			for (int entryIndex : entryIndexes) {
+				blackhole.consume(entryList.get(entryIndex).matchBytes(bytes));
+			}
+		}
+	}
+
+	@Benchmark
+	public void dispatch(Blackhole blackhole) {
+		for (byte[] bytes : fileBytes) {
+			Arrays.fill(candidates, -1L);
+			dispatch.filterCandidates(bytes, candidates);
+			blackhole.consume(candidates);
+		}
+	}
+}
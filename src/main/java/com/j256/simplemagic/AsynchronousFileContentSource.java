@@ -0,0 +1,161 @@
+package com.j256.simplemagic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Content source for an asynchronous file channel. The start of the file is read with {@link #preload(int)} without
+ * blocking a thread and then the reads of those bytes come from memory. The entries that test past them wait for
+ * positional reads of just the bytes they need which is rare with a preload of the rules read size.
+ *
+ * <p>
+ * <b>NOTE:</b> This is not thread-safe. It is meant to be used for one match at a time after the preload is done.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class AsynchronousFileContentSource implements ContentSource, Closeable {
+
+	private final AsynchronousFileChannel channel;
+	private final long length;
+	private byte[] head = new byte[0];
+	private int headLength;
+	private long bytesRead;
+
+	/**
+	 * Read from the channel which is closed when this source is closed.
+	 */
+	public AsynchronousFileContentSource(AsynchronousFileChannel channel) throws IOException {
+		this.channel = channel;
+		this.length = channel.size();
+	}
+
+	/**
+	 * Start reading the bytes up to the preload-length, or the end of the file, from the start of the file. The
+	 * returned future is completed, by one of the channel's threads, once they have been read.
+	 */
+	public CompletableFuture<Void> preload(int preloadLength) {
+		CompletableFuture<Void> future = new CompletableFuture<Void>();
+		int toRead = (int) Math.min(preloadLength, length);
+		if (toRead <= headLength) {
+			future.complete(null);
+			return future;
+		}
+		head = new byte[toRead];
+		headLength = 0;
+		ByteBuffer buffer = ByteBuffer.wrap(head);
+		try {
+			channel.read(buffer, 0, buffer, new PreloadHandler(future));
+		} catch (RuntimeException e) {
+			// channel closed or the like
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	@Override
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public int read(long position, byte[] buffer, int offset, int readLength) throws IOException {
+		if (position < 0) {
+			throw new IllegalArgumentException("Position cannot be negative: " + position);
+		}
+		if (position >= length) {
+			return -1;
+		}
+		int toRead = (int) Math.min(readLength, length - position);
+		int numRead = 0;
+		if (position < headLength) {
+			numRead = (int) Math.min(toRead, headLength - position);
+			System.arraycopy(head, (int) position, buffer, offset, numRead);
+		}
+		if (numRead < toRead) {
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset + numRead, toRead - numRead);
+			while (byteBuffer.hasRemaining()) {
+				int count = waitForRead(byteBuffer, position + numRead);
+				if (count < 0) {
+					// the file got shorter after we were opened
+					break;
+				}
+				numRead += count;
+				bytesRead += count;
+			}
+		}
+		if (numRead == 0) {
+			return -1;
+		} else {
+			return numRead;
+		}
+	}
+
+	/**
+	 * Return the number of bytes that have been read from the file.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private int waitForRead(ByteBuffer buffer, long position) throws IOException {
+		try {
+			return channel.read(buffer, position).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading at position " + position);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else {
+				throw new IOException("Could not read at position " + position, e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Keeps reading the start of the file until the buffer is full or we reach the end of the file.
+	 */
+	private class PreloadHandler implements CompletionHandler<Integer, ByteBuffer> {
+
+		private final CompletableFuture<Void> future;
+
+		public PreloadHandler(CompletableFuture<Void> future) {
+			this.future = future;
+		}
+
+		@Override
+		public void completed(Integer result, ByteBuffer buffer) {
+			if (result > 0) {
+				bytesRead += result;
+			}
+			if (result < 0 || !buffer.hasRemaining()) {
+				// a file that got shorter after we were opened just has fewer bytes in memory
+				headLength = buffer.position();
+				future.complete(null);
+				return;
+			}
+			try {
+				channel.read(buffer, buffer.position(), buffer, this);
+			} catch (RuntimeException e) {
+				failed(e, buffer);
+			}
+		}
+
+		@Override
+		public void failed(Throwable th, ByteBuffer buffer) {
+			future.completeExceptionally(th);
+		}
+	}
+}
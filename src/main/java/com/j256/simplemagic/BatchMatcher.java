@@ -0,0 +1,240 @@
+package com.j256.simplemagic;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.j256.simplemagic.ContentInfoUtil.MatchCallBack;
+
+/**
+ * Finds the matches for a batch of files for {@link ContentInfoUtil#findMatches(Iterable, int, int, MatchCallBack)}.
+ * The starts of the files are read by the I/O threads and then matched by the CPU threads so the disks are kept busy
+ * while the matching uses the cores. Only a limited number of files are in progress at once so the paths can come from
+ * a lazy iterable of any size.
+ *
+ * @author graywatson
+ */
+class BatchMatcher {
+
+	private static final AtomicInteger batchCount = new AtomicInteger();
+
+	private final ContentInfoUtil contentInfoUtil;
+	private final int preloadSize;
+	/** may be null if the results are not cached */
+	private final FileResultCache resultCache;
+	private final ExecutorService ioExecutor;
+	private final ExecutorService cpuExecutor;
+	private final int maxInProgress;
+	/** the results are handed back to the calling thread so the call-back doesn't need to be thread-safe */
+	private final BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+	private final BatchStats stats = new BatchStats();
+
+	BatchMatcher(ContentInfoUtil contentInfoUtil, int preloadSize, FileResultCache resultCache, int ioThreads,
+			int cpuThreads) {
+		if (ioThreads <= 0) {
+			throw new IllegalArgumentException("I/O threads must be positive: " + ioThreads);
+		}
+		if (cpuThreads <= 0) {
+			throw new IllegalArgumentException("CPU threads must be positive: " + cpuThreads);
+		}
+		this.contentInfoUtil = contentInfoUtil;
+		this.preloadSize = preloadSize;
+		this.resultCache = resultCache;
+		int batchNum = batchCount.incrementAndGet();
+		this.ioExecutor = Executors.newFixedThreadPool(ioThreads, new BatchThreadFactory("io", batchNum));
+		this.cpuExecutor = Executors.newFixedThreadPool(cpuThreads, new BatchThreadFactory("cpu", batchNum));
+		// enough to keep all of the threads busy while the caller handles the results
+		this.maxInProgress = (ioThreads + cpuThreads) * 2;
+	}
+
+	/**
+	 * Find the matches for the paths and give them to the call-back from the calling thread in the order that they
+	 * finish.
+	 */
+	BatchStats findMatches(Iterable<Path> paths, MatchCallBack callBack) throws InterruptedException {
+		long startNanos = System.nanoTime();
+		boolean finished = false;
+		try {
+			int inProgress = 0;
+			Iterator<Path> iterator = paths.iterator();
+			while (iterator.hasNext()) {
+				while (inProgress >= maxInProgress) {
+					handleResult(results.take(), callBack);
+					inProgress--;
+				}
+				ioExecutor.execute(new ReadTask(iterator.next()));
+				inProgress++;
+				// handle any results that are ready so the call-back sees them as soon as possible
+				for (Result result = results.poll(); result != null; result = results.poll()) {
+					handleResult(result, callBack);
+					inProgress--;
+				}
+			}
+			while (inProgress > 0) {
+				handleResult(results.take(), callBack);
+				inProgress--;
+			}
+			stats.setElapsedNanos(System.nanoTime() - startNanos);
+			finished = true;
+			return stats;
+		} finally {
+			if (finished) {
+				ioExecutor.shutdown();
+				cpuExecutor.shutdown();
+			} else {
+				ioExecutor.shutdownNow();
+				// close the files that were read but will now never be matched
+				for (Runnable runnable : cpuExecutor.shutdownNow()) {
+					if (runnable instanceof MatchTask) {
+						ContentInfoUtil.closeQuietly(((MatchTask) runnable).source);
+					}
+				}
+			}
+		}
+	}
+
+	private void handleResult(Result result, MatchCallBack callBack) {
+		if (result.throwable != null) {
+			// a bug, or something like running out of memory, rather than a problem with the file so we don't hide it
+			if (result.throwable instanceof RuntimeException) {
+				throw (RuntimeException) result.throwable;
+			} else if (result.throwable instanceof Error) {
+				throw (Error) result.throwable;
+			} else {
+				throw new RuntimeException("Could not match " + result.path, result.throwable);
+			}
+		}
+		stats.addFile(result.ioException != null);
+		if (result.ioException != null) {
+			callBack.error(result.path, result.ioException);
+		} else {
+			callBack.match(result.path, result.info);
+		}
+	}
+
+	/**
+	 * Opens the file and reads its start before handing it to the CPU threads.
+	 */
+	private class ReadTask implements Runnable {
+
+		private final Path path;
+
+		public ReadTask(Path path) {
+			this.path = path;
+		}
+
+		@Override
+		public void run() {
+			long startNanos = System.nanoTime();
+			FileChannelContentSource source = null;
+			try {
+				FileResultCache.Key key = null;
+				if (resultCache != null) {
+					key = new FileResultCache.Key(path, Files.readAttributes(path, BasicFileAttributes.class));
+					FileResultCache.CachedResult cached = resultCache.get(key);
+					if (cached != null) {
+						stats.addRead(0, System.nanoTime() - startNanos);
+						results.add(new Result(path, cached.info, null, null));
+						return;
+					}
+				}
+				source = new FileChannelContentSource(path);
+				source.preload(preloadSize);
+				stats.addRead(source.getBytesRead(), System.nanoTime() - startNanos);
+				cpuExecutor.execute(new MatchTask(path, key, source));
+				source = null;
+			} catch (IOException e) {
+				results.add(new Result(path, null, e, null));
+			} catch (Throwable th) {
+				// anything else would leave the calling thread waiting forever for the result
+				results.add(new Result(path, null, null, th));
+			} finally {
+				ContentInfoUtil.closeQuietly(source);
+			}
+		}
+	}
+
+	/**
+	 * Matches the start of the file which has already been read. Entries that look further into the file still read
+	 * the bytes that they need.
+	 */
+	private class MatchTask implements Runnable {
+
+		private final Path path;
+		/** null if the result is not cached */
+		private final FileResultCache.Key key;
+		private final FileChannelContentSource source;
+
+		public MatchTask(Path path, FileResultCache.Key key, FileChannelContentSource source) {
+			this.path = path;
+			this.key = key;
+			this.source = source;
+		}
+
+		@Override
+		public void run() {
+			long startNanos = System.nanoTime();
+			long startBytesRead = source.getBytesRead();
+			try {
+				ContentInfo info = contentInfoUtil.findMatch(source);
+				stats.addMatch(source.getBytesRead() - startBytesRead, System.nanoTime() - startNanos);
+				if (key != null) {
+					resultCache.put(key, info);
+				}
+				results.add(new Result(path, info, null, null));
+			} catch (IOException e) {
+				results.add(new Result(path, null, e, null));
+			} catch (Throwable th) {
+				// anything else would leave the calling thread waiting forever for the result
+				results.add(new Result(path, null, null, th));
+			} finally {
+				ContentInfoUtil.closeQuietly(source);
+			}
+		}
+	}
+
+	/**
+	 * Result of one of the paths.
+	 */
+	private static class Result {
+		final Path path;
+		final ContentInfo info;
+		final IOException ioException;
+		final Throwable throwable;
+
+		public Result(Path path, ContentInfo info, IOException ioException, Throwable throwable) {
+			this.path = path;
+			this.info = info;
+			this.ioException = ioException;
+			this.throwable = throwable;
+		}
+	}
+
+	/**
+	 * Makes daemon threads with names that say which batch and pool they are from.
+	 */
+	private static class BatchThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		public BatchThreadFactory(String pool, int batchNum) {
+			this.prefix = "simplemagic-batch-" + batchNum + "-" + pool + "-";
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.j256.simplemagic;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics about a batch of files that were matched by
+ * {@link ContentInfoUtil#findMatches(Iterable, int, int, com.j256.simplemagic.ContentInfoUtil.MatchCallBack)}. The
+ * read and match times are added up across all of the threads so they can be more than the elapsed time.
+ *
+ * @author graywatson
+ */
+public class BatchStats {
+
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong readNanos = new AtomicLong();
+	private final AtomicLong matchNanos = new AtomicLong();
+	private long fileCount;
+	private long errorCount;
+	private long elapsedNanos;
+
+	/**
+	 * Return the number of files that were matched, including the ones that had errors.
+	 */
+	public long getFileCount() {
+		return fileCount;
+	}
+
+	/**
+	 * Return the number of files that could not be read.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Return the number of bytes that were read from the files.
+	 */
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * Return the time that the I/O threads spent opening the files and reading their starts.
+	 */
+	public long getReadNanos() {
+		return readNanos.get();
+	}
+
+	/**
+	 * Return the time that the CPU threads spent matching the files. This includes reading the bytes that entries
+	 * further into the files need.
+	 */
+	public long getMatchNanos() {
+		return matchNanos.get();
+	}
+
+	/**
+	 * Return the time from the start of the batch until all of the files were matched.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Return the number of files matched per second.
+	 */
+	public double getFilesPerSecond() {
+		if (elapsedNanos == 0) {
+			return 0;
+		} else {
+			return fileCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return fileCount + " files (" + errorCount + " errors) in " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos)
+				+ "ms, " + Math.round(getFilesPerSecond()) + " files/sec, " + getBytesRead() + " bytes read, "
+				+ TimeUnit.NANOSECONDS.toMillis(getReadNanos()) + "ms reading, "
+				+ TimeUnit.NANOSECONDS.toMillis(getMatchNanos()) + "ms matching";
+	}
+
+	void addFile(boolean error) {
+		fileCount++;
+		if (error) {
+			errorCount++;
+		}
+	}
+
+	void addRead(long bytes, long nanos) {
+		bytesRead.addAndGet(bytes);
+		readNanos.addAndGet(nanos);
+	}
+
+	void addMatch(long bytes, long nanos) {
+		bytesRead.addAndGet(bytes);
+		matchNanos.addAndGet(nanos);
+	}
+
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+}
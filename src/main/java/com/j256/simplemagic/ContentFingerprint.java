@@ -0,0 +1,125 @@
+package com.j256.simplemagic;
+
+import java.io.Serializable;
+
+/**
+ * Fingerprint of the bytes from the start of some content that were matched which is the key of a
+ * {@link ContentInfoCache}. It is a fast 64-bit non-cryptographic hash of the bytes along with the number of them and
+ * whether there was more content after them. Different bytes with the same fingerprint are very unlikely but are not
+ * impossible so this should not be used with content that is crafted to fool the matching.
+ *
+ * @author graywatson
+ */
+public class ContentFingerprint implements Serializable {
+
+	private static final long serialVersionUID = -2385610528447412975L;
+
+	private static final long SEED = 0x9E3779B97F4A7C15L;
+	private static final long C1 = 0x87C37B91114253D5L;
+	private static final long C2 = 0x4CF5AD432745937FL;
+
+	private final long hash;
+	private final int length;
+	private final boolean truncated;
+
+	public ContentFingerprint(long hash, int length, boolean truncated) {
+		this.hash = hash;
+		this.length = length;
+		this.truncated = truncated;
+	}
+
+	/**
+	 * Return the fingerprint of the length bytes in the array from the offset. Truncated is true if the bytes are only
+	 * the start of the content.
+	 */
+	public static ContentFingerprint fromBytes(byte[] bytes, int offset, int length, boolean truncated) {
+		return new ContentFingerprint(hashBytes(bytes, offset, length), length, truncated);
+	}
+
+	/**
+	 * Return the hash of the bytes.
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Return the number of bytes that were hashed.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Return true if there was more content after the bytes that were hashed.
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		ContentFingerprint other = (ContentFingerprint) obj;
+		return (hash == other.hash && length == other.length && truncated == other.truncated);
+	}
+
+	/**
+	 * Returns the fingerprint as a string which can be used as the key in an external store.
+	 */
+	@Override
+	public String toString() {
+		return Long.toHexString(hash) + ":" + length + (truncated ? "+" : "");
+	}
+
+	/**
+	 * Hash 8 bytes at a time with the mixing steps from MurmurHash3.
+	 */
+	private static long hashBytes(byte[] bytes, int offset, int length) {
+		long hash = SEED ^ (length * C1);
+		int end = offset + length;
+		int pos = offset;
+		for (; pos + 8 <= end; pos += 8) {
+			long block = (bytes[pos] & 0xFFL) //
+					| (bytes[pos + 1] & 0xFFL) << 8 //
+					| (bytes[pos + 2] & 0xFFL) << 16 //
+					| (bytes[pos + 3] & 0xFFL) << 24 //
+					| (bytes[pos + 4] & 0xFFL) << 32 //
+					| (bytes[pos + 5] & 0xFFL) << 40 //
+					| (bytes[pos + 6] & 0xFFL) << 48 //
+					| (bytes[pos + 7] & 0xFFL) << 56;
+			hash ^= mixBlock(block);
+			hash = Long.rotateLeft(hash, 27) * 5 + 0x52DCE729;
+		}
+		if (pos < end) {
+			long block = 0;
+			for (int shift = 0; pos < end; pos++, shift += 8) {
+				block |= (bytes[pos] & 0xFFL) << shift;
+			}
+			hash ^= mixBlock(block);
+		}
+		// final avalanche so all of the bits depend on all of the bytes
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static long mixBlock(long block) {
+		block *= C1;
+		block = Long.rotateLeft(block, 31);
+		return block * C2;
+	}
+}
@@ -102,6 +102,7 @@ public class ContentInfo implements Serializable {
 		if (mimeType != null) {
 			sb.append(", mime '").append(mimeType).append('\'');
 		}
+		String message = getMessage();
 		if (message != null) {
 			sb.append(", msg '").append(message).append('\'');
 		}
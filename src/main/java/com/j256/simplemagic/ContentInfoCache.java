@@ -0,0 +1,30 @@
+package com.j256.simplemagic;
+
+/**
+ * Cache of the content information keyed on a fingerprint of the bytes that were matched which is set on a utility
+ * with {@link ContentInfoUtil#setContentInfoCache(ContentInfoCache)}. Content with byte-identical starts, such as the
+ * images from the same camera or documents from the same generator, is then only matched once.
+ * {@link LruContentInfoCache} is kept in memory but this can be implemented on top of an external store shared by a
+ * number of processes.
+ *
+ * <p>
+ * <b>NOTE:</b> The methods are called by all of the threads that use the utility so they must be thread-safe. The
+ * results depend on the magic entries of the utility so a cache should only be shared by utilities with the same
+ * entries.
+ * </p>
+ *
+ * @author graywatson
+ */
+public interface ContentInfoCache {
+
+	/**
+	 * Return the content information for the fingerprint or null if it is not in the cache.
+	 */
+	public ContentInfo get(ContentFingerprint fingerprint);
+
+	/**
+	 * Add the content information for the fingerprint to the cache. Content that none of the entries matched is not
+	 * added.
+	 */
+	public void put(ContentFingerprint fingerprint, ContentInfo info);
+}
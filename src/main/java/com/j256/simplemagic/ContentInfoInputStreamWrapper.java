@@ -2,7 +2,6 @@ package com.j256.simplemagic;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
 
 /**
  * Class which wraps and delegates to another {@link InputStream}. This allows you to read from an input stream and then
@@ -40,16 +39,11 @@ public class ContentInfoInputStreamWrapper extends InputStream {
 	}
 
 	/**
-	 * Find a match from the bytes that have been read from the stream using {@link ContentInfoUtil#findMatch(byte[])}.
+	 * Find a match from the bytes that have been read from the stream using
+	 * {@link ContentInfoUtil#findMatch(byte[], int, int)}.
 	 */
 	public ContentInfo findMatch() {
-		byte[] readBytes;
-		if (byteCount < firstBytes.length) {
-			readBytes = Arrays.copyOf(firstBytes, byteCount);
-		} else {
-			readBytes = firstBytes;
-		}
-		return contentInfoUtil.findMatch(readBytes);
+		return contentInfoUtil.findMatch(firstBytes, 0, byteCount);
 	}
 
 	@Override
@@ -4,17 +4,34 @@ import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
 import java.util.zip.GZIPInputStream;
 
 import com.j256.simplemagic.entries.MagicEntries;
+import com.j256.simplemagic.entries.ParsedMagicFile;
+import com.j256.simplemagic.logger.Logger;
+import com.j256.simplemagic.logger.LoggerFactory;
 
 /**
  * <p>
@@ -38,22 +55,48 @@ import com.j256.simplemagic.entries.MagicEntries;
  * }
  * </pre>
  * 
+ * <p>
+ * Once it is configured, a utility can be shared by any number of threads finding matches at the same time. The
+ * entries are frozen after they are loaded and each thread matches with its own reusable buffers. The setters should
+ * not be called while other threads are using the utility.
+ * </p>
+ * 
  * @author graywatson
  */
 public class ContentInfoUtil {
 
 	private final static String INTERNAL_MAGIC_FILE = "/magic.gz";
+	/** compiled at build time from the internal magic file by the MagicCompiler */
+	private final static String INTERNAL_COMPILED_MAGIC_FILE = "/magic.db";
+	private static Logger logger = LoggerFactory.getLogger(ContentInfoUtil.class);
 
 	/**
 	 * Number of bytes that the utility class by default reads to determine the content type information.
 	 */
 	public final static int DEFAULT_READ_SIZE = 10 * 1024;
-
-	/** internal entries loaded once if the {@link ContentInfoUtil#MagicUtil()} constructor is used. */
-	private static MagicEntries internalMagicEntries;
+	/**
+	 * Number of bytes that are read to start with if the read-size policy is {@link ReadSizePolicy#TIERED}.
+	 */
+	public final static int DEFAULT_FIRST_READ_SIZE = 512;
+	/**
+	 * Number of threads that read the files by default with {@link #findMatches(Iterable, MatchCallBack)}. Files are
+	 * often on disks or network storage which can handle a number of reads at once.
+	 */
+	public final static int DEFAULT_IO_THREADS = 16;
+	/**
+	 * Most bytes that are fingerprinted by default to look up the results in the
+	 * {@link #setContentInfoCache(ContentInfoCache)}.
+	 */
+	public final static int DEFAULT_FINGERPRINT_SIZE = DEFAULT_READ_SIZE;
 
 	private final MagicEntries magicEntries;
 	private int fileReadSize = DEFAULT_READ_SIZE;
+	private int firstReadSize = DEFAULT_FIRST_READ_SIZE;
+	private ReadSizePolicy readSizePolicy = ReadSizePolicy.RULES;
+	private Executor asyncExecutor = ForkJoinPool.commonPool();
+	private FileResultCache fileResultCache;
+	private ContentInfoCache contentInfoCache;
+	private int fingerprintSize = DEFAULT_FINGERPRINT_SIZE;
 
 	/**
 	 * Construct a magic utility using the internal magic file built into the package.
@@ -67,7 +110,8 @@ public class ContentInfoUtil {
 
 	/**
 	 * Construct a magic utility using the internal magic file built into the package. This also allows the caller to
-	 * log any errors discovered in the file(s).
+	 * log any errors discovered in the file(s). The internal entries are normally loaded from the version compiled when
+	 * the package was built, in which case there are no errors to report.
 	 * 
 	 * @param errorCallBack
 	 *            Call back which shows any problems with the magic entries loaded.
@@ -75,18 +119,15 @@ public class ContentInfoUtil {
 	 *             If there was a problem reading the magic entries from the internal magic file.
 	 */
 	public ContentInfoUtil(ErrorCallBack errorCallBack) {
-		if (internalMagicEntries == null) {
-			try {
-				internalMagicEntries = readEntriesFromResource(INTERNAL_MAGIC_FILE, errorCallBack);
-			} catch (IOException e) {
-				throw new IllegalStateException(
-						"Could not load entries from internal magic file: " + INTERNAL_MAGIC_FILE, e);
-			}
-			if (internalMagicEntries == null) {
-				throw new IllegalStateException("Internal magic file not found in class-path: " + INTERNAL_MAGIC_FILE);
+		if (InternalEntriesHolder.exception != null) {
+			throw InternalEntriesHolder.exception;
+		}
+		if (errorCallBack != null) {
+			for (String[] error : InternalEntriesHolder.errors) {
+				errorCallBack.error(error[0], error[1], null);
 			}
 		}
-		this.magicEntries = internalMagicEntries;
+		this.magicEntries = InternalEntriesHolder.entries;
 	}
 
 	/**
@@ -182,6 +223,52 @@ public class ContentInfoUtil {
 		this.magicEntries = readEntries(reader, errorCallBack);
 	}
 
+	/**
+	 * Construct a magic utility using entries that were compiled with {@link #writeCompiledEntries(OutputStream)},
+	 * which is much faster than parsing the magic file text. If the compiled entries were written in a different
+	 * format version then the magic file entries are read from the fallback reader instead.
+	 * 
+	 * <p>
+	 * <b>NOTE:</b> The caller is responsible for closing the input-stream and reader.
+	 * </p>
+	 * 
+	 * @param compiledInputStream
+	 *            Input-stream from which we will read the compiled entries.
+	 * @param fallbackReader
+	 *            A reader from which we will read the magic file entries if the compiled entries can't be used. Can be
+	 *            null in which case an IOException is thrown instead.
+	 * @param errorCallBack
+	 *            Call back which shows any problems with the magic entries loaded from the fallback reader.
+	 * @throws IOException
+	 *             If there was a problem reading the entries.
+	 */
+	public ContentInfoUtil(InputStream compiledInputStream, Reader fallbackReader, ErrorCallBack errorCallBack)
+			throws IOException {
+		MagicEntries entries = readCompiledEntries(compiledInputStream);
+		if (entries == null) {
+			if (fallbackReader == null) {
+				throw new IOException("Compiled magic entries are not in a supported format");
+			}
+			entries = readEntries(fallbackReader, errorCallBack);
+		}
+		this.magicEntries = entries;
+	}
+
+	/**
+	 * Write our magic entries in a compiled format that can be loaded much faster with
+	 * {@link #ContentInfoUtil(InputStream, Reader, ErrorCallBack)}.
+	 * 
+	 * <p>
+	 * <b>NOTE:</b> The caller is responsible for closing the output-stream.
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *             If there was a problem writing the entries.
+	 */
+	public void writeCompiledEntries(OutputStream outputStream) throws IOException {
+		magicEntries.writeCompiledEntries(outputStream);
+	}
+
 	/**
 	 * Return the content type for the file-path or null if none of the magic entries matched.
 	 * 
@@ -193,13 +280,53 @@ public class ContentInfoUtil {
 	}
 
 	/**
-	 * Return the content type for the file or null if none of the magic entries matched.
+	 * Return the content type for the file or null if none of the magic entries matched. The bytes from the start of
+	 * the file are read according to the {@link #setReadSizePolicy(ReadSizePolicy)} and the entries that test past them
+	 * read only the pages of the file that they need.
 	 * 
 	 * @throws IOException
 	 *             If there was a problem reading from the file.
 	 */
 	public ContentInfo findMatch(File file) throws IOException {
-		int readSize = fileReadSize;
+		if (fileResultCache == null) {
+			return findFileMatch(file);
+		}
+		Path path = file.toPath();
+		// a hit only needs the attributes which throw NoSuchFileException if the file doesn't exist
+		FileResultCache.Key key = new FileResultCache.Key(path, Files.readAttributes(path, BasicFileAttributes.class));
+		FileResultCache.CachedResult result = fileResultCache.get(key);
+		if (result != null) {
+			return result.info;
+		}
+		ContentInfo info = findFileMatch(file);
+		fileResultCache.put(key, info);
+		return info;
+	}
+
+	/**
+	 * Return the content type for the content from the source or null if none of the magic entries matched. The bytes
+	 * from the start of the content are read according to the {@link #setReadSizePolicy(ReadSizePolicy)} and the
+	 * entries that test past them read the bytes they need from the source.
+	 *
+	 * @throws IOException
+	 *             If there was a problem reading from the source.
+	 */
+	public ContentInfo findMatch(ContentSource source) throws IOException {
+		int readSize;
+		switch (readSizePolicy) {
+			case RULES:
+				readSize = getRulesReadSize();
+				return magicEntries.findMatch(source, readSize, readSize, getContentInfoCache(source, readSize));
+			case TIERED:
+				readSize = getRulesReadSize();
+				return magicEntries.findMatch(source, firstReadSize, readSize, getContentInfoCache(source, readSize));
+			default:
+				return magicEntries.findMatch(source, fileReadSize, fileReadSize,
+						getContentInfoCache(source, fileReadSize));
+		}
+	}
+
+	private ContentInfo findFileMatch(File file) throws IOException {
 		if (!file.exists()) {
 			throw new IOException("File does not exist: " + file);
 		}
@@ -210,24 +337,104 @@ public class ContentInfoUtil {
 		if (length <= 0) {
 			return ContentInfo.EMPTY_INFO;
 		}
-		if (length < readSize) {
-			readSize = (int) length;
-		}
-		byte[] bytes = new byte[readSize];
-		FileInputStream fis = null;
+		FileChannelContentSource source = new FileChannelContentSource(file);
 		try {
-			fis = new FileInputStream(file);
-			int numRead = fis.read(bytes);
-			if (numRead <= 0) {
-				return ContentInfo.EMPTY_INFO;
-			}
-			if (numRead < bytes.length) {
-				bytes = Arrays.copyOf(bytes, numRead);
-			}
+			return findMatch(source);
 		} finally {
-			closeQuietly(fis);
+			closeQuietly(source);
 		}
-		return findMatch(bytes);
+	}
+
+	/**
+	 * Find the content types of the files at the paths using the default number of I/O threads and a CPU thread for
+	 * each processor.
+	 * 
+	 * @see #findMatches(Iterable, int, int, MatchCallBack)
+	 */
+	public BatchStats findMatches(Iterable<Path> paths, MatchCallBack callBack) throws InterruptedException {
+		return findMatches(paths, DEFAULT_IO_THREADS, Runtime.getRuntime().availableProcessors(), callBack);
+	}
+
+	/**
+	 * Find the content types of the files at the paths. The starts of the files are read by the I/O threads and then
+	 * matched by the CPU threads so the disks are kept busy while matching on all of the cores. Only a limited number
+	 * of files are read ahead of the matching so the paths can be a lazy iterable of any size.
+	 * 
+	 * <p>
+	 * The call-back is called by the calling thread, so it does not have to be thread-safe, for each path in the order
+	 * that they finish which may not be the order of the paths. A file that can't be read is given to the call-back as
+	 * an error and the rest of the files are still matched. The threads are stopped before this returns.
+	 * </p>
+	 * 
+	 * @return Statistics about the files that were matched.
+	 * @throws InterruptedException
+	 *             If the calling thread was interrupted while waiting for the files to be matched.
+	 */
+	public BatchStats findMatches(Iterable<Path> paths, int ioThreads, int cpuThreads, MatchCallBack callBack)
+			throws InterruptedException {
+		return new BatchMatcher(this, getFirstReadSize(), fileResultCache, ioThreads, cpuThreads).findMatches(paths,
+				callBack);
+	}
+
+	/**
+	 * Start finding the content type for the file at the path without blocking the calling thread. The bytes from the
+	 * start of the file are read according to the {@link #setReadSizePolicy(ReadSizePolicy)} with asynchronous
+	 * positional reads so no thread waits for them. The matching is then done by the
+	 * {@link #setAsyncExecutor(Executor)}. Entries that test past the bytes that were read, which is rare with the
+	 * default policy, wait for the bytes they need on that executor's thread.
+	 * 
+	 * @return A future which is completed with the content type, or null if none of the magic entries matched, or
+	 *         completed exceptionally with the IOException if the file could not be read.
+	 */
+	public CompletableFuture<ContentInfo> findMatchAsync(Path path) {
+		final CompletableFuture<ContentInfo> result = new CompletableFuture<ContentInfo>();
+		final AsynchronousFileContentSource source;
+		AsynchronousFileChannel channel = null;
+		try {
+			channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+			source = new AsynchronousFileContentSource(channel);
+		} catch (IOException e) {
+			// the source didn't take the channel if it couldn't get its size
+			closeQuietly(channel);
+			result.completeExceptionally(e);
+			return result;
+		}
+		if (source.getLength() <= 0) {
+			closeQuietly(source);
+			result.complete(ContentInfo.EMPTY_INFO);
+			return result;
+		}
+		final Executor executor = asyncExecutor;
+		source.preload(getFirstReadSize()).whenComplete(new BiConsumer<Void, Throwable>() {
+			@Override
+			public void accept(Void unused, Throwable th) {
+				if (th != null) {
+					closeQuietly(source);
+					result.completeExceptionally(th);
+					return;
+				}
+				try {
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								result.complete(findMatch(source));
+							} catch (Throwable e) {
+								// anything else would leave the future hanging
+								result.completeExceptionally(e);
+							} finally {
+								closeQuietly(source);
+							}
+						}
+					});
+				} catch (RuntimeException e) {
+					// rejected by the executor
+					closeQuietly(source);
+					result.completeExceptionally(e);
+				}
+			}
+		});
+		return result;
 	}
 
 	/**
@@ -244,16 +451,8 @@ public class ContentInfoUtil {
 	 * @see ContentInfoInputStreamWrapper
 	 */
 	public ContentInfo findMatch(InputStream inputStream) throws IOException {
-		byte[] bytes = new byte[fileReadSize];
-		int numRead = inputStream.read(bytes);
-		if (numRead < 0) {
-			return null;
-		}
-		if (numRead < bytes.length) {
-			// move the bytes into a smaller array
-			bytes = Arrays.copyOf(bytes, numRead);
-		}
-		return findMatch(bytes);
+		// we don't know how many bytes we will get so the cache is only used if all of them can be fingerprinted
+		return magicEntries.findMatch(inputStream, fileReadSize, getContentInfoCache(fileReadSize));
 	}
 
 	/**
@@ -263,7 +462,40 @@ public class ContentInfoUtil {
 		if (bytes.length == 0) {
 			return ContentInfo.EMPTY_INFO;
 		} else {
-			return magicEntries.findMatch(bytes);
+			return magicEntries.findMatch(bytes, 0, bytes.length, getContentInfoCache(bytes.length));
+		}
+	}
+
+	/**
+	 * Return the content type from the length bytes in the array starting at the offset or null if none of the magic
+	 * entries matched. This allows the start of the content to be matched in a larger buffer without copying it out.
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             If the offset and length are not inside of the array.
+	 */
+	public ContentInfo findMatch(byte[] bytes, int offset, int length) {
+		return magicEntries.findMatch(bytes, offset, length, getContentInfoCache(length));
+	}
+
+	/**
+	 * Return the content type from the bytes between the position and limit of the buffer or null if none of the magic
+	 * entries matched. The position of the buffer is not changed. Heap buffers are matched without copying their
+	 * bytes.
+	 */
+	public ContentInfo findMatch(ByteBuffer buffer) {
+		return magicEntries.findMatch(buffer, getContentInfoCache(buffer.remaining()));
+	}
+
+	/**
+	 * Return the mime-type from the associated bytes or null if none of the magic entries matched or the matching entry
+	 * has no mime-type. This is the same as the mime-type from {@link #findMatch(byte[])} but is faster because the
+	 * message is not generated and entries that only add to the message are skipped.
+	 */
+	public String findMimeType(byte[] bytes) {
+		if (bytes.length == 0) {
+			return ContentInfo.EMPTY_INFO.getMimeType();
+		} else {
+			return magicEntries.findMimeType(bytes);
 		}
 	}
 
@@ -311,7 +543,9 @@ public class ContentInfoUtil {
 	}
 
 	/**
-	 * Set the default size that will be read if we are getting the content from a file.
+	 * Set the default size that will be read if we are getting the content from a file or input-stream. With the
+	 * {@link ReadSizePolicy#RULES} and {@link ReadSizePolicy#TIERED} policies this is the most that is read from the
+	 * start of a file.
 	 * 
 	 * @see #DEFAULT_READ_SIZE
 	 */
@@ -319,6 +553,76 @@ public class ContentInfoUtil {
 		this.fileReadSize = fileReadSize;
 	}
 
+	/**
+	 * Set the number of bytes that are read to start with if the read-size policy is {@link ReadSizePolicy#TIERED}.
+	 * 
+	 * @see #DEFAULT_FIRST_READ_SIZE
+	 */
+	public void setFirstReadSize(int firstReadSize) {
+		this.firstReadSize = firstReadSize;
+	}
+
+	/**
+	 * Set how many bytes are read from the start of files and content sources. The default is
+	 * {@link ReadSizePolicy#RULES}.
+	 */
+	public void setReadSizePolicy(ReadSizePolicy readSizePolicy) {
+		this.readSizePolicy = readSizePolicy;
+	}
+
+	/**
+	 * Set the executor which does the matching for {@link #findMatchAsync(Path)}. The default is the
+	 * {@link ForkJoinPool#commonPool()}.
+	 */
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	/**
+	 * Set the cache of the results of {@link #findMatch(File)} and {@link #findMatches(Iterable, MatchCallBack)} so
+	 * files that haven't changed since they were last matched are not read again. The default is no cache.
+	 */
+	public void setFileResultCache(FileResultCache fileResultCache) {
+		this.fileResultCache = fileResultCache;
+	}
+
+	/**
+	 * Set the cache of the results keyed on a fingerprint of the bytes that were matched so content with the same
+	 * bytes at its start is only matched once. The default is no cache. The results that depended on more of a file or
+	 * source than the bytes that were fingerprinted, such as an ISO9660 image with its magic far into the file, are
+	 * matched each time.
+	 */
+	public void setContentInfoCache(ContentInfoCache contentInfoCache) {
+		this.contentInfoCache = contentInfoCache;
+	}
+
+	/**
+	 * Set the most bytes that are fingerprinted to look up the results in the
+	 * {@link #setContentInfoCache(ContentInfoCache)}. Content where more bytes than this are matched is not cached
+	 * because the text classification and search entries look at all of the matched bytes so a fingerprint of just
+	 * some of them could give the wrong result.
+	 * 
+	 * @see #DEFAULT_FINGERPRINT_SIZE
+	 */
+	public void setFingerprintSize(int fingerprintSize) {
+		this.fingerprintSize = fingerprintSize;
+	}
+
+	/**
+	 * Return the number of bytes from the start of the content that our magic entries look at, up to the
+	 * file-read-size, which is how much is read with the {@link ReadSizePolicy#RULES} policy. If a regex entry matches
+	 * lines then we don't know how far it looks so this is the file-read-size.
+	 */
+	public int getRulesReadSize() {
+		int searchReadSize = magicEntries.getSearchReadSize();
+		if (searchReadSize < 0) {
+			return fileReadSize;
+		}
+		int readSize = Math.max(magicEntries.getStaticReadSize(), searchReadSize);
+		// we always read at least one byte
+		return Math.max(1, Math.min(readSize, fileReadSize));
+	}
+
 	/**
 	 * @deprecated Not used since it is only passed into the constructor.
 	 */
@@ -327,7 +631,7 @@ public class ContentInfoUtil {
 		// no op
 	}
 
-	private MagicEntries readEntriesFromFile(File fileOrDirectory, ErrorCallBack errorCallBack)
+	private static MagicEntries readEntriesFromFile(File fileOrDirectory, ErrorCallBack errorCallBack)
 			throws FileNotFoundException, IOException {
 		if (fileOrDirectory.isFile()) {
 			FileReader reader = new FileReader(fileOrDirectory);
@@ -337,26 +641,59 @@ public class ContentInfoUtil {
 				closeQuietly(reader);
 			}
 		} else if (fileOrDirectory.isDirectory()) {
-			MagicEntries entries = new MagicEntries();
-			for (File subFile : fileOrDirectory.listFiles()) {
-				FileReader fr = new FileReader(subFile);
+			// the files are parsed in parallel but added in order so the matching order doesn't change
+			final ForkJoinPool pool = ForkJoinPool.commonPool();
+			List<ForkJoinTask<ParsedMagicFile>> tasks = new ArrayList<ForkJoinTask<ParsedMagicFile>>();
+			for (final File subFile : fileOrDirectory.listFiles()) {
+				tasks.add(pool.submit(new Callable<ParsedMagicFile>() {
+					@Override
+					public ParsedMagicFile call() throws IOException {
+						return parseFile(subFile, pool);
+					}
+				}));
+			}
+			MagicEntries.Builder builder = new MagicEntries.Builder();
+			for (ForkJoinTask<ParsedMagicFile> task : tasks) {
+				ParsedMagicFile parsedFile;
 				try {
-					readEntries(entries, fr, errorCallBack);
-				} catch (IOException e) {
-					// ignore the file
-				} finally {
-					closeQuietly(fr);
+					parsedFile = task.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while reading magic files from: " + fileOrDirectory, e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new IOException("Could not read magic files from: " + fileOrDirectory, e.getCause());
+				}
+				if (parsedFile != null) {
+					builder.addParsedFile(parsedFile, errorCallBack);
 				}
 			}
-			entries.optimizeFirstBytes();
-			return entries;
+			return builder.build();
 		} else {
 			return null;
 		}
 	}
 
-	private MagicEntries readEntriesFromResource(String resource, ErrorCallBack errorCallBack) throws IOException {
-		InputStream stream = getClass().getResourceAsStream(resource);
+	/**
+	 * Parse the magic file or return null if there was a problem reading it so it can be ignored.
+	 */
+	private static ParsedMagicFile parseFile(File file, ForkJoinPool pool) throws FileNotFoundException {
+		FileReader fr = new FileReader(file);
+		try {
+			return ParsedMagicFile.parse(new BufferedReader(fr), pool);
+		} catch (IOException e) {
+			// ignore the file
+			return null;
+		} finally {
+			closeQuietly(fr);
+		}
+	}
+
+	private static MagicEntries readEntriesFromResource(String resource, ErrorCallBack errorCallBack)
+			throws IOException {
+		InputStream stream = ContentInfoUtil.class.getResourceAsStream(resource);
 		if (stream == null) {
 			return null;
 		}
@@ -376,23 +713,106 @@ public class ContentInfoUtil {
 		}
 	}
 
-	private MagicEntries readEntries(Reader reader, ErrorCallBack errorCallBack) throws IOException {
-		MagicEntries entries = new MagicEntries();
-		readEntries(entries, reader, errorCallBack);
-		entries.optimizeFirstBytes();
+	/**
+	 * Read the internal entries from the compiled resource and fall back to the magic file resource if the compiled one
+	 * is missing, from another version, or corrupt. The errors from the magic file are added to the list.
+	 *
+	 * @throws IllegalStateException
+	 *             If the entries could not be loaded from either resource.
+	 */
+	static MagicEntries readInternalEntries(String compiledResource, String resource, final List<String[]> errors) {
+		try {
+			MagicEntries entries = readCompiledEntriesFromResource(compiledResource);
+			if (entries != null) {
+				return entries;
+			}
+		} catch (IOException e) {
+			logger.warn(e, "could not read compiled magic file {}, reading {} instead", compiledResource, resource);
+		} catch (RuntimeException e) {
+			logger.warn(e, "could not read compiled magic file {}, reading {} instead", compiledResource, resource);
+		}
+		MagicEntries entries;
+		try {
+			entries = readEntriesFromResource(resource, new ErrorCallBack() {
+				@Override
+				public void error(String line, String details, Exception e) {
+					errors.add(new String[] { line, details });
+				}
+			});
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not load entries from internal magic file: " + resource, e);
+		} catch (RuntimeException e) {
+			throw new IllegalStateException("Could not load entries from internal magic file: " + resource, e);
+		}
+		if (entries == null) {
+			throw new IllegalStateException("Internal magic file not found in class-path: " + resource);
+		}
 		return entries;
 	}
 
-	private void readEntries(MagicEntries entries, Reader reader, ErrorCallBack errorCallBack) throws IOException {
+	private static MagicEntries readCompiledEntriesFromResource(String resource) throws IOException {
+		InputStream stream = ContentInfoUtil.class.getResourceAsStream(resource);
+		if (stream == null) {
+			return null;
+		}
+		try {
+			return readCompiledEntries(stream);
+		} finally {
+			closeQuietly(stream);
+		}
+	}
+
+	private static MagicEntries readCompiledEntries(InputStream inputStream) throws IOException {
+		MagicEntries.Builder builder = new MagicEntries.Builder();
+		if (!builder.readCompiledEntries(inputStream)) {
+			return null;
+		}
+		return builder.build();
+	}
+
+	private static MagicEntries readEntries(Reader reader, ErrorCallBack errorCallBack) throws IOException {
 		BufferedReader lineReader = new BufferedReader(reader);
 		try {
-			entries.readEntries(lineReader, errorCallBack);
+			return new MagicEntries.Builder().readEntries(lineReader, errorCallBack).build();
 		} finally {
 			closeQuietly(lineReader);
 		}
 	}
 
-	private void closeQuietly(Closeable closeable) {
+	/**
+	 * Return the number of bytes that are first read from the start of files with our read-size policy.
+	 */
+	private int getFirstReadSize() {
+		switch (readSizePolicy) {
+			case RULES:
+				return getRulesReadSize();
+			case TIERED:
+				return Math.min(firstReadSize, getRulesReadSize());
+			default:
+				return fileReadSize;
+		}
+	}
+
+	/**
+	 * Return the content-info cache if the match-length bytes can be fingerprinted or null if not.
+	 */
+	private ContentInfoCache getContentInfoCache(long matchLength) {
+		if (contentInfoCache == null || matchLength > fingerprintSize) {
+			return null;
+		} else {
+			return contentInfoCache;
+		}
+	}
+
+	private ContentInfoCache getContentInfoCache(ContentSource source, int readSize) throws IOException {
+		if (contentInfoCache == null) {
+			return null;
+		} else {
+			return getContentInfoCache(Math.min(readSize, source.getLength()));
+		}
+	}
+
+	static void closeQuietly(Closeable closeable) {
 		if (closeable != null) {
 			try {
 				closeable.close();
@@ -402,6 +822,53 @@ public class ContentInfoUtil {
 		}
 	}
 
+	/**
+	 * Holder of the internal entries which are loaded the first time that they are used. The class-loader makes sure
+	 * that they are only loaded once, even if a number of threads construct utilities at the same time, and that they
+	 * are safely published to all of the threads.
+	 */
+	private static class InternalEntriesHolder {
+
+		static final MagicEntries entries;
+		/** line and details of the errors from loading the entries so they can be given to each error call-back */
+		static final List<String[]> errors = new ArrayList<String[]>();
+		/** set if the entries could not be loaded */
+		static final IllegalStateException exception;
+
+		static {
+			MagicEntries loaded = null;
+			IllegalStateException loadException = null;
+			try {
+				loaded = readInternalEntries(INTERNAL_COMPILED_MAGIC_FILE, INTERNAL_MAGIC_FILE, errors);
+			} catch (IllegalStateException e) {
+				// thrown later by the constructors because an exception here would make this class unusable
+				loadException = e;
+			}
+			entries = loaded;
+			exception = loadException;
+		}
+	}
+
+	/**
+	 * Call-back which is given the content type, or the error, for each of the paths from
+	 * {@link ContentInfoUtil#findMatches(Iterable, int, int, MatchCallBack)}.
+	 */
+	public interface MatchCallBack {
+
+		/**
+		 * The file at the path was matched.
+		 * 
+		 * @param info
+		 *            Content type of the file or null if none of the magic entries matched.
+		 */
+		public void match(Path path, ContentInfo info);
+
+		/**
+		 * There was a problem reading the file at the path, such as it not existing or not being readable.
+		 */
+		public void error(Path path, IOException e);
+	}
+
 	/**
 	 * Optional call-back which will be made whenever we discover an error while parsing the magic configuration files.
 	 * There are usually tons of badly formed lines and other errors.
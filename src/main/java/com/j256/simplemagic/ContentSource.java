@@ -0,0 +1,26 @@
+package com.j256.simplemagic;
+
+import java.io.IOException;
+
+/**
+ * Content that can be read at any position. The start of the content is matched in memory but some magic entries test
+ * bytes much further in, such as ISO9660 images at 32769 or the offsets in executable headers. Those entries read the
+ * bytes they need from the source instead of us having to read everything up to them.
+ *
+ * @author graywatson
+ */
+public interface ContentSource {
+
+	/**
+	 * Return the number of bytes in the content.
+	 */
+	public long getLength() throws IOException;
+
+	/**
+	 * Read up to length bytes from the position in the content into the buffer at the offset.
+	 *
+	 * @return The number of bytes read which is only less than the length if the end of the content was reached or -1
+	 *         if the position is at or past the end.
+	 */
+	public int read(long position, byte[] buffer, int offset, int length) throws IOException;
+}
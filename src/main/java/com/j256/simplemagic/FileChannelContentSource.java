@@ -0,0 +1,187 @@
+package com.j256.simplemagic;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Content source which reads the pages of a file with positional reads on its channel. The most recently used pages
+ * are cached since the magic entries that look past the start of a file often test a number of bytes close together.
+ * Only the pages that the entries actually touch are read.
+ *
+ * <p>
+ * <b>NOTE:</b> This is not thread-safe. It is meant to be used for one match at a time.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class FileChannelContentSource implements ContentSource, Closeable {
+
+	/** number of bytes in each page that we read from the file */
+	public static final int PAGE_SIZE = 4096;
+	/** number of pages that are cached by default */
+	public static final int DEFAULT_MAX_PAGES = 16;
+
+	private final FileChannel channel;
+	/** reduced if we find that the file got shorter after we were opened */
+	private long length;
+	private final Map<Long, byte[]> pages;
+	/** page that was evicted from the cache which is reused for the next page we read */
+	private byte[] freePage;
+	private int pageReadCount;
+	private long bytesRead;
+
+	/**
+	 * Open the file and read from its channel. The file is closed when this source is closed.
+	 */
+	public FileChannelContentSource(File file) throws IOException {
+		this(new FileInputStream(file).getChannel());
+	}
+
+	/**
+	 * Open the file at the path and read from its channel. The file is closed when this source is closed. Unlike
+	 * {@link #FileChannelContentSource(File)}, an error opening the file is reported with the specific exception from
+	 * the file-system such as {@link java.nio.file.NoSuchFileException}.
+	 */
+	public FileChannelContentSource(Path path) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.READ));
+	}
+
+	/**
+	 * Read from the channel with a cache of the max-pages most recently used pages. The channel is closed when this
+	 * source is closed.
+	 */
+	public FileChannelContentSource(FileChannel channel, int maxPages) throws IOException {
+		this(channel, channel.size(), maxPages);
+	}
+
+	/**
+	 * Read from a channel that we opened which is closed if we can't get its size.
+	 */
+	private FileChannelContentSource(FileChannel channel) throws IOException {
+		this(channel, sizeOrClose(channel), DEFAULT_MAX_PAGES);
+	}
+
+	private FileChannelContentSource(FileChannel channel, long length, final int maxPages) {
+		if (maxPages <= 0) {
+			throw new IllegalArgumentException("Max pages must be positive: " + maxPages);
+		}
+		this.channel = channel;
+		this.length = length;
+		this.pages = new LinkedHashMap<Long, byte[]>(maxPages * 2, 0.75F, true) {
+			private static final long serialVersionUID = -7187345276651387231L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+				if (size() > maxPages) {
+					freePage = eldest.getValue();
+					return true;
+				} else {
+					return false;
+				}
+			}
+		};
+	}
+
+	@Override
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public int read(long position, byte[] buffer, int offset, int readLength) throws IOException {
+		if (position < 0) {
+			throw new IllegalArgumentException("Position cannot be negative: " + position);
+		}
+		if (position >= length) {
+			return -1;
+		}
+		int toRead = (int) Math.min(readLength, length - position);
+		int numRead = 0;
+		while (numRead < toRead) {
+			long pos = position + numRead;
+			byte[] page = getPage(pos / PAGE_SIZE);
+			if (pos >= length) {
+				// the file got shorter while we were reading
+				break;
+			}
+			int pageOffset = (int) (pos % PAGE_SIZE);
+			int count = (int) Math.min(Math.min(toRead - numRead, PAGE_SIZE - pageOffset), length - pos);
+			System.arraycopy(page, pageOffset, buffer, offset + numRead, count);
+			numRead += count;
+		}
+		return (numRead == 0 ? -1 : numRead);
+	}
+
+	/**
+	 * Read the pages up to the length, or the end of the file, into the cache so the reads of those bytes don't have
+	 * to wait for the file. The cache must be large enough to hold them.
+	 */
+	public void preload(long preloadLength) throws IOException {
+		long end = Math.min(preloadLength, length);
+		for (long pageIndex = 0; pageIndex * PAGE_SIZE < end; pageIndex++) {
+			getPage(pageIndex);
+		}
+	}
+
+	/**
+	 * Return the number of pages that have been read from the file. Pages that are found in the cache are not counted.
+	 */
+	public int getPageReadCount() {
+		return pageReadCount;
+	}
+
+	/**
+	 * Return the number of bytes that have been read from the file.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private byte[] getPage(long pageIndex) throws IOException {
+		byte[] page = pages.get(pageIndex);
+		if (page != null) {
+			return page;
+		}
+		if (freePage == null) {
+			page = new byte[PAGE_SIZE];
+		} else {
+			page = freePage;
+			freePage = null;
+		}
+		long pagePosition = pageIndex * PAGE_SIZE;
+		ByteBuffer buffer = ByteBuffer.wrap(page, 0, (int) Math.min(PAGE_SIZE, length - pagePosition));
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, pagePosition + buffer.position()) < 0) {
+				// the file got shorter after we were opened so we only return the bytes that are there
+				length = pagePosition + buffer.position();
+				break;
+			}
+		}
+		pageReadCount++;
+		bytesRead += buffer.position();
+		pages.put(pageIndex, page);
+		return page;
+	}
+
+	private static long sizeOrClose(FileChannel channel) throws IOException {
+		try {
+			return channel.size();
+		} catch (IOException e) {
+			ContentInfoUtil.closeQuietly(channel);
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.j256.simplemagic;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Cache of the content information of files which is set on a utility with
+ * {@link ContentInfoUtil#setFileResultCache(FileResultCache)}. The results are keyed on the path of the file along with
+ * its size, last-modified time, and file-key (the inode on most systems) so a file that is changed or replaced is
+ * matched again. A hit only needs the attributes of the file and does not read any of its contents.
+ *
+ * <p>
+ * Lookups don't take a lock. When the cache grows past its max-size the least recently used results are evicted in a
+ * batch.
+ * </p>
+ *
+ * <p>
+ * <b>NOTE:</b> The results depend on the magic entries and the read-size settings of the utility so a cache should
+ * only be used by one utility and should be cleared if its settings are changed.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class FileResultCache {
+
+	private final LruCache<Key, CachedResult> results;
+
+	public FileResultCache(int maxSize) {
+		this.results = new LruCache<Key, CachedResult>(maxSize);
+	}
+
+	/**
+	 * Return the number of lookups that found the result of the file.
+	 */
+	public long getHitCount() {
+		return results.getHitCount();
+	}
+
+	/**
+	 * Return the number of lookups that did not find the result of the file which was then matched.
+	 */
+	public long getMissCount() {
+		return results.getMissCount();
+	}
+
+	/**
+	 * Return the number of results that were evicted because the cache was full.
+	 */
+	public long getEvictionCount() {
+		return results.getEvictionCount();
+	}
+
+	/**
+	 * Return the number of results in the cache.
+	 */
+	public int size() {
+		return results.size();
+	}
+
+	public int getMaxSize() {
+		return results.getMaxSize();
+	}
+
+	/**
+	 * Remove all of the results from the cache. The counts are not reset.
+	 */
+	public void clear() {
+		results.clear();
+	}
+
+	/**
+	 * Return the cached result for the key or null if it isn't in the cache.
+	 */
+	CachedResult get(Key key) {
+		return results.get(key);
+	}
+
+	/**
+	 * Add the info, which may be null if nothing matched, for the key to the cache.
+	 */
+	void put(Key key, ContentInfo info) {
+		results.put(key, new CachedResult(info));
+	}
+
+	/**
+	 * Identity of a version of a file.
+	 */
+	static class Key {
+
+		private final Path path;
+		private final long size;
+		private final FileTime lastModifiedTime;
+		/** may be null if the file-system doesn't have them */
+		private final Object fileKey;
+
+		public Key(Path path, BasicFileAttributes attributes) {
+			this.path = path.toAbsolutePath().normalize();
+			this.size = attributes.size();
+			this.lastModifiedTime = attributes.lastModifiedTime();
+			this.fileKey = attributes.fileKey();
+		}
+
+		@Override
+		public int hashCode() {
+			int result = path.hashCode();
+			result = 31 * result + (int) (size ^ (size >>> 32));
+			result = 31 * result + lastModifiedTime.hashCode();
+			if (fileKey != null) {
+				result = 31 * result + fileKey.hashCode();
+			}
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			Key other = (Key) obj;
+			if (fileKey == null) {
+				if (other.fileKey != null) {
+					return false;
+				}
+			} else if (!fileKey.equals(other.fileKey)) {
+				return false;
+			}
+			return (size == other.size && path.equals(other.path) && lastModifiedTime.equals(other.lastModifiedTime));
+		}
+	}
+
+	/**
+	 * Result of a file in the cache.
+	 */
+	static class CachedResult {
+
+		/** null if none of the magic entries matched */
+		final ContentInfo info;
+
+		public CachedResult(ContentInfo info) {
+			this.info = info;
+		}
+	}
+}
@@ -0,0 +1,449 @@
+package com.j256.simplemagic;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.j256.simplemagic.ContentInfoUtil.MatchCallBack;
+
+/**
+ * Command line program which walks the files and directories and prints the content information of each of the files
+ * similar to the file(1) command. The files are matched by
+ * {@link ContentInfoUtil#findMatches(Iterable, int, int, MatchCallBack)} so one JVM can classify a whole volume. The
+ * results are printed as they finish and the statistics about the batch are printed to stderr at the end.
+ *
+ * <pre>
+ * java FileScanner [-format text|tsv|json] [-io threads] [-cpu threads] [-magic path] file-or-directory ...
+ * </pre>
+ *
+ * <p>
+ * Symbolic links inside of the directories are not followed so the walk can't loop.
+ * </p>
+ *
+ * @author graywatson
+ */
+public class FileScanner {
+
+	private static final String USAGE = "Usage: java " + FileScanner.class.getName()
+			+ " [-format text|tsv|json] [-io threads] [-cpu threads] [-magic path] file-or-directory ...";
+
+	public static void main(String[] args) throws Exception {
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"));
+		int exitCode = scan(args, out, System.err);
+		out.flush();
+		System.exit(exitCode);
+	}
+
+	/**
+	 * Scan the files and directories in the arguments and return the exit code which is 0 if all of the files were
+	 * read, 1 if some of them had errors, or 2 if the arguments were invalid.
+	 */
+	static int scan(String[] args, PrintWriter out, PrintStream err) throws IOException, InterruptedException {
+		OutputFormat format = OutputFormat.TEXT;
+		int ioThreads = ContentInfoUtil.DEFAULT_IO_THREADS;
+		int cpuThreads = Runtime.getRuntime().availableProcessors();
+		String magicPath = null;
+		int argc = 0;
+		try {
+			for (; argc < args.length && args[argc].startsWith("-"); argc++) {
+				String arg = args[argc];
+				if (argc + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value for " + arg);
+				}
+				String value = args[++argc];
+				if (arg.equals("-format")) {
+					format = OutputFormat.fromString(value);
+				} else if (arg.equals("-io")) {
+					ioThreads = parseThreads(arg, value);
+				} else if (arg.equals("-cpu")) {
+					cpuThreads = parseThreads(arg, value);
+				} else if (arg.equals("-magic")) {
+					magicPath = value;
+				} else {
+					throw new IllegalArgumentException("Unknown argument: " + arg);
+				}
+			}
+			if (argc >= args.length) {
+				throw new IllegalArgumentException("No files or directories to scan");
+			}
+		} catch (IllegalArgumentException e) {
+			err.println(e.getMessage());
+			err.println(USAGE);
+			return 2;
+		}
+
+		ContentInfoUtil util;
+		if (magicPath == null) {
+			util = new ContentInfoUtil();
+		} else {
+			util = new ContentInfoUtil(magicPath);
+		}
+		List<Path> roots = new ArrayList<Path>(args.length - argc);
+		for (; argc < args.length; argc++) {
+			roots.add(Paths.get(args[argc]));
+		}
+
+		format.writeHeader(out);
+		DirectoryWalker walker = new DirectoryWalker(roots, err);
+		BatchStats stats = util.findMatches(walker, ioThreads, cpuThreads, new PrintingCallBack(format, out));
+		out.flush();
+		err.println(stats);
+		if (stats.getErrorCount() > 0 || walker.errorCount > 0) {
+			return 1;
+		} else {
+			return 0;
+		}
+	}
+
+	private static int parseThreads(String arg, String value) {
+		int threads;
+		try {
+			threads = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number for " + arg + ": " + value);
+		}
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Number for " + arg + " must be positive: " + value);
+		}
+		return threads;
+	}
+
+	/**
+	 * How the results are printed.
+	 */
+	enum OutputFormat {
+		/** path: message like the file(1) command */
+		TEXT {
+			@Override
+			void writeMatch(PrintWriter out, Path path, ContentInfo info) {
+				String message;
+				if (info == null) {
+					message = "data";
+				} else if (info.getMessage() == null) {
+					message = info.getName();
+				} else {
+					message = info.getMessage();
+				}
+				out.println(path + ": " + message);
+			}
+
+			@Override
+			void writeError(PrintWriter out, Path path, IOException e) {
+				out.println(path + ": cannot open (" + e + ")");
+			}
+		},
+		/** tab-separated columns with a header line */
+		TSV {
+			@Override
+			void writeHeader(PrintWriter out) {
+				out.println("path\tname\tmime-type\tmessage\terror");
+			}
+
+			@Override
+			void writeMatch(PrintWriter out, Path path, ContentInfo info) {
+				if (info == null) {
+					writeLine(out, path.toString(), null, null, null, null);
+				} else {
+					writeLine(out, path.toString(), info.getName(), info.getMimeType(), info.getMessage(), null);
+				}
+			}
+
+			@Override
+			void writeError(PrintWriter out, Path path, IOException e) {
+				writeLine(out, path.toString(), null, null, null, e.toString());
+			}
+
+			private void writeLine(PrintWriter out, String... columns) {
+				StringBuilder sb = new StringBuilder();
+				for (String column : columns) {
+					if (sb.length() > 0) {
+						sb.append('\t');
+					}
+					if (column != null) {
+						appendTsv(sb, column);
+					}
+				}
+				out.println(sb);
+			}
+		},
+		/** one JSON object per line */
+		JSON {
+			@Override
+			void writeMatch(PrintWriter out, Path path, ContentInfo info) {
+				StringBuilder sb = new StringBuilder();
+				sb.append("{\"path\":");
+				appendJson(sb, path.toString());
+				if (info != null) {
+					sb.append(",\"name\":");
+					appendJson(sb, info.getName());
+					sb.append(",\"mimeType\":");
+					appendJson(sb, info.getMimeType());
+					sb.append(",\"message\":");
+					appendJson(sb, info.getMessage());
+				}
+				sb.append('}');
+				out.println(sb);
+			}
+
+			@Override
+			void writeError(PrintWriter out, Path path, IOException e) {
+				StringBuilder sb = new StringBuilder();
+				sb.append("{\"path\":");
+				appendJson(sb, path.toString());
+				sb.append(",\"error\":");
+				appendJson(sb, e.toString());
+				sb.append('}');
+				out.println(sb);
+			}
+		},
+		// end
+		;
+
+		/**
+		 * Write the line, if any, which comes before the results.
+		 */
+		void writeHeader(PrintWriter out) {
+			// none by default
+		}
+
+		/**
+		 * Write the result of the file at the path. The info is null if it didn't match anything.
+		 */
+		abstract void writeMatch(PrintWriter out, Path path, ContentInfo info);
+
+		/**
+		 * Write that the file at the path could not be read.
+		 */
+		abstract void writeError(PrintWriter out, Path path, IOException e);
+
+		static OutputFormat fromString(String str) {
+			for (OutputFormat format : values()) {
+				if (format.name().equalsIgnoreCase(str)) {
+					return format;
+				}
+			}
+			throw new IllegalArgumentException("Unknown format: " + str);
+		}
+	}
+
+	/**
+	 * Append the string with the tabs, newlines, and backslashes escaped so it stays in its column.
+	 */
+	static void appendTsv(StringBuilder sb, String str) {
+		for (int i = 0; i < str.length(); i++) {
+			char ch = str.charAt(i);
+			switch (ch) {
+				case '\t':
+					sb.append("\\t");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				default:
+					sb.append(ch);
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Append the string as a quoted JSON string or null.
+	 */
+	static void appendJson(StringBuilder sb, String str) {
+		if (str == null) {
+			sb.append("null");
+			return;
+		}
+		sb.append('"');
+		for (int i = 0; i < str.length(); i++) {
+			char ch = str.charAt(i);
+			switch (ch) {
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					if (ch < 0x20) {
+						sb.append(String.format("\\u%04x", (int) ch));
+					} else {
+						sb.append(ch);
+					}
+					break;
+			}
+		}
+		sb.append('"');
+	}
+
+	/**
+	 * Prints the results as they come in.
+	 */
+	private static class PrintingCallBack implements MatchCallBack {
+
+		private final OutputFormat format;
+		private final PrintWriter out;
+
+		public PrintingCallBack(OutputFormat format, PrintWriter out) {
+			this.format = format;
+			this.out = out;
+		}
+
+		@Override
+		public void match(Path path, ContentInfo info) {
+			format.writeMatch(out, path, info);
+		}
+
+		@Override
+		public void error(Path path, IOException e) {
+			format.writeError(out, path, e);
+		}
+	}
+
+	/**
+	 * Walks the files in the directories as the paths are needed so the whole tree doesn't have to be held in memory.
+	 * The roots that are not directories are returned as is so the errors about them are reported by the batch. The
+	 * directories that can't be read are reported to the error stream.
+	 */
+	static class DirectoryWalker implements Iterable<Path> {
+
+		private final List<Path> roots;
+		private final PrintStream err;
+		int errorCount;
+
+		public DirectoryWalker(List<Path> roots, PrintStream err) {
+			this.roots = roots;
+			this.err = err;
+		}
+
+		@Override
+		public Iterator<Path> iterator() {
+			return new WalkerIterator(roots.iterator());
+		}
+
+		private class WalkerIterator implements Iterator<Path> {
+
+			private final Iterator<Path> rootIterator;
+			/** directories which have not been listed with the next one at the front */
+			private final Deque<Path> directories = new ArrayDeque<Path>();
+			/** files from the last directory that was listed */
+			private final Deque<Path> files = new ArrayDeque<Path>();
+			private Path next;
+
+			public WalkerIterator(Iterator<Path> rootIterator) {
+				this.rootIterator = rootIterator;
+			}
+
+			@Override
+			public boolean hasNext() {
+				if (next == null) {
+					next = findNext();
+				}
+				return (next != null);
+			}
+
+			@Override
+			public Path next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Path path = next;
+				next = null;
+				return path;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			private Path findNext() {
+				while (true) {
+					if (!files.isEmpty()) {
+						return files.removeFirst();
+					} else if (!directories.isEmpty()) {
+						listDirectory(directories.removeFirst());
+					} else if (rootIterator.hasNext()) {
+						Path root = rootIterator.next();
+						if (Files.isDirectory(root)) {
+							directories.addFirst(root);
+						} else {
+							return root;
+						}
+					} else {
+						return null;
+					}
+				}
+			}
+
+			private void listDirectory(Path directory) {
+				List<Path> children = new ArrayList<Path>();
+				try {
+					DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+					try {
+						for (Path child : stream) {
+							children.add(child);
+						}
+					} finally {
+						stream.close();
+					}
+				} catch (IOException e) {
+					err.println(directory + ": cannot read directory (" + e + ")");
+					errorCount++;
+					return;
+				}
+				// sorted so the walk is always in the same order
+				Collections.sort(children);
+				List<Path> subDirectories = new ArrayList<Path>();
+				for (Path child : children) {
+					BasicFileAttributes attributes;
+					try {
+						attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					} catch (IOException e) {
+						err.println(child + ": cannot read attributes (" + e + ")");
+						errorCount++;
+						continue;
+					}
+					if (attributes.isDirectory()) {
+						subDirectories.add(child);
+					} else if (attributes.isRegularFile()) {
+						files.addLast(child);
+					}
+				}
+				// depth-first so the sub-directories go in front of the ones we already had
+				for (int i = subDirectories.size() - 1; i >= 0; i--) {
+					directories.addFirst(subDirectories.get(i));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.j256.simplemagic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent cache which evicts the least recently used values once it has more than its max-size of them. Lookups
+ * don't take a lock. Each value records when it was last used and when the cache grows past its max-size the least
+ * recently used values are evicted in a batch so the cost of the eviction is shared by a number of puts. The time is
+ * only recorded if the last one is older than a millisecond so threads that hit the same value are mostly reading it.
+ *
+ * @author graywatson
+ */
+class LruCache<K, V> {
+
+	/** fraction of the max-size that is evicted in each batch so we don't evict after every put */
+	private static final int EVICT_BATCH_DIVISOR = 16;
+	/** hits closer together than this don't update the last-used time so they don't all write to the same value */
+	private static final long LAST_USED_GRANULARITY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final int maxSize;
+	private final int evictBatchSize;
+	private final ConcurrentHashMap<K, Node<V>> nodes = new ConcurrentHashMap<K, Node<V>>();
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final Object evictLock = new Object();
+
+	public LruCache(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Max size must be positive: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.evictBatchSize = Math.max(1, maxSize / EVICT_BATCH_DIVISOR);
+	}
+
+	/**
+	 * Return the value for the key or null if it isn't in the cache.
+	 */
+	public V get(K key) {
+		Node<V> node = nodes.get(key);
+		if (node == null) {
+			missCount.increment();
+			return null;
+		} else {
+			long now = System.nanoTime();
+			if (now - node.lastUsedNanos > LAST_USED_GRANULARITY_NANOS) {
+				node.lastUsedNanos = now;
+			}
+			hitCount.increment();
+			return node.value;
+		}
+	}
+
+	public void put(K key, V value) {
+		nodes.put(key, new Node<V>(value));
+		if (nodes.size() > maxSize) {
+			evict();
+		}
+	}
+
+	public void clear() {
+		nodes.clear();
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * Evict the least recently used values until we are a batch under the max-size.
+	 */
+	private void evict() {
+		synchronized (evictLock) {
+			if (nodes.size() <= maxSize) {
+				// another thread evicted while we were waiting
+				return;
+			}
+			int toEvict = nodes.size() - maxSize + evictBatchSize;
+			// the last-used times are copied so they don't change while we sort
+			List<EvictCandidate<K, V>> candidates = new ArrayList<EvictCandidate<K, V>>(nodes.size());
+			for (Map.Entry<K, Node<V>> entry : nodes.entrySet()) {
+				candidates.add(new EvictCandidate<K, V>(entry.getKey(), entry.getValue()));
+			}
+			Collections.sort(candidates);
+			for (int i = 0; i < toEvict && i < candidates.size(); i++) {
+				EvictCandidate<K, V> candidate = candidates.get(i);
+				// only if it wasn't replaced in the meantime
+				if (nodes.remove(candidate.key, candidate.node)) {
+					evictionCount.increment();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Value in the cache with the time it was last used.
+	 */
+	private static class Node<V> {
+
+		final V value;
+		volatile long lastUsedNanos = System.nanoTime();
+
+		public Node(V value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Value that we might evict with the time it was last used when we started.
+	 */
+	private static class EvictCandidate<K, V> implements Comparable<EvictCandidate<K, V>> {
+
+		final K key;
+		final Node<V> node;
+		final long lastUsedNanos;
+
+		public EvictCandidate(K key, Node<V> node) {
+			this.key = key;
+			this.node = node;
+			this.lastUsedNanos = node.lastUsedNanos;
+		}
+
+		@Override
+		public int compareTo(EvictCandidate<K, V> other) {
+			// the difference because nano-times can wrap
+			long diff = lastUsedNanos - other.lastUsedNanos;
+			return (diff < 0 ? -1 : (diff == 0 ? 0 : 1));
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.j256.simplemagic;
+
+/**
+ * In-memory {@link ContentInfoCache} which keeps up to its max-size results. Lookups don't take a lock and when the
+ * cache grows past its max-size the least recently used results are evicted in a batch.
+ *
+ * @author graywatson
+ */
+public class LruContentInfoCache implements ContentInfoCache {
+
+	private final LruCache<ContentFingerprint, ContentInfo> infos;
+
+	public LruContentInfoCache(int maxSize) {
+		this.infos = new LruCache<ContentFingerprint, ContentInfo>(maxSize);
+	}
+
+	@Override
+	public ContentInfo get(ContentFingerprint fingerprint) {
+		return infos.get(fingerprint);
+	}
+
+	@Override
+	public void put(ContentFingerprint fingerprint, ContentInfo info) {
+		infos.put(fingerprint, info);
+	}
+
+	/**
+	 * Return the number of lookups that found the content information.
+	 */
+	public long getHitCount() {
+		return infos.getHitCount();
+	}
+
+	/**
+	 * Return the number of lookups that did not find the content information.
+	 */
+	public long getMissCount() {
+		return infos.getMissCount();
+	}
+
+	/**
+	 * Return the number of results that were evicted because the cache was full.
+	 */
+	public long getEvictionCount() {
+		return infos.getEvictionCount();
+	}
+
+	/**
+	 * Return the number of results in the cache.
+	 */
+	public int size() {
+		return infos.size();
+	}
+
+	public int getMaxSize() {
+		return infos.getMaxSize();
+	}
+
+	/**
+	 * Remove all of the results from the cache. The counts are not reset.
+	 */
+	public void clear() {
+		infos.clear();
+	}
+}
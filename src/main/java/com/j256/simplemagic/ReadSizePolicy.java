@@ -0,0 +1,22 @@
+package com.j256.simplemagic;
+
+/**
+ * How many bytes {@link ContentInfoUtil} reads from the start of files and content sources. The entries that test past
+ * the bytes that were read still read the bytes that they need from the file or source.
+ *
+ * @author graywatson
+ */
+public enum ReadSizePolicy {
+
+	/** read the file-read-size bytes */
+	FIXED,
+	/** read the bytes that the magic entries look at from the start of the content, up to the file-read-size */
+	RULES,
+	/**
+	 * read the first-read-size bytes and only read the bytes from {@link #RULES} if a regex or the text classification
+	 * needed more of them
+	 */
+	TIERED,
+	// end
+	;
+}
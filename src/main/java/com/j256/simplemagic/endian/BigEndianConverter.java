@@ -14,12 +14,28 @@ public class BigEndianConverter implements EndianConverter {
 
 	@Override
 	public Long convertNumber(int offset, byte[] bytes, int size) {
-		return convertNumber(offset, bytes, size, 8, 0xFF);
+		if (offset < 0 || offset + size > bytes.length) {
+			return null;
+		}
+		return convertLong(offset, bytes, size, 8, 0xFF);
 	}
 
 	@Override
 	public Long convertId3(int offset, byte[] bytes, int size) {
-		return convertNumber(offset, bytes, size, 7, 0x7F);
+		if (offset < 0 || offset + size > bytes.length) {
+			return null;
+		}
+		return convertLong(offset, bytes, size, 7, 0x7F);
+	}
+
+	@Override
+	public long convertLong(int offset, byte[] bytes, int size) {
+		return convertLong(offset, bytes, size, 8, 0xFF);
+	}
+
+	@Override
+	public long convertId3Long(int offset, byte[] bytes, int size) {
+		return convertLong(offset, bytes, size, 7, 0x7F);
 	}
 
 	@Override
@@ -32,10 +48,7 @@ public class BigEndianConverter implements EndianConverter {
 		return result;
 	}
 
-	private Long convertNumber(int offset, byte[] bytes, int size, int shift, int mask) {
-		if (offset < 0 || offset + size > bytes.length) {
-			return null;
-		}
+	private long convertLong(int offset, byte[] bytes, int size, int shift, int mask) {
 		long value = 0;
 		for (int i = offset; i < offset + size; i++) {
 			value = value << shift | (bytes[i] & mask);
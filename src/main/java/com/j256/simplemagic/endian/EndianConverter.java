@@ -21,6 +21,18 @@ public interface EndianConverter {
 	 */
 	public Long convertId3(int offset, byte[] bytes, int size);
 
+	/**
+	 * Convert a number of bytes starting at an offset into a primitive long without boxing it. The caller must make
+	 * sure that there are enough bytes.
+	 */
+	public long convertLong(int offset, byte[] bytes, int size);
+
+	/**
+	 * Convert a number of bytes starting at an offset into a primitive long where the high-bit in each byte is always
+	 * 0. The caller must make sure that there are enough bytes.
+	 */
+	public long convertId3Long(int offset, byte[] bytes, int size);
+
 	/**
 	 * Translate a number into an array of bytes.
 	 */
@@ -13,12 +13,32 @@ public class MiddleEndianConverter implements EndianConverter {
 
 	@Override
 	public Long convertNumber(int offset, byte[] bytes, int size) {
-		return convertNumber(offset, bytes, size, 8, 0xFF);
+		checkSize(size);
+		if (offset < 0 || offset + size > bytes.length) {
+			return null;
+		}
+		return convertLong(offset, bytes, 8, 0xFF);
 	}
 
 	@Override
 	public Long convertId3(int offset, byte[] bytes, int size) {
-		return convertNumber(offset, bytes, size, 7, 0x7F);
+		checkSize(size);
+		if (offset < 0 || offset + size > bytes.length) {
+			return null;
+		}
+		return convertLong(offset, bytes, 7, 0x7F);
+	}
+
+	@Override
+	public long convertLong(int offset, byte[] bytes, int size) {
+		checkSize(size);
+		return convertLong(offset, bytes, 8, 0xFF);
+	}
+
+	@Override
+	public long convertId3Long(int offset, byte[] bytes, int size) {
+		checkSize(size);
+		return convertLong(offset, bytes, 7, 0x7F);
 	}
 
 	@Override
@@ -32,13 +52,13 @@ public class MiddleEndianConverter implements EndianConverter {
 		}
 	}
 
-	private Long convertNumber(int offset, byte[] bytes, int size, int shift, int mask) {
+	private void checkSize(int size) {
 		if (size != 4) {
 			throw new UnsupportedOperationException("Middle-endian only supports 4-byte integers");
 		}
-		if (offset < 0 || offset + size > bytes.length) {
-			return null;
-		}
+	}
+
+	private long convertLong(int offset, byte[] bytes, int shift, int mask) {
 		long value = 0;
 		// BADC
 		value = (value << shift) | (bytes[offset + 1] & mask);
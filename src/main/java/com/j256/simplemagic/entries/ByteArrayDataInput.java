@@ -0,0 +1,115 @@
+package com.j256.simplemagic.entries;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Data input which reads from an array of bytes. This is much faster than a {@link DataInputStream} wrapping a stream
+ * because each of the stream reads are synchronized.
+ *
+ * @author graywatson
+ */
+class ByteArrayDataInput implements DataInput {
+
+	private final byte[] bytes;
+	private int pos;
+
+	public ByteArrayDataInput(byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	@Override
+	public void readFully(byte[] buffer) throws IOException {
+		readFully(buffer, 0, buffer.length);
+	}
+
+	@Override
+	public void readFully(byte[] buffer, int offset, int length) throws IOException {
+		checkAvailable(length);
+		System.arraycopy(bytes, pos, buffer, offset, length);
+		pos += length;
+	}
+
+	@Override
+	public int skipBytes(int num) {
+		int skipped = Math.min(num, bytes.length - pos);
+		pos += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readUnsignedByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		checkAvailable(1);
+		return bytes[pos++];
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return (short) readUnsignedShort();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		checkAvailable(2);
+		int value = ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+		pos += 2;
+		return value;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return (char) readUnsignedShort();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		checkAvailable(4);
+		int value = ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16) | ((bytes[pos + 2] & 0xFF) << 8)
+				| (bytes[pos + 3] & 0xFF);
+		pos += 4;
+		return value;
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public String readLine() {
+		throw new UnsupportedOperationException("readLine is not supported");
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+
+	private void checkAvailable(int length) throws EOFException {
+		if (pos + length > bytes.length) {
+			throw new EOFException("Not enough bytes left in the input: " + (bytes.length - pos));
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.j256.simplemagic.entries;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of the strings in the compiled entries. Many of the entries share the same names, formats, and mime-types so
+ * each string is only written and read once and the entries refer to it by index.
+ *
+ * @author graywatson
+ */
+class CompiledStringTable {
+
+	private static final int NULL_INDEX = -1;
+
+	private final Map<String, Integer> indexMap = new HashMap<String, Integer>();
+	private final List<String> strings;
+	/** formatters are immutable so the entries with the same format can share them */
+	private final MagicFormatter[] formatters;
+
+	public CompiledStringTable() {
+		this.strings = new ArrayList<String>();
+		this.formatters = null;
+	}
+
+	private CompiledStringTable(List<String> strings) {
+		this.strings = strings;
+		this.formatters = new MagicFormatter[strings.size()];
+	}
+
+	/**
+	 * Add the string to the table if necessary and write its index to the output.
+	 */
+	public void writeString(DataOutput output, String str) throws IOException {
+		if (str == null) {
+			output.writeInt(NULL_INDEX);
+			return;
+		}
+		Integer index = indexMap.get(str);
+		if (index == null) {
+			index = strings.size();
+			strings.add(str);
+			indexMap.put(str, index);
+		}
+		output.writeInt(index);
+	}
+
+	/**
+	 * Read the index of a string from the input and return the string from the table.
+	 */
+	public String readString(DataInput input) throws IOException {
+		int index = readIndex(input);
+		if (index == NULL_INDEX) {
+			return null;
+		} else {
+			return strings.get(index);
+		}
+	}
+
+	/**
+	 * Read the index of a format string from the input and return the formatter for it.
+	 */
+	public MagicFormatter readFormatter(DataInput input) throws IOException {
+		int index = readIndex(input);
+		if (index == NULL_INDEX) {
+			return null;
+		}
+		MagicFormatter formatter = formatters[index];
+		if (formatter == null) {
+			formatter = new MagicFormatter(strings.get(index));
+			formatters[index] = formatter;
+		}
+		return formatter;
+	}
+
+	/**
+	 * Write the strings in the table to the output.
+	 */
+	public void writeTable(DataOutput output) throws IOException {
+		output.writeInt(strings.size());
+		for (String str : strings) {
+			output.writeUTF(str);
+		}
+	}
+
+	/**
+	 * Read in a table that was written by {@link #writeTable(DataOutput)}.
+	 */
+	public static CompiledStringTable readTable(DataInput input) throws IOException {
+		int numStrings = input.readInt();
+		List<String> strings = new ArrayList<String>(numStrings);
+		for (int i = 0; i < numStrings; i++) {
+			String str = input.readUTF();
+			if (str.equals(MagicEntryParser.UNKNOWN_NAME)) {
+				// entry names are compared against this instance
+				str = MagicEntryParser.UNKNOWN_NAME;
+			}
+			strings.add(str);
+		}
+		return new CompiledStringTable(strings);
+	}
+
+	private int readIndex(DataInput input) throws IOException {
+		int index = input.readInt();
+		if (index < NULL_INDEX || index >= strings.size()) {
+			throw new IOException("Invalid string index in compiled entries: " + index);
+		}
+		return index;
+	}
+}
@@ -0,0 +1,431 @@
+package com.j256.simplemagic.entries;
+
+import com.j256.simplemagic.endian.BigEndianConverter;
+import com.j256.simplemagic.endian.EndianConverter;
+import com.j256.simplemagic.endian.LittleEndianConverter;
+import com.j256.simplemagic.types.BaseLongType;
+import com.j256.simplemagic.types.Id3LengthType;
+import com.j256.simplemagic.types.NumberComparison;
+import com.j256.simplemagic.types.StringType;
+import com.j256.simplemagic.types.TestOperator;
+
+/**
+ * The test of an entry compiled into a class which is specialized for the type, endian-ness, and operator of the entry
+ * with the test value, AND-mask, and sign handling worked out ahead of time. When interpreted, each test goes through a
+ * number of calls on the {@link MagicMatcher}, converter, comparison, and operator with {@code Object} values and
+ * casts. A compiled test is a single call with the bytes read and compared inline so the JIT can optimize it as a
+ * whole.
+ *
+ * <p>
+ * Only the common tests are compiled: numbers that are read as longs and strings that must match exactly. The other
+ * entries are interpreted which remains the reference for how all of the tests work.
+ * </p>
+ *
+ * @author graywatson
+ */
+abstract class CompiledTest {
+
+	/** returned by {@link #test(byte[], int, int, int)} if the bytes don't match */
+	static final int NO_MATCH = -1;
+
+	/**
+	 * Test the bytes at the offset. The content is the length bytes in the array from the start index and the offset
+	 * is relative to the start.
+	 *
+	 * @return The offset after the matched bytes or {@link #NO_MATCH} if they don't match.
+	 */
+	abstract int test(byte[] bytes, int start, int length, int offset);
+
+	/**
+	 * Return the value that was matched at the offset so it can be rendered into the message. This is only called after
+	 * {@link #test(byte[], int, int, int)} has matched.
+	 */
+	abstract Object getValue(byte[] bytes, int start, int offset);
+
+	/**
+	 * Compile the test of the entry or return null if it can't be compiled and must be interpreted.
+	 */
+	static CompiledTest compile(MagicEntry entry) {
+		MagicMatcher matcher = entry.getMatcher();
+		Object testValue = entry.getTestValue();
+		if (matcher instanceof BaseLongType && testValue instanceof NumberComparison) {
+			return compileLong((BaseLongType) matcher, (NumberComparison) testValue, entry.getAndValue(),
+					entry.isUnsignedType());
+		} else if (matcher != null && matcher.getClass() == StringType.class && testValue != null) {
+			// the required bytes are only returned if the string must match exactly
+			byte[] requiredBytes = matcher.getRequiredBytes(testValue);
+			if (requiredBytes == null) {
+				return null;
+			} else {
+				// the matched string is always the same as the pattern
+				return new ExactStringTest(requiredBytes, testValue.toString());
+			}
+		} else {
+			return null;
+		}
+	}
+
+	private static CompiledTest compileLong(BaseLongType type, NumberComparison comparison, Long andValue,
+			boolean unsignedType) {
+		/*
+		 * Signed values are compared after extending the sign bit of the type's size. Unsigned values are compared as
+		 * is. We check that this is how the type compares its values so we don't compile types that do something else.
+		 */
+		int shift;
+		if (unsignedType) {
+			shift = 0;
+		} else {
+			shift = Long.numberOfLeadingZeros(type.maskValue(-1L));
+		}
+		for (long probe : new long[] { 0L, 1L, 0x80L, 0xFF80L, 0x80000000L, 0xFFFFFFFFL, -1L, Long.MIN_VALUE }) {
+			if (type.toComparisonValue(unsignedType, probe) != ((probe << shift) >> shift)) {
+				return null;
+			}
+		}
+
+		TestOperator operator = comparison.getOperator();
+		long testValue = comparison.getValue().longValue();
+		long expected;
+		switch (operator) {
+			case EQUALS:
+			case NOT_EQUALS:
+			case GREATER_THAN:
+			case LESS_THAN:
+				expected = type.toComparisonValue(unsignedType, testValue);
+				break;
+			case AND_ALL_SET:
+			case AND_ALL_CLEARED:
+				expected = testValue;
+				break;
+			case NEGATE:
+				expected = type.maskValue(~testValue);
+				break;
+			default:
+				return null;
+		}
+		long andMask;
+		if (andValue == null) {
+			andMask = -1L;
+		} else {
+			andMask = andValue;
+		}
+
+		int size = type.getBytesPerType();
+		EndianConverter converter = type.getEndianConverter();
+		if (type instanceof Id3LengthType) {
+			// reads the bytes in its own way
+			return new ExtractedLongTest(type, operator, expected, andMask, shift);
+		} else if (size == 1) {
+			return new ByteTest(type, operator, expected, andMask, shift);
+		} else if (converter instanceof BigEndianConverter) {
+			switch (size) {
+				case 2:
+					return new BigEndianShortTest(type, operator, expected, andMask, shift);
+				case 4:
+					return new BigEndianIntTest(type, operator, expected, andMask, shift);
+				case 8:
+					return new BigEndianLongTest(type, operator, expected, andMask, shift);
+				default:
+					return new ExtractedLongTest(type, operator, expected, andMask, shift);
+			}
+		} else if (converter instanceof LittleEndianConverter) {
+			switch (size) {
+				case 2:
+					return new LittleEndianShortTest(type, operator, expected, andMask, shift);
+				case 4:
+					return new LittleEndianIntTest(type, operator, expected, andMask, shift);
+				case 8:
+					return new LittleEndianLongTest(type, operator, expected, andMask, shift);
+				default:
+					return new ExtractedLongTest(type, operator, expected, andMask, shift);
+			}
+		} else {
+			return new ExtractedLongTest(type, operator, expected, andMask, shift);
+		}
+	}
+
+	/**
+	 * Base class for the number tests. The sub-classes read the bytes and then call {@link #matchValue(long, int)}.
+	 */
+	private static abstract class LongTest extends CompiledTest {
+
+		private static final int OP_EQUALS = 1;
+		private static final int OP_NOT_EQUALS = 2;
+		private static final int OP_GREATER_THAN = 3;
+		private static final int OP_LESS_THAN = 4;
+		private static final int OP_AND_ALL_SET = 5;
+		private static final int OP_AND_ALL_CLEARED = 6;
+		private static final int OP_NEGATE = 7;
+
+		private final BaseLongType type;
+		private final TestOperator operator;
+		/** the operator as a constant so we can switch on it directly */
+		private final int operatorId;
+		private final long expected;
+		private final long andMask;
+		private final int shift;
+		protected final int size;
+
+		public LongTest(BaseLongType type, TestOperator operator, long expected, long andMask, int shift) {
+			this.type = type;
+			this.operator = operator;
+			this.operatorId = operatorIdOf(operator);
+			this.expected = expected;
+			this.andMask = andMask;
+			this.shift = shift;
+			this.size = type.getBytesPerType();
+		}
+
+		@Override
+		Object getValue(byte[] bytes, int start, int offset) {
+			return type.extractLong(start + offset, bytes);
+		}
+
+		/**
+		 * Return the offset after the value if the value from the bytes matches or {@link #NO_MATCH} if not.
+		 */
+		protected final int matchValue(long value, int nextOffset) {
+			value &= andMask;
+			boolean matches;
+			switch (operatorId) {
+				case OP_EQUALS:
+					matches = (((value << shift) >> shift) == expected);
+					break;
+				case OP_NOT_EQUALS:
+					matches = (((value << shift) >> shift) != expected);
+					break;
+				case OP_GREATER_THAN:
+					matches = (((value << shift) >> shift) > expected);
+					break;
+				case OP_LESS_THAN:
+					matches = (((value << shift) >> shift) < expected);
+					break;
+				case OP_AND_ALL_SET:
+					matches = ((value & expected) == expected);
+					break;
+				case OP_AND_ALL_CLEARED:
+					matches = ((value & expected) == 0);
+					break;
+				case OP_NEGATE:
+				default:
+					matches = (value == expected);
+					break;
+			}
+			if (matches) {
+				return nextOffset;
+			} else {
+				return NO_MATCH;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + " " + operator + " " + expected;
+		}
+
+		private static int operatorIdOf(TestOperator operator) {
+			switch (operator) {
+				case EQUALS:
+					return OP_EQUALS;
+				case NOT_EQUALS:
+					return OP_NOT_EQUALS;
+				case GREATER_THAN:
+					return OP_GREATER_THAN;
+				case LESS_THAN:
+					return OP_LESS_THAN;
+				case AND_ALL_SET:
+					return OP_AND_ALL_SET;
+				case AND_ALL_CLEARED:
+					return OP_AND_ALL_CLEARED;
+				case NEGATE:
+					return OP_NEGATE;
+				default:
+					throw new IllegalArgumentException("Unknown operator: " + operator);
+			}
+		}
+	}
+
+	private static class ByteTest extends LongTest {
+
+		public ByteTest(BaseLongType type, TestOperator operator, long expected, long andMask, int shift) {
+			super(type, operator, expected, andMask, shift);
+		}
+
+		@Override
+		int test(byte[] bytes, int start, int length, int offset) {
+			if (offset < 0 || offset >= length) {
+				return NO_MATCH;
+			}
+			return matchValue(bytes[start + offset] & 0xFFL, offset + 1);
+		}
+	}
+
+	private static class BigEndianShortTest extends LongTest {
+
+		public BigEndianShortTest(BaseLongType type, TestOperator operator, long expected, long andMask, int shift) {
+			super(type, operator, expected, andMask, shift);
+		}
+
+		@Override
+		int test(byte[] bytes, int start, int length, int offset) {
+			if (offset < 0 || offset + 2 > length) {
+				return NO_MATCH;
+			}
+			int index = start + offset;
+			long value = (bytes[index] & 0xFFL) << 8 | (bytes[index + 1] & 0xFFL);
+			return matchValue(value, offset + 2);
+		}
+	}
+
+	private static class LittleEndianShortTest extends LongTest {
+
+		public LittleEndianShortTest(BaseLongType type, TestOperator operator, long expected, long andMask, int shift) {
+			super(type, operator, expected, andMask, shift);
+		}
+
+		@Override
+		int test(byte[] bytes, int start, int length, int offset) {
+			if (offset < 0 || offset + 2 > length) {
+				return NO_MATCH;
+			}
+			int index = start + offset;
+			long value = (bytes[index + 1] & 0xFFL) << 8 | (bytes[index] & 0xFFL);
+			return matchValue(value, offset + 2);
+		}
+	}
+
+	private static class BigEndianIntTest extends LongTest {
+
+		public BigEndianIntTest(BaseLongType type, TestOperator operator, long expected, long andMask, int shift) {
+			super(type, operator, expected, andMask, shift);
+		}
+
+		@Override
+		int test(byte[] bytes, int start, int length, int offset) {
+			if (offset < 0 || offset + 4 > length) {
+				return NO_MATCH;
+			}
+			int index = start + offset;
+			long value = (bytes[index] & 0xFFL) << 24 | (bytes[index + 1] & 0xFFL) << 16
+					| (bytes[index + 2] & 0xFFL) << 8 | (bytes[index + 3] & 0xFFL);
+			return matchValue(value, offset + 4);
+		}
+	}
+
+	private static class LittleEndianIntTest extends LongTest {
+
+		public LittleEndianIntTest(BaseLongType type, TestOperator operator, long expected, long andMask, int shift) {
+			super(type, operator, expected, andMask, shift);
+		}
+
+		@Override
+		int test(byte[] bytes, int start, int length, int offset) {
+			if (offset < 0 || offset + 4 > length) {
+				return NO_MATCH;
+			}
+			int index = start + offset;
+			long value = (bytes[index + 3] & 0xFFL) << 24 | (bytes[index + 2] & 0xFFL) << 16
+					| (bytes[index + 1] & 0xFFL) << 8 | (bytes[index] & 0xFFL);
+			return matchValue(value, offset + 4);
+		}
+	}
+
+	private static class BigEndianLongTest extends LongTest {
+
+		public BigEndianLongTest(BaseLongType type, TestOperator operator, long expected, long andMask, int shift) {
+			super(type, operator, expected, andMask, shift);
+		}
+
+		@Override
+		int test(byte[] bytes, int start, int length, int offset) {
+			if (offset < 0 || offset + 8 > length) {
+				return NO_MATCH;
+			}
+			int index = start + offset;
+			long value = 0;
+			for (int i = index; i < index + 8; i++) {
+				value = value << 8 | (bytes[i] & 0xFFL);
+			}
+			return matchValue(value, offset + 8);
+		}
+	}
+
+	private static class LittleEndianLongTest extends LongTest {
+
+		public LittleEndianLongTest(BaseLongType type, TestOperator operator, long expected, long andMask, int shift) {
+			super(type, operator, expected, andMask, shift);
+		}
+
+		@Override
+		int test(byte[] bytes, int start, int length, int offset) {
+			if (offset < 0 || offset + 8 > length) {
+				return NO_MATCH;
+			}
+			int index = start + offset;
+			long value = 0;
+			for (int i = index + 7; i >= index; i--) {
+				value = value << 8 | (bytes[i] & 0xFFL);
+			}
+			return matchValue(value, offset + 8);
+		}
+	}
+
+	/**
+	 * Number test where the type reads the value from the bytes. Used for the other endian-ness and sizes.
+	 */
+	private static class ExtractedLongTest extends LongTest {
+
+		private final BaseLongType type;
+
+		public ExtractedLongTest(BaseLongType type, TestOperator operator, long expected, long andMask, int shift) {
+			super(type, operator, expected, andMask, shift);
+			this.type = type;
+		}
+
+		@Override
+		int test(byte[] bytes, int start, int length, int offset) {
+			if (!type.hasBytes(offset, length)) {
+				return NO_MATCH;
+			}
+			return matchValue(type.extractLong(start + offset, bytes), offset + size);
+		}
+	}
+
+	/**
+	 * String test where the bytes must match the pattern exactly.
+	 */
+	private static class ExactStringTest extends CompiledTest {
+
+		private final byte[] patternBytes;
+		private final String pattern;
+
+		public ExactStringTest(byte[] patternBytes, String pattern) {
+			this.patternBytes = patternBytes;
+			this.pattern = pattern;
+		}
+
+		@Override
+		int test(byte[] bytes, int start, int length, int offset) {
+			if (offset < 0 || offset + patternBytes.length > length) {
+				return NO_MATCH;
+			}
+			int index = start + offset;
+			for (int i = 0; i < patternBytes.length; i++) {
+				if (bytes[index + i] != patternBytes[i]) {
+					return NO_MATCH;
+				}
+			}
+			return offset + patternBytes.length;
+		}
+
+		@Override
+		Object getValue(byte[] bytes, int start, int offset) {
+			return pattern;
+		}
+
+		@Override
+		public String toString() {
+			return "ExactStringTest " + pattern;
+		}
+	}
+}
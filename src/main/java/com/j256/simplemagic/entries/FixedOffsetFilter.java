@@ -0,0 +1,192 @@
+package com.j256.simplemagic.entries;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Filter of the top-level entries by the bytes that they require at fixed offsets. For each offset that is tested by
+ * any entry, we build a table from the byte at that offset to a bit-set of the entries which could still match. At
+ * match time we AND together the bit-sets for the bytes in the content and only the surviving entries need to be run.
+ *
+ * <p>
+ * <b>NOTE:</b> This only removes entries that can never match so the order and results of the matching is unchanged.
+ * </p>
+ *
+ * @author graywatson
+ */
+class FixedOffsetFilter {
+
+	/** we only index the first few bytes of each entry since that is usually enough to tell them apart */
+	private static final int MAX_BYTES_PER_ENTRY = 4;
+	private static final int BYTE_TABLE_SIZE = 256;
+
+	private final int numEntries;
+	private final int numWords;
+	/** offsets that are tested by the entries in ascending order */
+	private final int[] positions;
+	/** for each position, a table from the byte at that position to the entries that could match */
+	private final long[][][] byteTables;
+	/** for each position, the entries that don't test the bytes at that position or any position after it */
+	private final long[][] remainingUntested;
+
+	/**
+	 * Build our filter from the top-level entries.
+	 */
+	public FixedOffsetFilter(List<MagicEntry> entries) {
+		this.numEntries = entries.size();
+		this.numWords = (numEntries + 63) / 64;
+
+		// first find the entries which require each byte at each position
+		Map<Integer, long[][]> requiredMap = new TreeMap<Integer, long[][]>();
+		for (int entryIndex = 0; entryIndex < numEntries; entryIndex++) {
+			MagicEntry entry = entries.get(entryIndex);
+			int offset = entry.getFixedOffset();
+			if (offset < 0) {
+				continue;
+			}
+			byte[] requiredBytes = entry.getRequiredBytes();
+			if (requiredBytes == null) {
+				continue;
+			}
+			for (int i = 0; i < requiredBytes.length && i < MAX_BYTES_PER_ENTRY; i++) {
+				long[][] byteEntries = requiredMap.get(offset + i);
+				if (byteEntries == null) {
+					byteEntries = new long[BYTE_TABLE_SIZE][];
+					requiredMap.put(offset + i, byteEntries);
+				}
+				int byteIndex = (requiredBytes[i] & 0xFF);
+				if (byteEntries[byteIndex] == null) {
+					byteEntries[byteIndex] = new long[numWords];
+				}
+				setBit(byteEntries[byteIndex], entryIndex);
+			}
+		}
+
+		// now turn them into the tables of the entries that can match each byte
+		this.positions = new int[requiredMap.size()];
+		this.byteTables = new long[positions.length][][];
+		long[][] untestedSets = new long[positions.length][];
+		int posIndex = 0;
+		for (Map.Entry<Integer, long[][]> mapEntry : requiredMap.entrySet()) {
+			positions[posIndex] = mapEntry.getKey();
+			long[][] byteEntries = mapEntry.getValue();
+			// the entries that don't test this position can always match
+			long[] untested = allEntries();
+			for (long[] required : byteEntries) {
+				if (required != null) {
+					for (int i = 0; i < numWords; i++) {
+						untested[i] &= ~required[i];
+					}
+				}
+			}
+			long[][] byteTable = new long[BYTE_TABLE_SIZE][];
+			for (int byteIndex = 0; byteIndex < BYTE_TABLE_SIZE; byteIndex++) {
+				if (byteEntries[byteIndex] == null) {
+					// share the array if no entries require this byte
+					byteTable[byteIndex] = untested;
+				} else {
+					long[] matching = Arrays.copyOf(untested, numWords);
+					for (int i = 0; i < numWords; i++) {
+						matching[i] |= byteEntries[byteIndex][i];
+					}
+					byteTable[byteIndex] = matching;
+				}
+			}
+			byteTables[posIndex] = byteTable;
+			untestedSets[posIndex] = untested;
+			posIndex++;
+		}
+
+		// if the content is shorter than a position then the entries that test it and the ones after it can't match
+		this.remainingUntested = new long[positions.length][];
+		long[] remaining = allEntries();
+		for (posIndex = positions.length - 1; posIndex >= 0; posIndex--) {
+			remaining = Arrays.copyOf(remaining, numWords);
+			for (int i = 0; i < numWords; i++) {
+				remaining[i] &= untestedSets[posIndex][i];
+			}
+			remainingUntested[posIndex] = remaining;
+		}
+	}
+
+	/**
+	 * Return a bit-set of the indexes of the entries that may match the bytes.
+	 */
+	public long[] findCandidates(byte[] bytes) {
+		return findCandidates(bytes, new long[numWords]);
+	}
+
+	/**
+	 * Same as {@link #findCandidates(byte[])} but fills in and returns the bit-set that is passed in which must have
+	 * {@link #getNumWords()} words.
+	 */
+	public long[] findCandidates(byte[] bytes, long[] candidates) {
+		return findCandidates(bytes, 0, bytes.length, false, candidates);
+	}
+
+	/**
+	 * Same as {@link #findCandidates(byte[], long[])} but for the length bytes in the array from the start index. If
+	 * truncated is true then the bytes are only the start of the content so the entries that test past their end are
+	 * not removed.
+	 */
+	public long[] findCandidates(byte[] bytes, int start, int length, boolean truncated, long[] candidates) {
+		fillAllEntries(candidates);
+		int posIndex = 0;
+		for (; posIndex < positions.length && positions[posIndex] < length; posIndex++) {
+			long[] matching = byteTables[posIndex][bytes[start + positions[posIndex]] & 0xFF];
+			for (int i = 0; i < numWords; i++) {
+				candidates[i] &= matching[i];
+			}
+		}
+		if (posIndex < positions.length && !truncated) {
+			long[] untested = remainingUntested[posIndex];
+			for (int i = 0; i < numWords; i++) {
+				candidates[i] &= untested[i];
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Return the number of positions that we are testing.
+	 */
+	public int getPositionCount() {
+		return positions.length;
+	}
+
+	/**
+	 * Set the bit associated with the index in the bit-set.
+	 */
+	static void setBit(long[] bitSet, int index) {
+		bitSet[index >> 6] |= (1L << index);
+	}
+
+	/**
+	 * Clear the bit associated with the index in the bit-set.
+	 */
+	static void clearBit(long[] bitSet, int index) {
+		bitSet[index >> 6] &= ~(1L << index);
+	}
+
+	/**
+	 * Return the number of words in the candidates bit-set.
+	 */
+	public int getNumWords() {
+		return numWords;
+	}
+
+	private long[] allEntries() {
+		long[] bitSet = new long[numWords];
+		fillAllEntries(bitSet);
+		return bitSet;
+	}
+
+	private void fillAllEntries(long[] bitSet) {
+		Arrays.fill(bitSet, -1L);
+		if (numEntries % 64 != 0) {
+			bitSet[numWords - 1] = (1L << numEntries) - 1;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.j256.simplemagic.entries;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.j256.simplemagic.ContentInfoUtil.ErrorCallBack;
+
+/**
+ * Compiles a magic file at build time into the format read by {@link MagicEntries#readCompiledEntries}. This also
+ * writes a normalized version of the magic file without the comments, blank lines, and extra whitespace for the
+ * fallback. The build fails if a line in the magic file has an error and it is not in the file of unsupported lines
+ * because it would be ignored at runtime.
+ *
+ * <pre>
+ * java MagicCompiler magic-file compiled-output [normalized-output [unsupported-lines-file]]
+ * </pre>
+ *
+ * @author graywatson
+ */
+public class MagicCompiler {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 4) {
+			System.err.println("Usage: java " + MagicCompiler.class.getName()
+					+ " magic-file compiled-output [normalized-output [unsupported-lines-file]]");
+			System.exit(1);
+			return;
+		}
+		Set<String> unsupportedLines = new HashSet<String>();
+		if (args.length > 3) {
+			// normalized so they match the lines that are parsed below
+			for (String line : normalize(args[3]).split("\n")) {
+				unsupportedLines.add(line);
+			}
+		}
+
+		String normalized = normalize(args[0]);
+		if (args.length > 2) {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(args[2]), "UTF-8");
+			try {
+				writer.write(normalized);
+			} finally {
+				writer.close();
+			}
+		}
+
+		CollectingErrorCallBack errorCallBack = new CollectingErrorCallBack(unsupportedLines);
+		MagicEntries.Builder builder = new MagicEntries.Builder();
+		builder.readEntries(new BufferedReader(new StringReader(normalized)), errorCallBack);
+		MagicEntries entries = builder.build();
+		if (!errorCallBack.errors.isEmpty()) {
+			for (String error : errorCallBack.errors) {
+				System.err.println(error);
+			}
+			System.err.println("Magic file " + args[0] + " has " + errorCallBack.errors.size()
+					+ " errors on lines that are not in the unsupported lines file");
+			System.exit(1);
+			return;
+		}
+		for (String line : unsupportedLines) {
+			if (line.length() > 0 && !errorCallBack.ignoredLines.contains(line)) {
+				System.err.println("Unsupported line no longer generates an error and can be removed: " + line);
+			}
+		}
+
+		OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(args[1]));
+		try {
+			entries.writeCompiledEntries(outputStream);
+		} finally {
+			outputStream.close();
+		}
+		System.out.println("Compiled " + args[0] + " into " + args[1] + " with " + errorCallBack.ignoredLines.size()
+				+ " ignored unsupported lines");
+	}
+
+	/**
+	 * Read in the magic file and return the normalized version of it.
+	 */
+	public static String normalize(String magicPath) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(magicPath), "UTF-8"));
+		try {
+			StringBuilder sb = new StringBuilder();
+			while (true) {
+				String line = reader.readLine();
+				if (line == null) {
+					break;
+				}
+				line = normalizeLine(line);
+				if (line != null) {
+					sb.append(line).append('\n');
+				}
+			}
+			return sb.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Return the line with its fields separated by single tabs or null if it is blank or a comment and can be dropped.
+	 * The format at the end of the line is left alone because its whitespace is shown to the user. Lines which we can't
+	 * split are returned as is so they generate the same errors when they are parsed.
+	 */
+	public static String normalizeLine(String line) {
+		if (line.trim().length() == 0 || line.charAt(0) == '#') {
+			return null;
+		}
+		if (line.startsWith("!:")) {
+			return line;
+		}
+		String[] parts = MagicEntryParser.splitLine(line, null);
+		if (parts == null) {
+			return line;
+		}
+		StringBuilder sb = new StringBuilder(line.length());
+		for (String part : parts) {
+			if (sb.length() > 0) {
+				sb.append('\t');
+			}
+			sb.append(part);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Saves the errors on the lines that aren't known to be unsupported so we can show them.
+	 */
+	private static class CollectingErrorCallBack implements ErrorCallBack {
+
+		private final Set<String> unsupportedLines;
+		final List<String> errors = new ArrayList<String>();
+		final Set<String> ignoredLines = new HashSet<String>();
+
+		public CollectingErrorCallBack(Set<String> unsupportedLines) {
+			this.unsupportedLines = unsupportedLines;
+		}
+
+		@Override
+		public void error(String line, String details, Exception e) {
+			if (unsupportedLines.contains(line)) {
+				ignoredLines.add(line);
+			} else {
+				errors.add("Magic error: " + details + ": " + line);
+			}
+		}
+	}
+}
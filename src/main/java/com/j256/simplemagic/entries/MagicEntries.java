@@ -1,59 +1,121 @@
 package com.j256.simplemagic.entries;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import com.j256.simplemagic.ContentFingerprint;
 import com.j256.simplemagic.ContentInfo;
+import com.j256.simplemagic.ContentInfoCache;
 import com.j256.simplemagic.ContentInfoUtil.ErrorCallBack;
+import com.j256.simplemagic.ContentSource;
+import com.j256.simplemagic.endian.EndianType;
 import com.j256.simplemagic.logger.Logger;
 import com.j256.simplemagic.logger.LoggerFactory;
+import com.j256.simplemagic.types.RegexType;
+import com.j256.simplemagic.types.SearchType;
+import com.j256.simplemagic.types.StringOperator;
+import com.j256.simplemagic.types.TestOperator;
 
 /**
  * Class which encompasses a set of entries and allows us to optimize their use.
  * 
+ * <p>
+ * Entries that are made with the {@link Builder} are frozen and can't be changed after they are built. They can be
+ * shared by any number of threads finding matches at the same time as long as they are published safely, such as
+ * through a final field, which is how {@link com.j256.simplemagic.ContentInfoUtil} holds them. Each thread matches with
+ * its own reusable context.
+ * </p>
+ * 
  * @author graywatson
  */
 public class MagicEntries {
 
 	private static final int MAX_LEVELS = 20;
+	/** "SMDB" which starts the compiled format */
+	private static final int COMPILED_MAGIC = 0x534D4442;
+	/** must be incremented if the compiled format of the entries or of the type test-values changes */
+	private static final int COMPILED_VERSION = 1;
+	/** the enums are written by ordinal so the compiled entries can't be used if any of them change */
+	private static final int COMPILED_ENUM_SIGNATURE = enumSignature(MagicType.values(), EndianType.values(),
+			TestOperator.values(), StringOperator.values());
 	private static final int FIRST_BYTE_LIST_SIZE = 256;
 	private static Logger logger = LoggerFactory.getLogger(MagicEntries.class);
 
 	private final List<MagicEntry> entryList = new ArrayList<MagicEntry>();
-	@SuppressWarnings("unchecked")
-	private final List<MagicEntry>[] firstByteEntryLists = new ArrayList[FIRST_BYTE_LIST_SIZE];
+	private PrefixNode prefixRoot = new PrefixNode(true);
+	private FixedOffsetFilter offsetFilter;
+	private NumberEqualsDispatch numberDispatch;
+	private MultiPatternSearch multiPatternSearch;
+	/** bit-set of the top-level entries that can only match text content or null if none */
+	private long[] textOnlyEntries;
+	private MagicEntry[] entryArray;
+	private int numRegexes;
+	/** number of bytes from the start of the content that the entries with fixed offsets look at */
+	private int staticReadSize;
+	/** number of bytes from the start that the search and regex entries look at or -1 if it depends on the content */
+	private int searchReadSize;
+	private boolean compileTests = true;
+	/** set once we have been built so we can't be changed */
+	private boolean frozen;
+	/** reusable context for each thread that is finding matches */
+	private ThreadLocal<MatchContext> matchContexts = newMatchContexts();
 
 	/**
-	 * Read the entries so later we can find matches with them.
+	 * Read the entries so later we can find matches with them. Large files are parsed in parallel using the common
+	 * fork-join pool.
 	 */
 	public void readEntries(BufferedReader lineReader, ErrorCallBack errorCallBack) throws IOException {
+		readEntries(lineReader, errorCallBack, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Read the entries so later we can find matches with them. The lines are parsed using the pool or by the calling
+	 * thread if the pool is null.
+	 */
+	public void readEntries(BufferedReader lineReader, ErrorCallBack errorCallBack, ForkJoinPool pool)
+			throws IOException {
+		checkNotFrozen();
+		addParsedFile(ParsedMagicFile.parse(lineReader, pool), errorCallBack);
+	}
+
+	/**
+	 * Add the entries from the parsed file after any that have already been added. This links the entries to their
+	 * parents and reports any errors in the order of the lines.
+	 */
+	public void addParsedFile(ParsedMagicFile parsedFile, ErrorCallBack errorCallBack) {
+		checkNotFrozen();
 		final MagicEntry[] levelParents = new MagicEntry[MAX_LEVELS];
 		MagicEntry previousEntry = null;
-		while (true) {
-			String line = lineReader.readLine();
-			if (line == null) {
-				break;
-			}
-			// skip blanks and comments
-			if (line.length() == 0 || line.charAt(0) == '#') {
-				continue;
-			}
-
-			MagicEntry entry;
-			try {
+		for (int i = 0; i < parsedFile.getLineCount(); i++) {
+			String line = parsedFile.getLine(i);
+			if (parsedFile.isSpecialLine(i)) {
 				// we need the previous entry because of mime-type, etc. which augment the previous line
-				entry = MagicEntryParser.parseLine(previousEntry, line, errorCallBack);
-				if (entry == null) {
-					continue;
-				}
-			} catch (IllegalArgumentException e) {
-				if (errorCallBack != null) {
-					errorCallBack.error(line, e.getMessage(), e);
+				try {
+					MagicEntryParser.parseLine(previousEntry, line, errorCallBack);
+				} catch (IllegalArgumentException e) {
+					if (errorCallBack != null) {
+						errorCallBack.error(line, e.getMessage(), e);
+					}
 				}
 				continue;
 			}
+			parsedFile.reportErrors(i, errorCallBack);
+			MagicEntry entry = parsedFile.getEntry(i);
+			if (entry == null) {
+				continue;
+			}
 
 			int level = entry.getLevel();
 			if (previousEntry == null && level != 0) {
@@ -82,50 +144,656 @@ public class MagicEntries {
 	}
 
 	/**
-	 * Optimize the magic entries by removing the first-bytes information into their own lists
+	 * Write the entries in a compiled binary format which can be read back with
+	 * {@link #readCompiledEntries(InputStream)} much faster than parsing the magic file.
+	 * 
+	 * <p>
+	 * <b>NOTE:</b> The caller is responsible for closing the output-stream.
+	 * </p>
 	 */
-	public void optimizeFirstBytes() {
-		// now we post process the entries and remove the first byte ones we can optimize
+	public void writeCompiledEntries(OutputStream outputStream) throws IOException {
+		// the entries are written first so we can collect the strings for the table which is read before them
+		CompiledStringTable strings = new CompiledStringTable();
+		ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+		DataOutputStream entryOutput = new DataOutputStream(entryBytes);
+		entryOutput.writeInt(entryList.size());
 		for (MagicEntry entry : entryList) {
+			entry.writeCompiled(entryOutput, strings);
+		}
+		entryOutput.flush();
+
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+		output.writeInt(COMPILED_MAGIC);
+		output.writeInt(COMPILED_VERSION);
+		output.writeInt(COMPILED_ENUM_SIGNATURE);
+		strings.writeTable(output);
+		entryBytes.writeTo(output);
+		output.flush();
+	}
+
+	/**
+	 * Read in the entries that were written by {@link #writeCompiledEntries(OutputStream)}. The entries still need to
+	 * be optimized afterwards.
+	 * 
+	 * <p>
+	 * <b>NOTE:</b> The caller is responsible for closing the input-stream.
+	 * </p>
+	 * 
+	 * @return True if the entries were read or false if the stream is not in the compiled format or was written with a
+	 *         different version of it, in which case the caller should read the magic file instead.
+	 */
+	public boolean readCompiledEntries(InputStream inputStream) throws IOException {
+		checkNotFrozen();
+		// reading all of the bytes at once is much faster than a data stream which synchronizes each read
+		DataInput input = new ByteArrayDataInput(readFully(inputStream));
+		try {
+			if (input.readInt() != COMPILED_MAGIC || input.readInt() != COMPILED_VERSION
+					|| input.readInt() != COMPILED_ENUM_SIGNATURE) {
+				return false;
+			}
+		} catch (EOFException e) {
+			// too short for the header
+			return false;
+		}
+		CompiledStringTable strings = CompiledStringTable.readTable(input);
+		int numEntries = input.readInt();
+		List<MagicEntry> entries = new ArrayList<MagicEntry>(numEntries);
+		for (int i = 0; i < numEntries; i++) {
+			entries.add(MagicEntry.readCompiled(input, strings));
+		}
+		entryList.addAll(entries);
+		return true;
+	}
+
+	/**
+	 * Optimize the magic entries by indexing the starting-bytes information into a prefix tree.
+	 */
+	public void optimizeFirstBytes() {
+		checkNotFrozen();
+		PrefixNode root = new PrefixNode(true);
+		// now we post process the entries and index the starting byte ones we can optimize
+		for (int entryIndex = 0; entryIndex < entryList.size(); entryIndex++) {
+			MagicEntry entry = entryList.get(entryIndex);
 			byte[] startingBytes = entry.getStartsWithByte();
 			if (startingBytes == null || startingBytes.length == 0) {
 				continue;
 			}
-			int index = (0xFF & startingBytes[0]);
-			if (firstByteEntryLists[index] == null) {
-				firstByteEntryLists[index] = new ArrayList<MagicEntry>();
+			/*
+			 * If the starting bytes have to match exactly then we can index the entry by all of them. Otherwise there
+			 * may be optional characters or != or > comparisons in the match so we can only index by the first byte.
+			 */
+			byte[] prefix = entry.getRequiredBytes();
+			int prefixLength;
+			if (prefix == null || prefix.length == 0) {
+				prefix = startingBytes;
+				prefixLength = 1;
+			} else {
+				prefixLength = prefix.length;
 			}
-			firstByteEntryLists[index].add(entry);
+			root.addEntry(prefix, prefixLength, entry, entryIndex);
 			/*
-			 * We put an entry in the first-byte list but need to leave it in the main list because there may be
-			 * optional characters or != or > comparisons in the match
+			 * We put an entry in the prefix tree but need to leave it in the main list because there may be optional
+			 * characters or != or > comparisons in the match
 			 */
 		}
+		root.finish(null, null);
+		prefixRoot = root;
+		offsetFilter = new FixedOffsetFilter(entryList);
+		numberDispatch = new NumberEqualsDispatch(entryList);
+		MultiPatternSearch search = new MultiPatternSearch();
+		addSearchPatterns(search, entryList);
+		if (search.getPatternCount() == 0) {
+			multiPatternSearch = null;
+		} else {
+			search.finish();
+			multiPatternSearch = search;
+		}
+		textOnlyEntries = findTextOnlyEntries();
+		numRegexes = assignRegexIds(entryList, 0);
+		staticReadSize = 0;
+		searchReadSize = 0;
+		findReadSizes(entryList);
+		for (MagicEntry entry : entryList) {
+			entry.markMimeTypeEntries();
+			entry.compileTests(compileTests);
+		}
+		entryArray = entryList.toArray(new MagicEntry[entryList.size()]);
+		// the contexts depend on the search patterns and regexes
+		matchContexts = newMatchContexts();
+	}
+
+	/**
+	 * Set whether or not the tests of the entries are compiled into specialized classes when the entries are optimized,
+	 * which is the default. If false then the tests are interpreted which is slower but is the reference for how the
+	 * tests work.
+	 */
+	public void setCompileTests(boolean compileTests) {
+		checkNotFrozen();
+		this.compileTests = compileTests;
+		if (entryArray != null) {
+			// already optimized
+			for (MagicEntry entry : entryList) {
+				entry.compileTests(compileTests);
+			}
+		}
+	}
+
+	/**
+	 * Return true if we were made by a {@link Builder} and so can't be changed.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Return the number of bytes from the start of the content that the entries with fixed offsets look at. This does
+	 * not include the search and regex entries, see {@link #getSearchReadSize()}, or the entries whose offsets are read
+	 * from the content or are relative to the match of their parent. The entries have to have been optimized.
+	 */
+	public int getStaticReadSize() {
+		return staticReadSize;
+	}
+
+	/**
+	 * Return the number of bytes from the start of the content that the search and regex entries look at or -1 if it
+	 * depends on the content, such as with a regex which matches lines. The entries have to have been optimized.
+	 */
+	public int getSearchReadSize() {
+		return searchReadSize;
 	}
 
 	/**
 	 * Find and return a match for the associated bytes.
 	 */
 	public ContentInfo findMatch(byte[] bytes) {
+		return findMatch(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Find and return a match for the content from the source. The first read-size bytes of the content are read and
+	 * matched in memory. The entries that test past them read the bytes that they need from the source so they can
+	 * still match.
+	 *
+	 * @throws IOException
+	 *             If there was a problem reading from the source.
+	 */
+	public ContentInfo findMatch(ContentSource source, int readSize) throws IOException {
+		return findMatch(source, readSize, readSize, null);
+	}
+
+	/**
+	 * Same as {@link #findMatch(ContentSource, int)} but only the first-read-size bytes are read to start with. If a
+	 * regex or the text classification looked at all of them, and so may match differently with more bytes, then the
+	 * read-size bytes are read and matched instead. Most binary content is matched with just the first bytes.
+	 *
+	 * @throws IOException
+	 *             If there was a problem reading from the source.
+	 */
+	public ContentInfo findMatch(ContentSource source, int firstReadSize, int readSize) throws IOException {
+		return findMatch(source, firstReadSize, readSize, null);
+	}
+
+	/**
+	 * Same as {@link #findMatch(ContentSource, int, int)} but the results are cached by the fingerprint of the bytes
+	 * that were read. A result that depended on more of the source than those bytes is not cached.
+	 *
+	 * @param cache
+	 *            Cache of the results or null if none.
+	 * @throws IOException
+	 *             If there was a problem reading from the source.
+	 */
+	public ContentInfo findMatch(ContentSource source, int firstReadSize, int readSize, ContentInfoCache cache)
+			throws IOException {
+		if (firstReadSize <= 0) {
+			throw new IllegalArgumentException("First read size must be positive: " + firstReadSize);
+		}
+		if (readSize <= 0) {
+			throw new IllegalArgumentException("Read size must be positive: " + readSize);
+		}
+		long sourceLength = source.getLength();
+		if (sourceLength <= 0) {
+			return ContentInfo.EMPTY_INFO;
+		}
+		MatchContext context = matchContexts.get();
+		try {
+			int length = (int) Math.min(Math.min(firstReadSize, readSize), sourceLength);
+			boolean mayMatchAgain = (length < readSize && length < sourceLength);
+			ContentInfo info = findMatch(context, source, sourceLength, length, cache, mayMatchAgain);
+			if (mayMatchAgain && context.isMoreBytesNeeded()) {
+				logger.trace("matching again with {} bytes", readSize);
+				context.clear();
+				info = findMatch(context, source, sourceLength, (int) Math.min(readSize, sourceLength), cache, false);
+			}
+			return info;
+		} catch (MatchContext.SourceReadException e) {
+			throw e.getCause();
+		} finally {
+			context.clear();
+		}
+	}
+
+	/**
+	 * Find and return a match for the bytes between the position and limit of the buffer. The position of the buffer
+	 * is not changed. If the buffer is backed by an array then we match against the array directly. Direct and
+	 * read-only buffers don't give us their array so their bytes are copied into a buffer which is reused by the
+	 * thread.
+	 */
+	public ContentInfo findMatch(ByteBuffer buffer) {
+		return findMatch(buffer, null);
+	}
+
+	/**
+	 * Same as {@link #findMatch(ByteBuffer)} but the results are cached by the fingerprint of the bytes.
+	 *
+	 * @param cache
+	 *            Cache of the results or null if none.
+	 */
+	public ContentInfo findMatch(ByteBuffer buffer, ContentInfoCache cache) {
+		int length = buffer.remaining();
+		if (length == 0) {
+			return ContentInfo.EMPTY_INFO;
+		}
+		if (buffer.hasArray()) {
+			return findMatch(buffer.array(), buffer.arrayOffset() + buffer.position(), length, cache);
+		}
+		MatchContext context = matchContexts.get();
+		byte[] copyBuffer = context.getCopyBuffer(length);
+		// duplicate so we don't move the position of the caller's buffer
+		buffer.duplicate().get(copyBuffer, 0, length);
+		context.reset(copyBuffer, 0, length);
+		try {
+			return findMatch(context, cache, false);
+		} finally {
+			context.clear();
+		}
+	}
+
+	/**
+	 * Find and return a match for the first read-size bytes that are read from the input-stream with a single read or
+	 * null if none matched. The bytes are read into a buffer that is reused by the thread's next match unless the
+	 * read-size is large.
+	 *
+	 * <p>
+	 * <b>NOTE:</b> The caller is responsible for closing the input-stream.
+	 * </p>
+	 *
+	 * @param cache
+	 *            Cache of the results or null if none.
+	 * @throws IOException
+	 *             If there was a problem reading from the input-stream.
+	 */
+	public ContentInfo findMatch(InputStream inputStream, int readSize, ContentInfoCache cache) throws IOException {
+		MatchContext context = matchContexts.get();
+		byte[] bytes = context.getCopyBuffer(readSize);
+		int numRead = inputStream.read(bytes, 0, readSize);
+		if (numRead < 0) {
+			return null;
+		} else if (numRead == 0) {
+			return ContentInfo.EMPTY_INFO;
+		}
+		context.reset(bytes, 0, numRead);
+		try {
+			return findMatch(context, cache, false);
+		} finally {
+			context.clear();
+		}
+	}
+
+	/**
+	 * Find and return a match for the length bytes in the array starting at the offset. The bytes outside of that part
+	 * of the array are not looked at so the content does not have to be copied out of a larger buffer.
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             If the offset and length are not inside of the array.
+	 */
+	public ContentInfo findMatch(byte[] bytes, int offset, int length) {
+		return findMatch(bytes, offset, length, null);
+	}
+
+	/**
+	 * Same as {@link #findMatch(byte[], int, int)} but the results are cached by the fingerprint of the bytes.
+	 *
+	 * @param cache
+	 *            Cache of the results or null if none.
+	 * @throws IndexOutOfBoundsException
+	 *             If the offset and length are not inside of the array.
+	 */
+	public ContentInfo findMatch(byte[] bytes, int offset, int length, ContentInfoCache cache) {
+		if (offset < 0 || length < 0 || offset > bytes.length - length) {
+			throw new IndexOutOfBoundsException(
+					"Offset " + offset + " and length " + length + " are outside of array of length " + bytes.length);
+		}
+		if (length == 0) {
+			return ContentInfo.EMPTY_INFO;
+		}
+		MatchContext context = matchContexts.get();
+		context.reset(bytes, offset, length);
+		try {
+			return findMatch(context, cache, false);
+		} finally {
+			context.clear();
+		}
+	}
+
+	/**
+	 * Find and return the mime-type of the associated bytes or null if none. This returns the same mime-type as
+	 * {@link #findMatch(byte[])} but it doesn't build the message and, once it knows that an entry fully matches, skips
+	 * the child entries that can't change the mime-type.
+	 */
+	public String findMimeType(byte[] bytes) {
 		if (bytes.length == 0) {
+			return ContentInfo.EMPTY_INFO.getMimeType();
+		}
+		MatchContext context = matchContexts.get();
+		context.reset(bytes, 0, bytes.length);
+		context.mimeTypeOnly = true;
+		try {
+			ContentInfo info = findMatch(context);
+			if (info == null) {
+				return null;
+			} else {
+				return info.getMimeType();
+			}
+		} finally {
+			context.clear();
+		}
+	}
+
+	/**
+	 * Read the length bytes from the start of the source and match them with the rest of the source behind them.
+	 */
+	private ContentInfo findMatch(MatchContext context, ContentSource source, long sourceLength, int length,
+			ContentInfoCache cache, boolean mayMatchAgain) throws IOException {
+		byte[] bytes = context.getCopyBuffer(length);
+		int numRead = source.read(0, bytes, 0, length);
+		if (numRead <= 0) {
 			return ContentInfo.EMPTY_INFO;
 		}
-		// first do the start byte ones
-		int index = (0xFF & bytes[0]);
-		if (index < firstByteEntryLists.length && firstByteEntryLists[index] != null) {
-			ContentInfo info = findMatch(bytes, firstByteEntryLists[index]);
+		context.reset(bytes, 0, numRead);
+		context.setSource(source, sourceLength);
+		return findMatch(context, cache, mayMatchAgain);
+	}
+
+	/**
+	 * Look for the result in the cache by the fingerprint of the bytes and match them if it is not there. The result
+	 * is only cached if it depended on nothing but those bytes and, if the caller may match again with more bytes, if
+	 * it doesn't need to.
+	 */
+	private ContentInfo findMatch(MatchContext context, ContentInfoCache cache, boolean mayMatchAgain) {
+		if (cache == null) {
+			return findMatch(context);
+		}
+		ContentFingerprint fingerprint =
+				ContentFingerprint.fromBytes(context.bytes, context.start, context.length, context.isTruncated());
+		ContentInfo info = cache.get(fingerprint);
+		if (info != null) {
+			return info;
+		}
+		info = findMatch(context);
+		if (info != null && !context.isSourceRead() && !(mayMatchAgain && context.isMoreBytesNeeded())) {
+			cache.put(fingerprint, info);
+		}
+		return info;
+	}
+
+	private ContentInfo findMatch(MatchContext context) {
+		byte[] bytes = context.bytes;
+		// first do the starting bytes ones
+		PrefixNode prefixNode = findPrefixNode(bytes, context.start, context.length);
+		if (prefixNode.entries != null) {
+			ContentInfo info = findMatch(context, prefixNode.entries);
 			if (info != null) {
 				// this seems to be right to return even if only a partial match here
 				return info;
 			}
 		}
-		return findMatch(bytes, entryList);
+		if (offsetFilter == null) {
+			// not optimized
+			return findMatch(context, entryList);
+		}
+		boolean truncated = context.isTruncated();
+		long[] candidates = offsetFilter.findCandidates(bytes, context.start, context.length, truncated,
+				context.getCandidates(offsetFilter.getNumWords()));
+		numberDispatch.filterCandidates(bytes, context.start, context.length, truncated, candidates);
+		if (textOnlyEntries != null && !context.getTextEncoding().isText()) {
+			// binary content so skip the text search and regex entries
+			for (int i = 0; i < candidates.length; i++) {
+				candidates[i] &= ~textOnlyEntries[i];
+			}
+		}
+		if (prefixNode.entries != null) {
+			// none of the starting bytes entries matched so there is no reason to try them again
+			for (int i = 0; i < prefixNode.entries.size(); i++) {
+				FixedOffsetFilter.clearBit(candidates, prefixNode.entryIndexes[i]);
+			}
+		}
+		return findMatch(context, candidates);
+	}
+
+	/**
+	 * Return the entries whose starting bytes match the start of the bytes or null if none.
+	 */
+	List<MagicEntry> findPrefixEntries(byte[] bytes) {
+		return findPrefixNode(bytes, 0, bytes.length).entries;
+	}
+
+	/**
+	 * Return the entries that may match after the fixed-offset filter and number dispatch have been applied.
+	 */
+	List<MagicEntry> findCandidateEntries(byte[] bytes) {
+		long[] candidates = findCandidates(bytes);
+		List<MagicEntry> entries = new ArrayList<MagicEntry>();
+		for (int wordIndex = 0; wordIndex < candidates.length; wordIndex++) {
+			for (long word = candidates[wordIndex]; word != 0; word &= word - 1) {
+				entries.add(entryArray[(wordIndex << 6) + Long.numberOfTrailingZeros(word)]);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Return the top level entries.
+	 */
+	List<MagicEntry> getEntryList() {
+		return entryList;
+	}
+
+	/**
+	 * Return a bit-set of the indexes of the top level entries that may match the bytes.
+	 */
+	private long[] findCandidates(byte[] bytes) {
+		long[] candidates = offsetFilter.findCandidates(bytes);
+		numberDispatch.filterCandidates(bytes, candidates);
+		return candidates;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("Entries have been built and can't be changed");
+		}
+	}
+
+	private static byte[] readFully(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		while (true) {
+			int numRead = inputStream.read(buffer);
+			if (numRead < 0) {
+				return outputStream.toByteArray();
+			}
+			outputStream.write(buffer, 0, numRead);
+		}
 	}
 
-	private ContentInfo findMatch(byte[] bytes, List<MagicEntry> entryList) {
+	private static int enumSignature(Enum<?>[]... enumValues) {
+		int signature = 0;
+		for (Enum<?>[] values : enumValues) {
+			for (Enum<?> value : values) {
+				signature = 31 * signature + value.name().hashCode();
+			}
+			signature = 31 * signature + values.length;
+		}
+		return signature;
+	}
+
+	/**
+	 * Mark the top-level search and regex entries whose patterns have only text characters. Like file(1), we only run
+	 * them if the content looks like text.
+	 */
+	private long[] findTextOnlyEntries() {
+		long[] textOnly = new long[(entryList.size() + 63) / 64];
+		boolean found = false;
+		for (int entryIndex = 0; entryIndex < entryList.size(); entryIndex++) {
+			MagicEntry entry = entryList.get(entryIndex);
+			MagicMatcher matcher = entry.getMatcher();
+			Object testValue = entry.getTestValue();
+			boolean textPattern;
+			if (testValue == null) {
+				textPattern = false;
+			} else if (matcher instanceof SearchType) {
+				textPattern = ((SearchType) matcher).isTextPattern(testValue);
+			} else if (matcher instanceof RegexType) {
+				textPattern = ((RegexType) matcher).isTextPattern(testValue);
+			} else {
+				textPattern = false;
+			}
+			entry.setTextOnly(textPattern);
+			if (textPattern) {
+				FixedOffsetFilter.setBit(textOnly, entryIndex);
+				found = true;
+			}
+		}
+		if (found) {
+			return textOnly;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Add the patterns of the search entries, and their children, to the search so we can find them all at once.
+	 */
+	private void addSearchPatterns(MultiPatternSearch search, List<MagicEntry> entries) {
+		for (MagicEntry entry : entries) {
+			entry.setSearchPatternId(-1);
+			if (entry.getMatcher() instanceof SearchType && entry.getTestValue() != null) {
+				byte[] searchBytes = ((SearchType) entry.getMatcher()).getSearchBytes(entry.getTestValue());
+				if (searchBytes != null) {
+					entry.setSearchPatternId(search.addPattern(searchBytes));
+				}
+			}
+			if (entry.getChildren() != null) {
+				addSearchPatterns(search, entry.getChildren());
+			}
+		}
+	}
+
+	/**
+	 * Find the number of bytes from the start of the content that the entries, and their children, look at.
+	 */
+	private void findReadSizes(List<MagicEntry> entries) {
+		for (MagicEntry entry : entries) {
+			int offset = entry.getFixedOffset();
+			if (offset >= 0 && !entry.isAddOffset()) {
+				int readLength = entry.getReadLength();
+				boolean search = (entry.getMatcher() instanceof SearchType || entry.getMatcher() instanceof RegexType);
+				if (!search) {
+					if (readLength >= 0) {
+						staticReadSize = Math.max(staticReadSize, offset + readLength);
+					}
+				} else if (readLength < 0) {
+					searchReadSize = -1;
+				} else if (searchReadSize >= 0) {
+					searchReadSize = Math.max(searchReadSize, offset + readLength);
+				}
+			}
+			if (entry.getChildren() != null) {
+				findReadSizes(entry.getChildren());
+			}
+		}
+	}
+
+	/**
+	 * Give each of the regex entries an id so the context can have a reusable matcher for it.
+	 */
+	private int assignRegexIds(List<MagicEntry> entries, int nextId) {
+		for (MagicEntry entry : entries) {
+			if (entry.getMatcher() instanceof RegexType && entry.getTestValue() != null) {
+				entry.setRegexId(nextId++);
+			} else {
+				entry.setRegexId(-1);
+			}
+			if (entry.getChildren() != null) {
+				nextId = assignRegexIds(entry.getChildren(), nextId);
+			}
+		}
+		return nextId;
+	}
+
+	private ThreadLocal<MatchContext> newMatchContexts() {
+		final MultiPatternSearch search = multiPatternSearch;
+		final int regexCount = numRegexes;
+		return new ThreadLocal<MatchContext>() {
+			@Override
+			protected MatchContext initialValue() {
+				return new MatchContext(search, regexCount);
+			}
+		};
+	}
+
+	private PrefixNode findPrefixNode(byte[] bytes, int start, int length) {
+		PrefixNode node = prefixRoot;
+		for (int i = start; i < start + length; i++) {
+			PrefixNode child = node.findChild(bytes[i]);
+			if (child == null) {
+				break;
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	/**
+	 * Find a match in the entries whose indexes are set in the candidates bit-set.
+	 */
+	private ContentInfo findMatch(MatchContext context, long[] candidates) {
+		ContentInfo partialMatchInfo = null;
+		for (int wordIndex = 0; wordIndex < candidates.length; wordIndex++) {
+			// go through the set bits in order
+			for (long word = candidates[wordIndex]; word != 0; word &= word - 1) {
+				MagicEntry entry = entryArray[(wordIndex << 6) + Long.numberOfTrailingZeros(word)];
+				ContentInfo info = entry.matchBytes(context);
+				if (info == null) {
+					continue;
+				}
+				if (!info.isPartial()) {
+					// first non-partial wins
+					logger.trace("found full match {}", entry);
+					logger.trace("returning full match {}", info);
+					return info;
+				} else if (partialMatchInfo == null) {
+					// first partial match may win
+					logger.trace("found partial match {}", entry);
+					partialMatchInfo = info;
+					// continue to look for non-partial
+				}
+			}
+		}
+		if (partialMatchInfo == null) {
+			logger.trace("returning no match");
+		} else {
+			logger.trace("returning partial match {}", partialMatchInfo);
+		}
+		return partialMatchInfo;
+	}
+
+	private ContentInfo findMatch(MatchContext context, List<MagicEntry> entryList) {
 		ContentInfo partialMatchInfo = null;
 		for (MagicEntry entry : entryList) {
-			ContentInfo info = entry.matchBytes(bytes);
+			if (entry.isTextOnly() && !context.getTextEncoding().isText()) {
+				continue;
+			}
+			ContentInfo info = entry.matchBytes(context);
 			if (info == null) {
 				continue;
 			}
@@ -152,4 +820,189 @@ public class MagicEntries {
 			return partialMatchInfo;
 		}
 	}
+
+	/**
+	 * Builds a set of entries which are optimized and frozen by {@link #build()} so they can be shared by threads. The
+	 * builder itself is not thread-safe.
+	 */
+	public static class Builder {
+
+		private MagicEntries entries = new MagicEntries();
+
+		/**
+		 * Read the entries from the magic file lines. Large files are parsed in parallel using the common fork-join
+		 * pool.
+		 */
+		public Builder readEntries(BufferedReader lineReader, ErrorCallBack errorCallBack) throws IOException {
+			getEntries().readEntries(lineReader, errorCallBack);
+			return this;
+		}
+
+		/**
+		 * Read the entries from the magic file lines which are parsed using the pool or by the calling thread if the
+		 * pool is null.
+		 */
+		public Builder readEntries(BufferedReader lineReader, ErrorCallBack errorCallBack, ForkJoinPool pool)
+				throws IOException {
+			getEntries().readEntries(lineReader, errorCallBack, pool);
+			return this;
+		}
+
+		/**
+		 * Add the entries from the parsed file after any that have already been added.
+		 */
+		public Builder addParsedFile(ParsedMagicFile parsedFile, ErrorCallBack errorCallBack) {
+			getEntries().addParsedFile(parsedFile, errorCallBack);
+			return this;
+		}
+
+		/**
+		 * Read in the entries that were written by {@link MagicEntries#writeCompiledEntries(OutputStream)}.
+		 * 
+		 * @return True if the entries were read or false if the stream is not in the compiled format or was written
+		 *         with a different version of it.
+		 */
+		public boolean readCompiledEntries(InputStream inputStream) throws IOException {
+			return getEntries().readCompiledEntries(inputStream);
+		}
+
+		/**
+		 * Set whether or not the tests of the entries are compiled into specialized classes, which is the default.
+		 */
+		public Builder setCompileTests(boolean compileTests) {
+			getEntries().setCompileTests(compileTests);
+			return this;
+		}
+
+		/**
+		 * Optimize and return the entries which can't be changed afterwards. The builder can't be used again.
+		 */
+		public MagicEntries build() {
+			MagicEntries built = getEntries();
+			built.optimizeFirstBytes();
+			built.frozen = true;
+			entries = null;
+			return built;
+		}
+
+		private MagicEntries getEntries() {
+			if (entries == null) {
+				throw new IllegalStateException("Entries have already been built");
+			}
+			return entries;
+		}
+	}
+
+	/**
+	 * Node in our tree of starting bytes. Each node holds the entries whose starting bytes match the path to the node,
+	 * including the entries from its parents, in their original order.
+	 */
+	private static class PrefixNode {
+
+		private PrefixNode[] children;
+		private byte[] childBytes;
+		private int childCount;
+		private List<MagicEntry> entries;
+		private int[] entryIndexes;
+
+		public PrefixNode(boolean firstByteTable) {
+			if (firstByteTable) {
+				// the root node has a full table since most entries hang off of it
+				children = new PrefixNode[FIRST_BYTE_LIST_SIZE];
+				childCount = FIRST_BYTE_LIST_SIZE;
+			}
+		}
+
+		public void addEntry(byte[] prefix, int prefixLength, MagicEntry entry, int entryIndex) {
+			PrefixNode node = this;
+			for (int i = 0; i < prefixLength; i++) {
+				node = node.findOrCreateChild(prefix[i]);
+			}
+			if (node.entries == null) {
+				node.entries = new ArrayList<MagicEntry>();
+				node.entryIndexes = new int[4];
+			} else if (node.entries.size() == node.entryIndexes.length) {
+				node.entryIndexes = Arrays.copyOf(node.entryIndexes, node.entryIndexes.length * 2);
+			}
+			node.entryIndexes[node.entries.size()] = entryIndex;
+			node.entries.add(entry);
+		}
+
+		public PrefixNode findChild(byte b) {
+			if (children == null) {
+				return null;
+			} else if (childBytes == null) {
+				return children[b & 0xFF];
+			}
+			for (int i = 0; i < childCount; i++) {
+				if (childBytes[i] == b) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Merge in the entries from our parents, in order, so that a lookup only needs to find the deepest node.
+		 */
+		public void finish(List<MagicEntry> parentEntries, int[] parentIndexes) {
+			if (parentEntries != null) {
+				if (entries == null) {
+					entries = parentEntries;
+					entryIndexes = parentIndexes;
+				} else {
+					mergeParentEntries(parentEntries, parentIndexes);
+				}
+			}
+			for (int i = 0; i < childCount; i++) {
+				if (children[i] != null) {
+					children[i].finish(entries, entryIndexes);
+				}
+			}
+		}
+
+		private PrefixNode findOrCreateChild(byte b) {
+			PrefixNode child = findChild(b);
+			if (child != null) {
+				return child;
+			}
+			child = new PrefixNode(false);
+			if (children == null) {
+				children = new PrefixNode[2];
+				childBytes = new byte[2];
+			}
+			if (childBytes == null) {
+				children[b & 0xFF] = child;
+			} else {
+				if (childCount == children.length) {
+					children = Arrays.copyOf(children, childCount * 2);
+					childBytes = Arrays.copyOf(childBytes, childCount * 2);
+				}
+				children[childCount] = child;
+				childBytes[childCount] = b;
+				childCount++;
+			}
+			return child;
+		}
+
+		private void mergeParentEntries(List<MagicEntry> parentEntries, int[] parentIndexes) {
+			int total = parentEntries.size() + entries.size();
+			List<MagicEntry> mergedEntries = new ArrayList<MagicEntry>(total);
+			int[] mergedIndexes = new int[total];
+			int parentPos = 0;
+			int ourPos = 0;
+			while (parentPos < parentEntries.size() || ourPos < entries.size()) {
+				if (ourPos >= entries.size()
+						|| (parentPos < parentEntries.size() && parentIndexes[parentPos] < entryIndexes[ourPos])) {
+					mergedIndexes[mergedEntries.size()] = parentIndexes[parentPos];
+					mergedEntries.add(parentEntries.get(parentPos++));
+				} else {
+					mergedIndexes[mergedEntries.size()] = entryIndexes[ourPos];
+					mergedEntries.add(entries.get(ourPos++));
+				}
+			}
+			entries = mergedEntries;
+			entryIndexes = mergedIndexes;
+		}
+	}
 }
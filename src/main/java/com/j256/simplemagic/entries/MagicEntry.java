@@ -1,13 +1,23 @@
 package com.j256.simplemagic.entries;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Matcher;
 
 import com.j256.simplemagic.ContentInfo;
 import com.j256.simplemagic.endian.EndianConverter;
+import com.j256.simplemagic.endian.EndianType;
 import com.j256.simplemagic.entries.MagicMatcher.MutableOffset;
 import com.j256.simplemagic.logger.Logger;
 import com.j256.simplemagic.logger.LoggerFactory;
+import com.j256.simplemagic.types.BaseLongType;
+import com.j256.simplemagic.types.NumberComparison;
+import com.j256.simplemagic.types.RegexType;
+import com.j256.simplemagic.types.SearchType;
 
 /**
  * Representation of a line of information from the magic (5) format. A number of methods are package protected because
@@ -18,6 +28,8 @@ import com.j256.simplemagic.logger.LoggerFactory;
 public class MagicEntry {
 
 	private static Logger logger = LoggerFactory.getLogger(MagicEntry.class);
+	private static final MagicType[] MAGIC_TYPES = MagicType.values();
+	private static final EndianType[] ENDIAN_TYPES = EndianType.values();
 
 	private final String name;
 	private final int level;
@@ -32,11 +44,26 @@ public class MagicEntry {
 	private final boolean formatSpacePrefix;
 	private final boolean clearFormat;
 	private final MagicFormatter formatter;
+	/** set if our test has been compiled into a specialized class, otherwise the test is interpreted */
+	private CompiledTest compiledTest;
+	/** set if we test a long number so we can do it without boxing */
+	private final BaseLongType longType;
+	private final NumberComparison longComparison;
+	/** number of bytes from the offset that our test looks at or -1 if it depends on the content */
+	private final int readLength;
 
 	/** if this entry matches then check the children entry(s) which may provide more content type details */
 	private List<MagicEntry> children;
 	private String mimeType;
 	private boolean optional;
+	/** id of our pattern if we are a search entry that has been added to a {@link MultiPatternSearch} */
+	private int searchPatternId = -1;
+	/** id of our reusable matcher in the {@link MatchContext} if we are a regex entry */
+	private int regexId = -1;
+	/** set if we are a top-level search or regex entry whose pattern can only match text content */
+	private boolean textOnly;
+	/** set if neither we nor any of our children have a mime-type */
+	private boolean withoutMimeTypes;
 
 	/**
 	 * Package protected constructor.
@@ -56,17 +83,39 @@ public class MagicEntry {
 		this.formatSpacePrefix = formatSpacePrefix;
 		this.clearFormat = clearFormat;
 		this.formatter = formatter;
+		if (matcher instanceof BaseLongType && testValue instanceof NumberComparison) {
+			this.longType = (BaseLongType) matcher;
+			this.longComparison = (NumberComparison) testValue;
+		} else {
+			this.longType = null;
+			this.longComparison = null;
+		}
+		if (matcher == null) {
+			this.readLength = -1;
+		} else {
+			this.readLength = matcher.getReadLength(testValue);
+		}
 	}
 
 	/**
 	 * Returns the content type associated with the bytes or null if it does not match.
 	 */
 	ContentInfo matchBytes(byte[] bytes) {
-		ContentData data = matchBytes(bytes, 0, 0, null);
+		return matchBytes(new MatchContext(bytes, null));
+	}
+
+	/**
+	 * Returns the content type associated with the bytes in the context or null if it does not match.
+	 */
+	ContentInfo matchBytes(MatchContext context) {
+		ContentData data = matchBytes(context, 0, 0, null);
 		if (data == null || data.name == MagicEntryParser.UNKNOWN_NAME) {
 			return null;
+		} else if (context.mimeTypeOnly) {
+			return new ContentInfo(data.name, data.mimeType, null, data.partial);
 		} else {
-			return new ContentInfo(data.name, data.mimeType, data.sb.toString(), data.partial);
+			return new MatchedContentInfo(data.name, data.mimeType, Arrays.copyOf(data.formatEntries, data.formatCount),
+					Arrays.copyOf(data.formatValues, data.formatCount), data.partial);
 		}
 	}
 
@@ -78,6 +127,10 @@ public class MagicEntry {
 		return level;
 	}
 
+	String getName() {
+		return name;
+	}
+
 	byte[] getStartsWithByte() {
 		if (offset != 0) {
 			return null;
@@ -86,6 +139,58 @@ public class MagicEntry {
 		}
 	}
 
+	/**
+	 * Return the offset of the entry or -1 if the offset is read from the content.
+	 */
+	int getFixedOffset() {
+		if (offsetInfo == null) {
+			return offset;
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Return true if our offset is relative to the end of the parent's match.
+	 */
+	boolean isAddOffset() {
+		return addOffset;
+	}
+
+	/**
+	 * Return the number of bytes from the offset that our test looks at or -1 if it depends on the content.
+	 */
+	int getReadLength() {
+		return readLength;
+	}
+
+	/**
+	 * Return the bytes that must be at the offset of the content for this entry to match or null if not known.
+	 */
+	byte[] getRequiredBytes() {
+		if (offsetInfo != null || testValue == null || andValue != null) {
+			return null;
+		} else {
+			return matcher.getRequiredBytes(testValue);
+		}
+	}
+
+	MagicMatcher getMatcher() {
+		return matcher;
+	}
+
+	Object getTestValue() {
+		return testValue;
+	}
+
+	Long getAndValue() {
+		return andValue;
+	}
+
+	boolean isUnsignedType() {
+		return unsignedType;
+	}
+
 	boolean isOptional() {
 		return optional;
 	}
@@ -94,6 +199,61 @@ public class MagicEntry {
 		this.optional = optional;
 	}
 
+	List<MagicEntry> getChildren() {
+		return children;
+	}
+
+	boolean isTextOnly() {
+		return textOnly;
+	}
+
+	void setTextOnly(boolean textOnly) {
+		this.textOnly = textOnly;
+	}
+
+	void setSearchPatternId(int searchPatternId) {
+		this.searchPatternId = searchPatternId;
+	}
+
+	void setRegexId(int regexId) {
+		this.regexId = regexId;
+	}
+
+	/**
+	 * Record whether or not this entry or any of its children have a mime-type so the entries that don't can be skipped
+	 * when we are only looking for the mime-type.
+	 * 
+	 * @return True if this entry or one of its children have a mime-type.
+	 */
+	boolean markMimeTypeEntries() {
+		boolean hasMimeType = (mimeType != null);
+		if (children != null) {
+			for (MagicEntry child : children) {
+				if (child.markMimeTypeEntries()) {
+					hasMimeType = true;
+				}
+			}
+		}
+		withoutMimeTypes = !hasMimeType;
+		return hasMimeType;
+	}
+
+	/**
+	 * Compile the tests of this entry and its children or go back to interpreting them if compile is false.
+	 */
+	void compileTests(boolean compile) {
+		if (compile) {
+			compiledTest = CompiledTest.compile(this);
+		} else {
+			compiledTest = null;
+		}
+		if (children != null) {
+			for (MagicEntry child : children) {
+				child.compileTests(compile);
+			}
+		}
+	}
+
 	void addChild(MagicEntry child) {
 		if (children == null) {
 			children = new ArrayList<MagicEntry>();
@@ -105,6 +265,101 @@ public class MagicEntry {
 		this.mimeType = mimeType;
 	}
 
+	/**
+	 * Write this entry and its children in our compiled format which can be read back by
+	 * {@link #readCompiled(DataInput, CompiledStringTable)}.
+	 */
+	void writeCompiled(DataOutput output, CompiledStringTable strings) throws IOException {
+		MagicType type = MagicType.fromMatcher(matcher);
+		if (type == null) {
+			throw new IOException("Unknown matcher for entry: " + this);
+		}
+		strings.writeString(output, name);
+		output.writeByte(level);
+		output.writeBoolean(addOffset);
+		output.writeInt(offset);
+		if (offsetInfo == null) {
+			output.writeBoolean(false);
+		} else {
+			output.writeBoolean(true);
+			offsetInfo.writeCompiled(output);
+		}
+		output.writeByte(type.ordinal());
+		if (andValue == null) {
+			output.writeBoolean(false);
+		} else {
+			output.writeBoolean(true);
+			output.writeLong(andValue);
+		}
+		output.writeBoolean(unsignedType);
+		if (testValue == null) {
+			output.writeBoolean(false);
+		} else {
+			output.writeBoolean(true);
+			matcher.writeTestValue(output, testValue);
+		}
+		output.writeBoolean(formatSpacePrefix);
+		output.writeBoolean(clearFormat);
+		strings.writeString(output, (formatter == null ? null : formatter.getFormatString()));
+		strings.writeString(output, mimeType);
+		output.writeBoolean(optional);
+		if (children == null) {
+			output.writeInt(0);
+		} else {
+			output.writeInt(children.size());
+			for (MagicEntry child : children) {
+				child.writeCompiled(output, strings);
+			}
+		}
+	}
+
+	/**
+	 * Read in an entry and its children that were written by {@link #writeCompiled(DataOutput, CompiledStringTable)}.
+	 */
+	static MagicEntry readCompiled(DataInput input, CompiledStringTable strings) throws IOException {
+		String name = strings.readString(input);
+		int level = input.readByte();
+		boolean addOffset = input.readBoolean();
+		int offset = input.readInt();
+		OffsetInfo offsetInfo = null;
+		if (input.readBoolean()) {
+			offsetInfo = OffsetInfo.readCompiled(input);
+		}
+		MagicMatcher matcher = readEnum(input, MAGIC_TYPES).getMatcher();
+		Long andValue = null;
+		if (input.readBoolean()) {
+			andValue = input.readLong();
+		}
+		boolean unsignedType = input.readBoolean();
+		Object testValue = null;
+		if (input.readBoolean()) {
+			testValue = matcher.readTestValue(input);
+		}
+		boolean formatSpacePrefix = input.readBoolean();
+		boolean clearFormat = input.readBoolean();
+		MagicFormatter formatter = strings.readFormatter(input);
+		MagicEntry entry = new MagicEntry(name, level, addOffset, offset, offsetInfo, matcher, andValue, unsignedType,
+				testValue, formatSpacePrefix, clearFormat, formatter);
+		entry.mimeType = strings.readString(input);
+		entry.optional = input.readBoolean();
+		int numChildren = input.readInt();
+		for (int i = 0; i < numChildren; i++) {
+			entry.addChild(readCompiled(input, strings));
+		}
+		return entry;
+	}
+
+	/**
+	 * Read the ordinal of an enum that was written as a byte and return the associated value.
+	 */
+	static <T extends Enum<T>> T readEnum(DataInput input, T[] values) throws IOException {
+		int ordinal = input.readUnsignedByte();
+		if (ordinal >= values.length) {
+			throw new IOException("Invalid ordinal in compiled entries: " + ordinal);
+		}
+		return values[ordinal];
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -124,50 +379,158 @@ public class MagicEntry {
 		return sb.toString();
 	}
 
+	/**
+	 * Render the value that we extracted with our format onto the end of the message.
+	 */
+	void renderFormat(StringBuilder sb, Object val) {
+		// if we are appending and need a space then prepend one
+		if (formatSpacePrefix && sb.length() > 0) {
+			sb.append(' ');
+		}
+		matcher.renderValue(sb, val, formatter);
+	}
+
+	/**
+	 * Extract the value at the offset in the bytes and match it against our test value if we have one.
+	 * 
+	 * @return The value or null if it didn't match. If we have a test value then the offset after the match is in the
+	 *         context's mutable-offset.
+	 */
+	private Object testBytes(MatchContext context, int offset, byte[] bytes, int start, int length,
+			boolean fromSource) {
+		boolean required = (testValue == null && formatter != null);
+		Object val = matcher.extractValueFromBytes(offset, bytes, start, length, required);
+		if (val == null || testValue == null) {
+			return val;
+		}
+		MutableOffset mutableOffset = context.mutableOffset;
+		mutableOffset.offset = offset;
+		if (searchPatternId >= 0 && !fromSource && context.canSearch()) {
+			// all of the search patterns have been found at once so we just look up where ours is
+			int foundOffset = context.findSearchOffset(searchPatternId, Math.max(offset, 0));
+			return ((SearchType) matcher).isMatch(testValue, mutableOffset, foundOffset);
+		} else if (matcher instanceof RegexType) {
+			// the lines are found once for all of the regex entries
+			RegexType regexType = (RegexType) matcher;
+			Matcher regexMatcher = context.getRegexMatcher(regexId, regexType, testValue);
+			if (regexMatcher == null) {
+				return regexType.isMatch(testValue, mutableOffset, context.getLineIndex());
+			} else {
+				return regexType.isMatch(testValue, mutableOffset, context.getLineIndex(), regexMatcher);
+			}
+		} else {
+			return matcher.isMatch(testValue, andValue, unsignedType, val, mutableOffset, bytes, start, length);
+		}
+	}
+
 	/**
 	 * Main processing method which can go recursive.
 	 */
-	private ContentData matchBytes(byte[] bytes, int prevOffset, int level, ContentData contentData) {
+	private ContentData matchBytes(MatchContext context, int prevOffset, int level, ContentData contentData) {
+		byte[] bytes = context.bytes;
+		int start = context.start;
+		int length = context.length;
 		int offset = this.offset;
 		if (offsetInfo != null) {
-			// offset can be null if we run out of bytes
-			Integer maybeOffset = offsetInfo.getOffset(bytes);
-			if (maybeOffset == null) {
+			if (offsetInfo.hasBytes(length)) {
+				offset = offsetInfo.getOffset(bytes, start);
+			} else if (context.isTruncated() && offsetInfo.offset >= 0
+					&& context.readSourceWindow(offsetInfo.offset, offsetInfo.size)
+					&& offsetInfo.hasBytes(context.windowOffset + context.windowLength)) {
+				// the offset is past the end of our bytes so we read it from the source
+				offset = offsetInfo.getOffset(context.windowBytes, -context.windowOffset);
+			} else {
+				// we ran out of bytes
 				return null;
 			}
-			offset = maybeOffset;
 		}
 		if (addOffset) {
 			offset = prevOffset + offset;
 		}
-		boolean required = (testValue == null && formatter != null);
-		Object val = matcher.extractValueFromBytes(offset, bytes, required);
-		if (val == null) {
-			return null;
+		/*
+		 * Entries that may test past the end of our bytes test the bytes from the source instead. If how many bytes a
+		 * test reads depends on the content then it tries our bytes first and only goes to the source if it runs off
+		 * their end.
+		 */
+		boolean ourBytesFirst = (readLength < 0 && testValue != null);
+		int windowOffset = 0;
+		boolean fromSource = false;
+		if (context.needsSource(offset, (ourBytesFirst ? 1 : readLength)) && !(matcher instanceof RegexType)) {
+			if (!context.readSourceWindow(offset, readLength)) {
+				return null;
+			}
+			bytes = context.windowBytes;
+			start = 0;
+			length = context.windowLength;
+			windowOffset = context.windowOffset;
+			offset -= windowOffset;
+			fromSource = true;
 		}
-		if (testValue != null) {
-			MutableOffset mutableOffset = new MutableOffset(offset);
-			val = matcher.isMatch(testValue, andValue, unsignedType, val, mutableOffset, bytes);
+		Object val;
+		if (compiledTest != null) {
+			int nextOffset = compiledTest.test(bytes, start, length, offset);
+			if (nextOffset == CompiledTest.NO_MATCH) {
+				return null;
+			}
+			if (formatter == null) {
+				val = null;
+			} else {
+				val = compiledTest.getValue(bytes, start, offset);
+			}
+			offset = nextOffset;
+		} else if (longComparison != null) {
+			// the number is extracted and compared as a primitive and only boxed if we need to render it
+			if (!longType.hasBytes(offset, length)) {
+				return null;
+			}
+			long value = longType.extractLong(start + offset, bytes);
+			if (!longComparison.isMatch(andValue, unsignedType, value)) {
+				return null;
+			}
+			offset += longType.getBytesPerType();
+			if (formatter == null) {
+				val = null;
+			} else {
+				val = value;
+			}
+		} else {
+			MutableOffset mutableOffset = context.mutableOffset;
+			mutableOffset.endReached = false;
+			val = testBytes(context, offset, bytes, start, length, fromSource);
+			if (ourBytesFirst && mutableOffset.endReached && !fromSource && context.isTruncated()) {
+				// we ran off the end of our bytes so we test again with the bytes from the source
+				if (!context.readSourceWindow(offset, readLength)) {
+					return null;
+				}
+				bytes = context.windowBytes;
+				start = 0;
+				length = context.windowLength;
+				windowOffset = context.windowOffset;
+				offset -= windowOffset;
+				fromSource = true;
+				val = testBytes(context, offset, bytes, start, length, fromSource);
+			}
 			if (val == null) {
 				return null;
 			}
-			offset = mutableOffset.offset;
+			if (testValue != null) {
+				offset = mutableOffset.offset;
+			}
 		}
+		offset += windowOffset;
 
 		if (contentData == null) {
-			contentData = new ContentData(name, mimeType, level);
+			contentData = context.contentData;
+			contentData.reset(name, mimeType, level);
 			// default is a child didn't match, set a partial so the matcher will keep looking
 			contentData.partial = true;
 		}
-		if (formatter != null) {
+		if (formatter != null && !context.mimeTypeOnly) {
 			if (clearFormat) {
-				contentData.sb.setLength(0);
-			}
-			// if we are appending and need a space then prepend one
-			if (formatSpacePrefix && contentData.sb.length() > 0) {
-				contentData.sb.append(' ');
+				contentData.formatCount = 0;
 			}
-			matcher.renderValue(contentData.sb, val, formatter);
+			// the message is only rendered if someone asks for it
+			contentData.addFormat(this, val);
 		}
 		logger.trace("matched data: {}: {}", this, contentData);
 
@@ -181,8 +544,13 @@ public class MagicEntry {
 				if (!entry.isOptional()) {
 					allOptional = false;
 				}
+				if (context.mimeTypeOnly && entry.withoutMimeTypes && !contentData.partial
+						&& contentData.name != MagicEntryParser.UNKNOWN_NAME) {
+					// the child can't change the mime-type and we already know that we have a full match
+					continue;
+				}
 				// goes recursive here
-				entry.matchBytes(bytes, offset, level + 1, contentData);
+				entry.matchBytes(context, offset, level + 1, contentData);
 				// we continue to match to see if we can add additional children info to the name
 			}
 			if (allOptional) {
@@ -213,19 +581,34 @@ public class MagicEntry {
 	}
 
 	/**
-	 * Internal processing data about the content.
+	 * Internal processing data about the content which is reused by each top-level entry that matches.
 	 */
 	static class ContentData {
 		String name;
 		boolean partial;
 		String mimeType;
 		int mimeTypeLevel;
-		final StringBuilder sb = new StringBuilder();
+		/** entries whose formats make up the message along with the values that they extracted */
+		MagicEntry[] formatEntries = new MagicEntry[8];
+		Object[] formatValues = new Object[8];
+		int formatCount;
 
-		private ContentData(String name, String mimeType, int mimeTypeLevel) {
+		void reset(String name, String mimeType, int mimeTypeLevel) {
 			this.name = name;
+			this.partial = false;
 			this.mimeType = mimeType;
 			this.mimeTypeLevel = mimeTypeLevel;
+			this.formatCount = 0;
+		}
+
+		void addFormat(MagicEntry entry, Object value) {
+			if (formatCount == formatEntries.length) {
+				formatEntries = Arrays.copyOf(formatEntries, formatCount * 2);
+				formatValues = Arrays.copyOf(formatValues, formatCount * 2);
+			}
+			formatEntries[formatCount] = entry;
+			formatValues[formatCount] = value;
+			formatCount++;
 		}
 	}
 
@@ -248,18 +631,51 @@ public class MagicEntry {
 			this.add = add;
 		}
 
-		public Integer getOffset(byte[] bytes) {
-			Long val;
-			if (isId3) {
-				val = (Long) converter.convertId3(offset, bytes, size);
-			} else {
-				val = (Long) converter.convertNumber(offset, bytes, size);
+		void writeCompiled(DataOutput output) throws IOException {
+			output.writeInt(offset);
+			output.writeByte(endianTypeOf(converter).ordinal());
+			output.writeBoolean(isId3);
+			output.writeInt(size);
+			output.writeInt(add);
+		}
+
+		static OffsetInfo readCompiled(DataInput input) throws IOException {
+			int offset = input.readInt();
+			EndianConverter converter = readEnum(input, ENDIAN_TYPES).getConverter();
+			boolean isId3 = input.readBoolean();
+			int size = input.readInt();
+			int add = input.readInt();
+			return new OffsetInfo(offset, converter, isId3, size, add);
+		}
+
+		private static EndianType endianTypeOf(EndianConverter converter) throws IOException {
+			for (EndianType endianType : EndianType.values()) {
+				if (endianType.getConverter() == converter) {
+					return endianType;
+				}
 			}
-			if (val == null) {
-				return null;
+			throw new IOException("Unknown endian converter: " + converter);
+		}
+
+		/**
+		 * Return true if there are enough bytes in content with the length to read the offset.
+		 */
+		public boolean hasBytes(int length) {
+			return (offset >= 0 && offset + size <= length);
+		}
+
+		/**
+		 * Read the offset from the content which starts at the start index in the bytes. The caller must make sure that
+		 * {@link #hasBytes(int)} returns true.
+		 */
+		public int getOffset(byte[] bytes, int start) {
+			long val;
+			if (isId3) {
+				val = converter.convertId3Long(start + offset, bytes, size);
 			} else {
-				return (int) (val + add);
+				val = converter.convertLong(start + offset, bytes, size);
 			}
+			return (int) (val + add);
 		}
 	}
 }
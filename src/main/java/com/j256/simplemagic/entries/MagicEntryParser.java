@@ -198,7 +198,7 @@ public class MagicEntryParser {
 		return entry;
 	}
 
-	private static String[] splitLine(String line, ErrorCallBack errorCallBack) {
+	static String[] splitLine(String line, ErrorCallBack errorCallBack) {
 		// skip opening whitespace if any
 		int startPos = findNonWhitespace(line, 0);
 		if (startPos < 0) {
@@ -11,6 +11,7 @@ import java.util.regex.Pattern;
  */
 public class MagicFormatter {
 
+	private final String formatString;
 	private final String prefix;
 	private final PercentExpression percentExpression;
 	private final String suffix;
@@ -25,6 +26,7 @@ public class MagicFormatter {
 	 * This takes a format string, breaks it up into prefix, %-thang, and suffix.
 	 */
 	public MagicFormatter(String formatString) {
+		this.formatString = formatString;
 		Matcher matcher = FORMAT_PATTERN.matcher(formatString);
 		if (!matcher.matches()) {
 			// may never get here
@@ -87,6 +89,13 @@ public class MagicFormatter {
 		}
 	}
 
+	/**
+	 * Return the format string that we were constructed with.
+	 */
+	String getFormatString() {
+		return formatString;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -1,5 +1,9 @@
 package com.j256.simplemagic.entries;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Classes which are able to match content according to operations and output description.
  * 
@@ -13,6 +17,17 @@ public interface MagicMatcher {
 	 */
 	public Object convertTestString(String typeStr, String testStr);
 
+	/**
+	 * Write the testValue object, returned by {@link #convertTestString(String, String)}, to the output so it can be
+	 * read back by {@link #readTestValue(DataInput)} without parsing the test-string again.
+	 */
+	public void writeTestValue(DataOutput output, Object testValue) throws IOException;
+
+	/**
+	 * Read in a testValue object that was written by {@link #writeTestValue(DataOutput, Object)}.
+	 */
+	public Object readTestValue(DataInput input) throws IOException;
+
 	/**
 	 * Extract the value from the bytes either for doing the match or rendering it in the format.
 	 * 
@@ -28,6 +43,13 @@ public interface MagicMatcher {
 	 */
 	public Object extractValueFromBytes(int offset, byte[] bytes, boolean required);
 
+	/**
+	 * Same as {@link #extractValueFromBytes(int, byte[], boolean)} but the content is the length bytes in the array
+	 * starting at the start index. The offset is relative to the start and the bytes outside of the content are not
+	 * looked at so the content can be part of a larger buffer without being copied out.
+	 */
+	public Object extractValueFromBytes(int offset, byte[] bytes, int start, int length, boolean required);
+
 	/**
 	 * Matches if the bytes match at a certain offset.
 	 * 
@@ -36,6 +58,13 @@ public interface MagicMatcher {
 	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
 			MutableOffset offset, byte[] bytes);
 
+	/**
+	 * Same as {@link #isMatch(Object, Long, boolean, Object, MutableOffset, byte[])} but the content is the length
+	 * bytes in the array starting at the start index. The offsets are relative to the start.
+	 */
+	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
+			MutableOffset offset, byte[] bytes, int start, int length);
+
 	/**
 	 * Returns the string version of the extracted value.
 	 */
@@ -46,11 +75,27 @@ public interface MagicMatcher {
 	 */
 	public byte[] getStartingBytes(Object testValue);
 
+	/**
+	 * Return the bytes which must be at the offset for the test to match or null if the test is not a simple literal
+	 * comparison. Unlike {@link #getStartingBytes(Object)}, if this returns non-null then any content which does not
+	 * have exactly these bytes at the offset will never match.
+	 */
+	public byte[] getRequiredBytes(Object testValue);
+
+	/**
+	 * Return the number of bytes from the offset that the test looks at or -1 if it depends on the content, such as a
+	 * regex which matches a line. This is used to figure out how many bytes need to be read from the start of the
+	 * content.
+	 */
+	public int getReadLength(Object testValue);
+
 	/**
 	 * Offset which we can update.
 	 */
 	public static class MutableOffset {
 		public int offset;
+		/** set if the match ran off the end of the bytes so more bytes might have changed the result */
+		public boolean endReached;
 
 		public MutableOffset(int offset) {
 			this.offset = offset;
@@ -1,6 +1,7 @@
 package com.j256.simplemagic.entries;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 import com.j256.simplemagic.endian.EndianType;
@@ -123,10 +124,12 @@ public enum MagicType {
 	private final String name;
 	private final MagicMatcher matcher;
 	private static final Map<String, MagicMatcher> typeMap = new HashMap<String, MagicMatcher>();
+	private static final Map<MagicMatcher, MagicType> matcherMap = new IdentityHashMap<MagicMatcher, MagicType>();
 
 	static {
 		for (MagicType type : values()) {
 			typeMap.put(type.name, type.matcher);
+			matcherMap.put(type.matcher, type);
 		}
 	}
 
@@ -146,4 +149,18 @@ public enum MagicType {
 			return matcher;
 		}
 	}
+
+	/**
+	 * Return the type associated with the matcher or null if none.
+	 */
+	public static MagicType fromMatcher(MagicMatcher matcher) {
+		return matcherMap.get(matcher);
+	}
+
+	/**
+	 * Return the matcher associated with this type.
+	 */
+	public MagicMatcher getMatcher() {
+		return matcher;
+	}
 }
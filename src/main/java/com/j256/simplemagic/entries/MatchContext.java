@@ -0,0 +1,307 @@
+package com.j256.simplemagic.entries;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+
+import com.j256.simplemagic.ContentSource;
+import com.j256.simplemagic.entries.MagicEntry.ContentData;
+import com.j256.simplemagic.entries.MagicMatcher.MutableOffset;
+import com.j256.simplemagic.types.LineIndex;
+import com.j256.simplemagic.types.RegexType;
+
+/**
+ * Information about the bytes that we are matching which is shared by all of the entries during one find-match call.
+ * Some of it is calculated only if an entry needs it. The context is reset and reused by the next call on the same
+ * thread so the scratch objects and buffers don't have to be allocated for each match.
+ *
+ * @author graywatson
+ */
+class MatchContext {
+
+	/** copy buffers larger than this are not kept so we don't hold onto a lot of memory for each thread */
+	private static final int MAX_KEPT_COPY_BUFFER_SIZE = 64 * 1024;
+	/** number of bytes read from the source for an entry that may test past the end of the bytes */
+	static final int SOURCE_WINDOW_SIZE = 4096;
+	/** entries that look at more bytes than this, such as long searches, only see this many from the source */
+	private static final int MAX_SOURCE_WINDOW_SIZE = 64 * 1024;
+
+	/** the content that we are matching is the length bytes in the array from the start index */
+	byte[] bytes;
+	int start;
+	int length;
+	/** offset which is passed to the matcher of each entry that we test */
+	final MutableOffset mutableOffset = new MutableOffset(0);
+	/** set if we are only looking for the mime-type so the message and some child entries can be skipped */
+	boolean mimeTypeOnly;
+	/** information about the content which is built as the entries match */
+	final ContentData contentData = new ContentData();
+	private final MultiPatternSearch search;
+	private final MultiPatternSearch.Hits searchHits;
+	private boolean searched;
+	private TextEncoding textEncoding;
+	private final LineIndex lineIndex = new LineIndex(null);
+	private boolean lineIndexReset;
+	private final Matcher[] regexMatchers;
+	private boolean regexMatched;
+	private long[] candidates;
+	private byte[] copyBuffer;
+	/** source of all of the content if the bytes are only the start of it */
+	private ContentSource source;
+	private long sourceLength;
+	/** the window-length bytes read from the source which start at the window-offset in the content */
+	byte[] windowBytes;
+	int windowOffset;
+	int windowLength;
+	/** set if something looked at all of the bytes and may have a different result if there were more of them */
+	private boolean moreBytesNeeded;
+	/** set if an entry tested bytes from the source past the end of ours */
+	private boolean sourceRead;
+
+	MatchContext(byte[] bytes, MultiPatternSearch search) {
+		this(search, 0);
+		reset(bytes, 0, bytes.length);
+	}
+
+	MatchContext(MultiPatternSearch search, int numRegexes) {
+		this.search = search;
+		if (search == null) {
+			this.searchHits = null;
+		} else {
+			this.searchHits = search.newHits();
+		}
+		this.regexMatchers = new Matcher[numRegexes];
+	}
+
+	/**
+	 * Start a new match of the length bytes in the array from the start index.
+	 */
+	void reset(byte[] bytes, int start, int length) {
+		this.bytes = bytes;
+		this.start = start;
+		this.length = length;
+		this.mimeTypeOnly = false;
+		this.searched = false;
+		this.textEncoding = null;
+		this.lineIndexReset = false;
+		this.regexMatched = false;
+		this.source = null;
+		this.sourceLength = 0;
+		this.windowLength = 0;
+		this.moreBytesNeeded = false;
+		this.sourceRead = false;
+	}
+
+	/**
+	 * Set the source of the content that the bytes are the start of. It is read from by the entries that test past the
+	 * end of the bytes.
+	 */
+	void setSource(ContentSource source, long sourceLength) {
+		this.source = source;
+		this.sourceLength = sourceLength;
+	}
+
+	/**
+	 * Return true if there is more content in the source than in the bytes.
+	 */
+	boolean isTruncated() {
+		return (source != null && sourceLength > length);
+	}
+
+	/**
+	 * Return true if we were matching the start of the content from a source and something, such as a regex or the text
+	 * classification, looked at all of our bytes so it may have matched differently with more of them.
+	 */
+	boolean isMoreBytesNeeded() {
+		return moreBytesNeeded;
+	}
+
+	/**
+	 * Return true if an entry looked at the source for bytes past the end of ours, or for the end of the content, so
+	 * the match depends on more than our bytes.
+	 */
+	boolean isSourceRead() {
+		return sourceRead;
+	}
+
+	/**
+	 * Return true if an entry that tests the read-length bytes at the offset may need bytes past the end of ours and so
+	 * should use the bytes from {@link #readSourceWindow(int, int)} instead. A read-length of -1 means that the number
+	 * of bytes depends on the content.
+	 */
+	boolean needsSource(int offset, int readLength) {
+		if (offset < 0 || !isTruncated()) {
+			return false;
+		} else if (readLength < 0) {
+			return (offset > length - SOURCE_WINDOW_SIZE);
+		} else {
+			return (offset + readLength > length);
+		}
+	}
+
+	/**
+	 * Read the bytes of the content at the offset from the source into the window. The window is reused if it already
+	 * has the read-length bytes at the offset. A read-length of -1 means that the number of bytes depends on the
+	 * content in which case at least {@link #SOURCE_WINDOW_SIZE} bytes are read.
+	 *
+	 * @return True if there are bytes at the offset or false if it is past the end of the content.
+	 * @throws SourceReadException
+	 *             If there was a problem reading from the source.
+	 */
+	boolean readSourceWindow(int offset, int readLength) {
+		sourceRead = true;
+		int windowSize;
+		if (readLength < SOURCE_WINDOW_SIZE) {
+			windowSize = SOURCE_WINDOW_SIZE;
+		} else {
+			windowSize = Math.min(readLength, MAX_SOURCE_WINDOW_SIZE);
+		}
+		int windowEnd = windowOffset + windowLength;
+		if (windowLength > 0 && offset >= windowOffset && offset < windowEnd
+				&& (offset + windowSize <= windowEnd || windowEnd == sourceLength)) {
+			return true;
+		}
+		windowLength = 0;
+		if (offset >= sourceLength) {
+			return false;
+		}
+		if (windowBytes == null || windowBytes.length < windowSize) {
+			windowBytes = new byte[windowSize];
+		}
+		int numRead;
+		try {
+			numRead = source.read(offset, windowBytes, 0, windowSize);
+		} catch (IOException e) {
+			throw new SourceReadException(e);
+		}
+		if (numRead <= 0) {
+			return false;
+		}
+		windowOffset = offset;
+		windowLength = numRead;
+		return true;
+	}
+
+	/**
+	 * Forget about the bytes so we don't hold onto them while the context is not being used.
+	 */
+	void clear() {
+		if (lineIndexReset) {
+			lineIndex.reset(null);
+		}
+		if (regexMatched) {
+			for (Matcher matcher : regexMatchers) {
+				if (matcher != null) {
+					matcher.reset("");
+				}
+			}
+		}
+		reset(null, 0, 0);
+	}
+
+	/**
+	 * Return the classification of the bytes as text or binary.
+	 */
+	TextEncoding getTextEncoding() {
+		if (textEncoding == null) {
+			textEncoding = TextEncoding.fromBytes(bytes, start, length);
+			if (textEncoding.isText() && isTruncated()) {
+				// binary bytes further in would make it binary
+				moreBytesNeeded = true;
+			}
+		}
+		return textEncoding;
+	}
+
+	/**
+	 * Return the index of the lines in the bytes which is shared by the regex entries.
+	 */
+	LineIndex getLineIndex() {
+		if (!lineIndexReset) {
+			lineIndex.reset(bytes, start, length);
+			lineIndexReset = true;
+			if (isTruncated()) {
+				// the regexes only see the lines in our bytes
+				moreBytesNeeded = true;
+			}
+		}
+		return lineIndex;
+	}
+
+	/**
+	 * Return the matcher for the regex entry which is reused by each match or null if the entry has no id.
+	 */
+	Matcher getRegexMatcher(int regexId, RegexType regexType, Object testValue) {
+		if (regexId < 0 || regexId >= regexMatchers.length) {
+			return null;
+		}
+		Matcher matcher = regexMatchers[regexId];
+		if (matcher == null) {
+			matcher = regexType.newMatcher(testValue);
+			regexMatchers[regexId] = matcher;
+		}
+		regexMatched = true;
+		return matcher;
+	}
+
+	/**
+	 * Return a bit-set with the number of words which is reused by each match.
+	 */
+	long[] getCandidates(int numWords) {
+		if (candidates == null || candidates.length != numWords) {
+			candidates = new long[numWords];
+		}
+		return candidates;
+	}
+
+	/**
+	 * Return a buffer of at least the length which the content can be copied into. Buffers up to
+	 * {@link #MAX_KEPT_COPY_BUFFER_SIZE} are kept and reused by the next match.
+	 */
+	byte[] getCopyBuffer(int length) {
+		if (copyBuffer != null && copyBuffer.length >= length) {
+			return copyBuffer;
+		}
+		byte[] buffer = new byte[length];
+		if (length <= MAX_KEPT_COPY_BUFFER_SIZE) {
+			copyBuffer = buffer;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Return true if we have searched, or can search, for all of the search patterns at once.
+	 */
+	boolean canSearch() {
+		return search != null;
+	}
+
+	/**
+	 * Return the first offset at or after the from-offset where the search pattern was found or -1 if none.
+	 */
+	int findSearchOffset(int patternId, int fromOffset) {
+		if (!searched) {
+			// we do the search once the first time a search entry needs it
+			search.findHits(bytes, start, length, searchHits);
+			searched = true;
+		}
+		return searchHits.findOffset(patternId, fromOffset);
+	}
+
+	/**
+	 * Thrown when the source could not be read in the middle of matching so the match can be stopped. The cause is
+	 * thrown to the caller.
+	 */
+	static class SourceReadException extends RuntimeException {
+
+		private static final long serialVersionUID = 6193452890341427655L;
+
+		public SourceReadException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.j256.simplemagic.entries;
+
+import java.io.ObjectStreamException;
+
+import com.j256.simplemagic.ContentInfo;
+
+/**
+ * Content information from a match which holds on to the entries that matched and the values that they extracted. The
+ * message is only rendered with the formatters of the entries the first time that it is asked for so callers that only
+ * need the name or mime-type don't pay for the formatting.
+ *
+ * @author graywatson
+ */
+class MatchedContentInfo extends ContentInfo {
+
+	private static final long serialVersionUID = -2896354153327497213L;
+
+	private final transient MagicEntry[] formatEntries;
+	private final transient Object[] formatValues;
+	/** rendered the first time it is needed, if threads race then they each render the same string */
+	private transient String message;
+
+	MatchedContentInfo(String name, String mimeType, MagicEntry[] formatEntries, Object[] formatValues,
+			boolean partial) {
+		super(name, mimeType, null, partial);
+		this.formatEntries = formatEntries;
+		this.formatValues = formatValues;
+	}
+
+	@Override
+	public String getMessage() {
+		String message = this.message;
+		if (message == null) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < formatEntries.length; i++) {
+				formatEntries[i].renderFormat(sb, formatValues[i]);
+			}
+			message = sb.toString();
+			this.message = message;
+		}
+		return message;
+	}
+
+	/**
+	 * The entries can't be serialized so we write out a regular content-info with the rendered message.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return new ContentInfo(getName(), getMimeType(), getMessage(), isPartial());
+	}
+}
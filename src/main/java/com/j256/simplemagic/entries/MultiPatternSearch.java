@@ -0,0 +1,276 @@
+package com.j256.simplemagic.entries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton which finds all of the search patterns in the bytes with one pass. Instead of each search
+ * entry looking through the bytes for its pattern, the hits for all of the patterns are recorded once and the entries
+ * look up the offset of their pattern.
+ *
+ * @author graywatson
+ */
+class MultiPatternSearch {
+
+	private static final int BYTE_TABLE_SIZE = 256;
+	private static final int ROOT_STATE = 0;
+
+	private final Map<String, Integer> patternIdMap = new HashMap<String, Integer>();
+	private final List<byte[]> patterns = new ArrayList<byte[]>();
+	private final List<State> states = new ArrayList<State>();
+
+	// these are built by finish()
+	private int[] rootTable;
+	private byte[][] stateEdgeBytes;
+	private int[][] stateEdgeTargets;
+	private int[] stateFailures;
+	private int[][] stateOutputs;
+	private int[] patternLengths;
+
+	public MultiPatternSearch() {
+		states.add(new State());
+	}
+
+	/**
+	 * Add a pattern to our automaton and return its id. Patterns with the same bytes share the same id.
+	 */
+	public int addPattern(byte[] pattern) {
+		char[] keyChars = new char[pattern.length];
+		for (int i = 0; i < pattern.length; i++) {
+			keyChars[i] = (char) (pattern[i] & 0xFF);
+		}
+		String key = new String(keyChars);
+		Integer existing = patternIdMap.get(key);
+		if (existing != null) {
+			return existing;
+		}
+		int patternId = patterns.size();
+		patterns.add(pattern);
+		patternIdMap.put(key, patternId);
+		int stateIndex = ROOT_STATE;
+		for (byte b : pattern) {
+			State state = states.get(stateIndex);
+			Integer next = state.edges.get(b);
+			if (next == null) {
+				next = states.size();
+				states.add(new State());
+				state.edges.put(b, next);
+			}
+			stateIndex = next;
+		}
+		states.get(stateIndex).outputs.add(patternId);
+		return patternId;
+	}
+
+	/**
+	 * Return the number of different patterns we are searching for.
+	 */
+	public int getPatternCount() {
+		return patterns.size();
+	}
+
+	/**
+	 * Build the failure links and the arrays we use when searching. Must be called after the patterns are added.
+	 */
+	public void finish() {
+		int numStates = states.size();
+		stateEdgeBytes = new byte[numStates][];
+		stateEdgeTargets = new int[numStates][];
+		stateFailures = new int[numStates];
+		stateOutputs = new int[numStates][];
+		for (int i = 0; i < numStates; i++) {
+			State state = states.get(i);
+			byte[] edgeBytes = new byte[state.edges.size()];
+			int[] edgeTargets = new int[edgeBytes.length];
+			int edgeCount = 0;
+			for (Map.Entry<Byte, Integer> entry : state.edges.entrySet()) {
+				edgeBytes[edgeCount] = entry.getKey();
+				edgeTargets[edgeCount] = entry.getValue();
+				edgeCount++;
+			}
+			stateEdgeBytes[i] = edgeBytes;
+			stateEdgeTargets[i] = edgeTargets;
+		}
+		rootTable = new int[BYTE_TABLE_SIZE];
+		Arrays.fill(rootTable, ROOT_STATE);
+		for (int i = 0; i < stateEdgeBytes[ROOT_STATE].length; i++) {
+			rootTable[stateEdgeBytes[ROOT_STATE][i] & 0xFF] = stateEdgeTargets[ROOT_STATE][i];
+		}
+
+		// breadth first so the failure state, which is shorter, is always finished before the states that use it
+		Queue<Integer> queue = new LinkedList<Integer>();
+		stateOutputs[ROOT_STATE] = toArray(states.get(ROOT_STATE).outputs, null);
+		for (int target : stateEdgeTargets[ROOT_STATE]) {
+			stateFailures[target] = ROOT_STATE;
+			stateOutputs[target] = toArray(states.get(target).outputs, null);
+			queue.add(target);
+		}
+		while (!queue.isEmpty()) {
+			int stateIndex = queue.remove();
+			for (int i = 0; i < stateEdgeBytes[stateIndex].length; i++) {
+				byte b = stateEdgeBytes[stateIndex][i];
+				int target = stateEdgeTargets[stateIndex][i];
+				// the failure is the longest suffix of the target that is also in the automaton
+				int failure = stateFailures[stateIndex];
+				int next = findEdge(failure, b);
+				while (next < 0 && failure != ROOT_STATE) {
+					failure = stateFailures[failure];
+					next = findEdge(failure, b);
+				}
+				if (next < 0) {
+					next = ROOT_STATE;
+				}
+				stateFailures[target] = next;
+				// outputs include the ones from the failure state since it is a suffix of this one
+				stateOutputs[target] = toArray(states.get(target).outputs, stateOutputs[next]);
+				queue.add(target);
+			}
+		}
+
+		patternLengths = new int[patterns.size()];
+		for (int i = 0; i < patternLengths.length; i++) {
+			patternLengths[i] = patterns.get(i).length;
+		}
+		// we don't need the building structures anymore
+		states.clear();
+		patternIdMap.clear();
+	}
+
+	/**
+	 * Find all of the patterns in the bytes with one pass.
+	 */
+	public Hits findHits(byte[] bytes) {
+		Hits hits = newHits();
+		findHits(bytes, hits);
+		return hits;
+	}
+
+	/**
+	 * Return hits which can be passed to {@link #findHits(byte[], Hits)} and reused for each search.
+	 */
+	public Hits newHits() {
+		return new Hits(patternLengths.length);
+	}
+
+	/**
+	 * Find all of the patterns in the bytes with one pass replacing what was in the hits.
+	 */
+	public void findHits(byte[] bytes, Hits hits) {
+		findHits(bytes, 0, bytes.length, hits);
+	}
+
+	/**
+	 * Same as {@link #findHits(byte[], Hits)} but searches the length bytes in the array from the start index. The
+	 * offsets of the hits are relative to the start.
+	 */
+	public void findHits(byte[] bytes, int start, int length, Hits hits) {
+		hits.clear();
+		int stateIndex = ROOT_STATE;
+		for (int pos = 0; pos < length; pos++) {
+			byte b = bytes[start + pos];
+			while (true) {
+				if (stateIndex == ROOT_STATE) {
+					stateIndex = rootTable[b & 0xFF];
+					break;
+				}
+				int next = findEdge(stateIndex, b);
+				if (next >= 0) {
+					stateIndex = next;
+					break;
+				}
+				stateIndex = stateFailures[stateIndex];
+			}
+			for (int patternId : stateOutputs[stateIndex]) {
+				hits.add(patternId, pos + 1 - patternLengths[patternId]);
+			}
+		}
+	}
+
+	private int findEdge(int stateIndex, byte b) {
+		byte[] edgeBytes = stateEdgeBytes[stateIndex];
+		for (int i = 0; i < edgeBytes.length; i++) {
+			if (edgeBytes[i] == b) {
+				return stateEdgeTargets[stateIndex][i];
+			}
+		}
+		return -1;
+	}
+
+	private static int[] toArray(List<Integer> list, int[] suffixOutputs) {
+		int suffixLength = (suffixOutputs == null ? 0 : suffixOutputs.length);
+		int[] array = new int[list.size() + suffixLength];
+		for (int i = 0; i < list.size(); i++) {
+			array[i] = list.get(i);
+		}
+		if (suffixLength > 0) {
+			System.arraycopy(suffixOutputs, 0, array, list.size(), suffixLength);
+		}
+		return array;
+	}
+
+	/**
+	 * State in the automaton while we are building it.
+	 */
+	private static class State {
+		final Map<Byte, Integer> edges = new HashMap<Byte, Integer>();
+		final List<Integer> outputs = new ArrayList<Integer>();
+	}
+
+	/**
+	 * Offsets where each of the patterns were found in the bytes.
+	 */
+	static class Hits {
+
+		private final int[][] patternOffsets;
+		private final int[] patternCounts;
+
+		private Hits(int numPatterns) {
+			this.patternOffsets = new int[numPatterns][];
+			this.patternCounts = new int[numPatterns];
+		}
+
+		/**
+		 * Return the first offset at or after the from-offset where the pattern was found or -1 if none.
+		 */
+		public int findOffset(int patternId, int fromOffset) {
+			int[] offsets = patternOffsets[patternId];
+			if (offsets == null || patternCounts[patternId] == 0) {
+				return -1;
+			}
+			// offsets were added in ascending order
+			int index = Arrays.binarySearch(offsets, 0, patternCounts[patternId], fromOffset);
+			if (index < 0) {
+				index = -(index + 1);
+			}
+			if (index < patternCounts[patternId]) {
+				return offsets[index];
+			} else {
+				return -1;
+			}
+		}
+
+		private void clear() {
+			// the offset arrays are kept so they can be reused
+			Arrays.fill(patternCounts, 0);
+		}
+
+		private void add(int patternId, int offset) {
+			int[] offsets = patternOffsets[patternId];
+			int count = patternCounts[patternId];
+			if (offsets == null) {
+				offsets = new int[4];
+				patternOffsets[patternId] = offsets;
+			} else if (count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count * 2);
+				patternOffsets[patternId] = offsets;
+			}
+			offsets[count] = offset;
+			patternCounts[patternId] = count + 1;
+		}
+	}
+}
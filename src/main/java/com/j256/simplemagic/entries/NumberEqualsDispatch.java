@@ -0,0 +1,220 @@
+package com.j256.simplemagic.entries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.j256.simplemagic.types.BaseLongType;
+import com.j256.simplemagic.types.NumberComparison;
+import com.j256.simplemagic.types.TestOperator;
+
+/**
+ * Dispatch of the top-level entries which test a number for equality at a fixed offset. Entries that share the same
+ * offset, number type (which includes the endian-ness), AND-mask, and unsigned-ness are grouped together so we only
+ * need to extract the value from the bytes once per group. We then look up the value in a hash of the test values to
+ * find the entries in the group that can match and remove the rest from the candidates.
+ *
+ * <p>
+ * <b>NOTE:</b> This only removes entries that can never match so the order and results of the matching is unchanged.
+ * </p>
+ *
+ * @author graywatson
+ */
+class NumberEqualsDispatch {
+
+	/** groups with fewer entries aren't worth the lookup */
+	private static final int MIN_GROUP_SIZE = 2;
+
+	private final Group[] groups;
+
+	/**
+	 * Build our dispatch groups from the top-level entries.
+	 */
+	public NumberEqualsDispatch(List<MagicEntry> entries) {
+		Map<GroupKey, List<Integer>> groupMap = new LinkedHashMap<GroupKey, List<Integer>>();
+		for (int entryIndex = 0; entryIndex < entries.size(); entryIndex++) {
+			MagicEntry entry = entries.get(entryIndex);
+			int offset = entry.getFixedOffset();
+			if (offset < 0 || !(entry.getMatcher() instanceof BaseLongType)
+					|| !(entry.getTestValue() instanceof NumberComparison)
+					|| ((NumberComparison) entry.getTestValue()).getOperator() != TestOperator.EQUALS) {
+				continue;
+			}
+			GroupKey key = new GroupKey(offset, (BaseLongType) entry.getMatcher(), entry.getAndValue(),
+					entry.isUnsignedType());
+			List<Integer> indexes = groupMap.get(key);
+			if (indexes == null) {
+				indexes = new ArrayList<Integer>();
+				groupMap.put(key, indexes);
+			}
+			indexes.add(entryIndex);
+		}
+		List<Group> groupList = new ArrayList<Group>();
+		for (Map.Entry<GroupKey, List<Integer>> mapEntry : groupMap.entrySet()) {
+			if (mapEntry.getValue().size() >= MIN_GROUP_SIZE) {
+				groupList.add(new Group(mapEntry.getKey(), mapEntry.getValue(), entries));
+			}
+		}
+		this.groups = groupList.toArray(new Group[groupList.size()]);
+	}
+
+	/**
+	 * Remove from the candidates bit-set the indexes of the entries in our groups that will not match the bytes.
+	 */
+	public void filterCandidates(byte[] bytes, long[] candidates) {
+		filterCandidates(bytes, 0, bytes.length, false, candidates);
+	}
+
+	/**
+	 * Same as {@link #filterCandidates(byte[], long[])} but for the length bytes in the array from the start index. If
+	 * truncated is true then the bytes are only the start of the content so the entries that test past their end are
+	 * not removed.
+	 */
+	public void filterCandidates(byte[] bytes, int start, int length, boolean truncated, long[] candidates) {
+		for (Group group : groups) {
+			group.filterCandidates(bytes, start, length, truncated, candidates);
+		}
+	}
+
+	/**
+	 * Return the indexes of the entries that are dispatched by value in ascending order.
+	 */
+	public int[] getEntryIndexes() {
+		int count = 0;
+		for (Group group : groups) {
+			count += group.members.length;
+		}
+		int[] indexes = new int[count];
+		count = 0;
+		for (Group group : groups) {
+			System.arraycopy(group.members, 0, indexes, count, group.members.length);
+			count += group.members.length;
+		}
+		Arrays.sort(indexes);
+		return indexes;
+	}
+
+	/**
+	 * Entries that are tested against the same value extracted from the bytes.
+	 */
+	private static class Group {
+
+		private final int offset;
+		private final BaseLongType numberType;
+		private final Long andValue;
+		private final boolean unsignedType;
+		/** indexes of the entries in the group in ascending order */
+		private final int[] members;
+		/** open addressed hash of comparison value to the indexes of the entries in ascending order */
+		private final long[] hashValues;
+		private final int[][] hashEntries;
+		private final int hashMask;
+
+		public Group(GroupKey key, List<Integer> indexes, List<MagicEntry> entries) {
+			this.offset = key.offset;
+			this.numberType = key.numberType;
+			this.andValue = key.andValue;
+			this.unsignedType = key.unsignedType;
+			this.members = new int[indexes.size()];
+			// power of 2 which is at least twice the number of entries
+			int hashSize = Integer.highestOneBit(members.length * 2 - 1) << 1;
+			this.hashValues = new long[hashSize];
+			this.hashEntries = new int[hashSize][];
+			this.hashMask = hashSize - 1;
+			for (int i = 0; i < members.length; i++) {
+				int entryIndex = indexes.get(i);
+				members[i] = entryIndex;
+				NumberComparison comparison = (NumberComparison) entries.get(entryIndex).getTestValue();
+				long value = numberType.toComparisonValue(unsignedType, comparison.getValue().longValue());
+				int slot = findSlot(value);
+				int[] slotEntries = hashEntries[slot];
+				if (slotEntries == null) {
+					hashValues[slot] = value;
+					hashEntries[slot] = new int[] { entryIndex };
+				} else {
+					slotEntries = Arrays.copyOf(slotEntries, slotEntries.length + 1);
+					slotEntries[slotEntries.length - 1] = entryIndex;
+					hashEntries[slot] = slotEntries;
+				}
+			}
+		}
+
+		public void filterCandidates(byte[] bytes, int start, int length, boolean truncated, long[] candidates) {
+			int[] matching;
+			if (!numberType.hasBytes(offset, length)) {
+				if (truncated && offset >= 0) {
+					// the value is past the end of the bytes so we don't know which of the entries will match
+					return;
+				}
+				// not enough bytes so none of the entries can match
+				matching = null;
+			} else {
+				long value = numberType.extractLong(start + offset, bytes);
+				if (andValue != null) {
+					value &= andValue;
+				}
+				matching = hashEntries[findSlot(numberType.toComparisonValue(unsignedType, value))];
+			}
+			// remove the members which don't match, both arrays are in ascending order
+			int matchingPos = 0;
+			for (int entryIndex : members) {
+				if (matching != null && matchingPos < matching.length && matching[matchingPos] == entryIndex) {
+					matchingPos++;
+				} else {
+					FixedOffsetFilter.clearBit(candidates, entryIndex);
+				}
+			}
+		}
+
+		/**
+		 * Return the slot that holds the value or the empty slot where it should go.
+		 */
+		private int findSlot(long value) {
+			int slot = (int) ((value * 0x9E3779B97F4A7C15L) >>> 32) & hashMask;
+			while (hashEntries[slot] != null && hashValues[slot] != value) {
+				slot = (slot + 1) & hashMask;
+			}
+			return slot;
+		}
+	}
+
+	/**
+	 * What the entries in a group have in common.
+	 */
+	private static class GroupKey {
+
+		final int offset;
+		final BaseLongType numberType;
+		final Long andValue;
+		final boolean unsignedType;
+
+		public GroupKey(int offset, BaseLongType numberType, Long andValue, boolean unsignedType) {
+			this.offset = offset;
+			this.numberType = numberType;
+			this.andValue = andValue;
+			this.unsignedType = unsignedType;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = offset;
+			// the type instances are singletons from the MagicType enum
+			result = 31 * result + System.identityHashCode(numberType);
+			result = 31 * result + (andValue == null ? 0 : andValue.hashCode());
+			result = 31 * result + (unsignedType ? 1 : 0);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof GroupKey)) {
+				return false;
+			}
+			GroupKey other = (GroupKey) obj;
+			return offset == other.offset && numberType == other.numberType && unsignedType == other.unsignedType
+					&& (andValue == null ? other.andValue == null : andValue.equals(other.andValue));
+		}
+	}
+}
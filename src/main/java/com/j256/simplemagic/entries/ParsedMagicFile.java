@@ -0,0 +1,174 @@
+package com.j256.simplemagic.entries;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.j256.simplemagic.ContentInfoUtil.ErrorCallBack;
+
+/**
+ * Lines of a magic file which have been parsed into entries but not yet linked to their parents. Parsing the lines is
+ * the expensive part of loading a magic file and each line can be parsed on its own so this can be done in parallel.
+ * The parsed file is then added to the {@link MagicEntries} with {@link MagicEntries#addParsedFile} which links the
+ * entries in the original order on one thread so the matching order and the errors are the same as reading the file
+ * line by line.
+ *
+ * @author graywatson
+ */
+public class ParsedMagicFile {
+
+	/** number of lines that each fork-join task parses */
+	private static final int LINES_PER_TASK = 256;
+
+	private final String[] lines;
+	private final MagicEntry[] entries;
+	private final List<ParseError>[] errors;
+
+	@SuppressWarnings("unchecked")
+	private ParsedMagicFile(String[] lines) {
+		this.lines = lines;
+		this.entries = new MagicEntry[lines.length];
+		this.errors = (List<ParseError>[]) new List<?>[lines.length];
+	}
+
+	/**
+	 * Read in the lines from the reader and parse them using the pool. If the pool is null then the lines are parsed
+	 * by the calling thread.
+	 */
+	public static ParsedMagicFile parse(BufferedReader lineReader, ForkJoinPool pool) throws IOException {
+		List<String> lineList = new ArrayList<String>();
+		while (true) {
+			String line = lineReader.readLine();
+			if (line == null) {
+				break;
+			}
+			// skip blanks and comments
+			if (line.length() == 0 || line.charAt(0) == '#') {
+				continue;
+			}
+			lineList.add(line);
+		}
+		ParsedMagicFile parsedFile = new ParsedMagicFile(lineList.toArray(new String[lineList.size()]));
+		ParseTask task = new ParseTask(parsedFile, 0, parsedFile.lines.length);
+		if (pool == null || parsedFile.lines.length <= LINES_PER_TASK) {
+			task.compute();
+		} else {
+			pool.invoke(task);
+		}
+		return parsedFile;
+	}
+
+	/**
+	 * Number of lines that were parsed not including the blanks and comments.
+	 */
+	public int getLineCount() {
+		return lines.length;
+	}
+
+	String getLine(int lineIndex) {
+		return lines[lineIndex];
+	}
+
+	/**
+	 * Return the entry parsed from the line or null if it had errors or is a special line which changes the entry
+	 * before it.
+	 */
+	MagicEntry getEntry(int lineIndex) {
+		return entries[lineIndex];
+	}
+
+	/**
+	 * Return true if the line is a special line such as the mime-type which has to be handled when the entries are
+	 * linked.
+	 */
+	boolean isSpecialLine(int lineIndex) {
+		return lines[lineIndex].startsWith("!:");
+	}
+
+	/**
+	 * Report any errors from parsing the line to the call-back.
+	 */
+	void reportErrors(int lineIndex, ErrorCallBack errorCallBack) {
+		if (errors[lineIndex] != null && errorCallBack != null) {
+			for (ParseError error : errors[lineIndex]) {
+				errorCallBack.error(error.line, error.details, error.e);
+			}
+		}
+	}
+
+	private void parseLine(int lineIndex) {
+		String line = lines[lineIndex];
+		if (line.startsWith("!:")) {
+			// needs the previous entry so it is handled when the entries are linked
+			return;
+		}
+		ErrorCollector errorCollector = new ErrorCollector();
+		try {
+			entries[lineIndex] = MagicEntryParser.parseLine(null, line, errorCollector);
+		} catch (IllegalArgumentException e) {
+			errorCollector.error(line, e.getMessage(), e);
+		}
+		errors[lineIndex] = errorCollector.errors;
+	}
+
+	/**
+	 * Parses a range of the lines, splitting it in half until it is small enough.
+	 */
+	private static class ParseTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1887396312457234178L;
+
+		private final ParsedMagicFile parsedFile;
+		private final int start;
+		private final int end;
+
+		public ParseTask(ParsedMagicFile parsedFile, int start, int end) {
+			this.parsedFile = parsedFile;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= LINES_PER_TASK || getPool() == null) {
+				for (int i = start; i < end; i++) {
+					parsedFile.parseLine(i);
+				}
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new ParseTask(parsedFile, start, middle), new ParseTask(parsedFile, middle, end));
+			}
+		}
+	}
+
+	/**
+	 * Saves the errors from a line so they can be reported in order.
+	 */
+	private static class ErrorCollector implements ErrorCallBack {
+
+		List<ParseError> errors;
+
+		@Override
+		public void error(String line, String details, Exception e) {
+			if (errors == null) {
+				errors = new ArrayList<ParseError>(1);
+			}
+			errors.add(new ParseError(line, details, e));
+		}
+	}
+
+	private static class ParseError {
+		final String line;
+		final String details;
+		final Exception e;
+
+		public ParseError(String line, String details, Exception e) {
+			this.line = line;
+			this.details = details;
+			this.e = e;
+		}
+	}
+}
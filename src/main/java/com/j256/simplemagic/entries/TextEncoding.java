@@ -0,0 +1,179 @@
+package com.j256.simplemagic.entries;
+
+/**
+ * Rough classification of the content as text or binary so we can skip the text rules when the content is binary. This
+ * is similar to how the file(1) command decides to only run the text magic on text files.
+ *
+ * @author graywatson
+ */
+public enum TextEncoding {
+
+	/** content has control characters which are not found in text */
+	BINARY(false),
+	/** all characters are 7-bit printable or the usual text control characters */
+	ASCII(true),
+	/** valid UTF-8 multi-byte sequences */
+	UTF_8(true),
+	/** starts with a little-endian byte-order-mark */
+	UTF_16LE(true),
+	/** starts with a big-endian byte-order-mark */
+	UTF_16BE(true),
+	/** 8-bit characters which are not valid UTF-8 */
+	LATIN_1(true),
+	// end
+	;
+
+	private static final byte TEXT_CHAR = 0;
+	private static final byte BINARY_CHAR = 1;
+	private static final byte HIGH_CHAR = 2;
+	private static final byte[] CHAR_CLASSES = new byte[256];
+
+	static {
+		for (int i = 0; i < 0x20; i++) {
+			CHAR_CLASSES[i] = BINARY_CHAR;
+		}
+		// bell, backspace, tab, newline, vertical-tab, form-feed, carriage-return, escape
+		for (char ch : new char[] { 7, 8, '\t', '\n', 11, '\f', '\r', 27 }) {
+			CHAR_CLASSES[ch] = TEXT_CHAR;
+		}
+		CHAR_CLASSES[0x7F] = BINARY_CHAR;
+		for (int i = 0x80; i < 0x100; i++) {
+			CHAR_CLASSES[i] = HIGH_CHAR;
+		}
+	}
+
+	private final boolean text;
+
+	private TextEncoding(boolean text) {
+		this.text = text;
+	}
+
+	/**
+	 * Return true if the content is some sort of text.
+	 */
+	public boolean isText() {
+		return text;
+	}
+
+	/**
+	 * Classify the bytes. The bytes may be the start of a larger file so a multi-byte character can be cut off at the
+	 * end.
+	 */
+	public static TextEncoding fromBytes(byte[] bytes) {
+		return fromBytes(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Classify the length bytes in the array from the start index.
+	 */
+	public static TextEncoding fromBytes(byte[] bytes, int start, int length) {
+		int end = start + length;
+		if (length >= 2) {
+			if (bytes[start] == (byte) 0xFF && bytes[start + 1] == (byte) 0xFE) {
+				return (isUtf16Text(bytes, start, end, false) ? UTF_16LE : BINARY);
+			} else if (bytes[start] == (byte) 0xFE && bytes[start + 1] == (byte) 0xFF) {
+				return (isUtf16Text(bytes, start, end, true) ? UTF_16BE : BINARY);
+			}
+		}
+		boolean highChars = false;
+		boolean utf8 = true;
+		int pos = start;
+		while (pos < end) {
+			// skip 8 ASCII text characters at a time which is the bulk of most text
+			if (pos + 8 <= end && isTextAscii(bytes, pos)) {
+				pos += 8;
+				continue;
+			}
+			int b = (bytes[pos] & 0xFF);
+			byte charClass = CHAR_CLASSES[b];
+			if (charClass == BINARY_CHAR) {
+				return BINARY;
+			} else if (charClass == TEXT_CHAR) {
+				pos++;
+				continue;
+			}
+			highChars = true;
+			if (utf8) {
+				int seqLength = utf8SequenceLength(bytes, pos, end);
+				if (seqLength > 0) {
+					// the continuation bytes are all high characters so we can skip them
+					pos += seqLength;
+					continue;
+				}
+				utf8 = false;
+			}
+			pos++;
+		}
+		if (!highChars) {
+			return ASCII;
+		} else if (utf8) {
+			return UTF_8;
+		} else {
+			return LATIN_1;
+		}
+	}
+
+	/**
+	 * Return true if the string only has characters that can be found in text content.
+	 */
+	public static boolean isTextString(String str) {
+		for (int i = 0; i < str.length(); i++) {
+			char ch = str.charAt(i);
+			if (ch < CHAR_CLASSES.length && CHAR_CLASSES[ch] == BINARY_CHAR) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if all 8 bytes at the position are 7-bit text characters.
+	 */
+	private static boolean isTextAscii(byte[] bytes, int pos) {
+		// or-ing the classes together is faster than testing each byte in turn since there are no branches
+		return (CHAR_CLASSES[bytes[pos] & 0xFF] | CHAR_CLASSES[bytes[pos + 1] & 0xFF]
+				| CHAR_CLASSES[bytes[pos + 2] & 0xFF] | CHAR_CLASSES[bytes[pos + 3] & 0xFF]
+				| CHAR_CLASSES[bytes[pos + 4] & 0xFF] | CHAR_CLASSES[bytes[pos + 5] & 0xFF]
+				| CHAR_CLASSES[bytes[pos + 6] & 0xFF] | CHAR_CLASSES[bytes[pos + 7] & 0xFF]) == TEXT_CHAR;
+	}
+
+	/**
+	 * Return the length of the UTF-8 sequence at the position or 0 if it is not valid.
+	 */
+	private static int utf8SequenceLength(byte[] bytes, int pos, int bytesEnd) {
+		int b = (bytes[pos] & 0xFF);
+		int seqLength;
+		if (b >= 0xC2 && b <= 0xDF) {
+			seqLength = 2;
+		} else if (b >= 0xE0 && b <= 0xEF) {
+			seqLength = 3;
+		} else if (b >= 0xF0 && b <= 0xF4) {
+			seqLength = 4;
+		} else {
+			return 0;
+		}
+		int end = Math.min(pos + seqLength, bytesEnd);
+		for (int i = pos + 1; i < end; i++) {
+			if ((bytes[i] & 0xC0) != 0x80) {
+				return 0;
+			}
+		}
+		// a sequence cut off by the end of the bytes is fine
+		return end - pos;
+	}
+
+	private static boolean isUtf16Text(byte[] bytes, int start, int end, boolean bigEndian) {
+		for (int pos = start + 2; pos + 1 < end; pos += 2) {
+			int ch;
+			if (bigEndian) {
+				ch = ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+			} else {
+				ch = ((bytes[pos + 1] & 0xFF) << 8) | (bytes[pos] & 0xFF);
+			}
+			if (ch < 0x80 && CHAR_CLASSES[ch] == BINARY_CHAR) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -1,6 +1,7 @@
 package com.j256.simplemagic.types;
 
 import com.j256.simplemagic.endian.EndianType;
+import com.j256.simplemagic.entries.MagicMatcher.MutableOffset;
 
 /**
  * Base class for those types which use long types to compare.
@@ -18,9 +19,86 @@ public abstract class BaseLongType extends NumberType {
 		return Long.decode(valueStr);
 	}
 
+	@Override
+	public Object extractValueFromBytes(int offset, byte[] bytes, int start, int length, boolean required) {
+		if (hasBytes(offset, length)) {
+			return extractLong(start + offset, bytes);
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
+			MutableOffset mutableOffset, byte[] bytes, int start, int length) {
+		if (((NumberComparison) testValue).isMatch(andValue, unsignedType, ((Number) extractedValue).longValue())) {
+			mutableOffset.offset += getBytesPerType();
+			return extractedValue;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Return true if there are enough bytes at the offset to extract the value.
+	 */
+	public boolean hasBytes(int offset, byte[] bytes) {
+		return hasBytes(offset, bytes.length);
+	}
+
+	/**
+	 * Return true if there are enough bytes at the offset to extract the value from content with the length.
+	 */
+	public boolean hasBytes(int offset, int length) {
+		return (offset >= 0 && offset + getBytesPerType() <= length);
+	}
+
+	/**
+	 * Extract the value from the bytes as a primitive so it doesn't have to be boxed. The offset is the index in the
+	 * array so content which starts part way into the array must add its start. The caller must make sure that
+	 * {@link #hasBytes(int, int)} returns true.
+	 */
+	public long extractLong(int offset, byte[] bytes) {
+		return endianConverter.convertLong(offset, bytes, getBytesPerType());
+	}
+
+	/**
+	 * Primitive version of {@link #compare(boolean, Number, Number)}.
+	 */
+	public int compare(boolean unsignedType, long extractedValue, long testValue) {
+		long extractedComparison = toComparisonValue(unsignedType, extractedValue);
+		long testComparison = toComparisonValue(unsignedType, testValue);
+		if (extractedComparison > testComparison) {
+			return 1;
+		} else if (extractedComparison < testComparison) {
+			return -1;
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * Return the value as it is compared by {@link #compare(boolean, Number, Number)}. Two values compare as equal if
+	 * and only if their comparison values are the same.
+	 */
+	public long toComparisonValue(boolean unsignedType, long value) {
+		return value;
+	}
+
 	@Override
 	public byte[] getStartingBytes(Object testValue) {
 		return endianConverter.convertToByteArray(((NumberComparison) testValue).getValue().longValue(),
 				getBytesPerType());
 	}
+
+	@Override
+	public byte[] getRequiredBytes(Object testValue) {
+		NumberComparison comparison = (NumberComparison) testValue;
+		if (comparison.getOperator() == TestOperator.EQUALS) {
+			// the bytes from the value are the same bytes that will be compared
+			return getStartingBytes(testValue);
+		} else {
+			return null;
+		}
+	}
 }
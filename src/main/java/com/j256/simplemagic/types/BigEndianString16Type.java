@@ -8,30 +8,49 @@ package com.j256.simplemagic.types;
 public class BigEndianString16Type extends StringType {
 
 	@Override
-	public Object extractValueFromBytes(int offset, byte[] bytes, boolean required) {
+	public Object extractValueFromBytes(int offset, byte[] bytes, int start, int length, boolean required) {
+		if (offset < 0) {
+			return null;
+		}
 		int len;
 		// find the 2 (I guess) '\0' chars, we do the -1 to make sure we don't have odd number of bytes
-		for (len = offset; len < bytes.length - 1; len += 2) {
-			if (bytes[len] == 0 && bytes[len + 1] == 0) {
+		for (len = offset; len < length - 1; len += 2) {
+			if (bytes[start + len] == 0 && bytes[start + len + 1] == 0) {
 				break;
 			}
 		}
 		char[] chars = new char[len / 2];
+		if (chars.length * 2 > length) {
+			// the offset is past the end of the bytes
+			return null;
+		}
 		for (int i = 0; i < chars.length; i++) {
-			chars[i] = bytesToChar(bytes[i * 2], bytes[i * 2 + 1]);
+			chars[i] = bytesToChar(bytes[start + i * 2], bytes[start + i * 2 + 1]);
 		}
 		return chars;
 	}
 
 	@Override
 	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
-			MutableOffset mutableOffset, byte[] bytes) {
+			MutableOffset mutableOffset, byte[] bytes, int start, int length) {
 		// we do the match on the extracted chars
 		char[] chars = (char[]) extractedValue;
-		return super.findOffsetMatch((TestInfo) testValue, mutableOffset.offset, mutableOffset, null, chars,
+		return super.findOffsetMatch((TestInfo) testValue, mutableOffset.offset, mutableOffset, null, 0, chars,
 				chars.length);
 	}
 
+	@Override
+	public byte[] getRequiredBytes(Object testValue) {
+		// the pattern is matched against 2-byte characters
+		return null;
+	}
+
+	@Override
+	public int getReadLength(Object testValue) {
+		// the characters are extracted up to the end of the string
+		return -1;
+	}
+
 	/**
 	 * Convert 2 bytes into a character.
 	 */
@@ -24,6 +24,15 @@ public class ByteType extends BaseLongType {
 		return value & 0xFFL;
 	}
 
+	@Override
+	public long toComparisonValue(boolean unsignedType, long value) {
+		if (unsignedType) {
+			return value;
+		} else {
+			return (byte) value;
+		}
+	}
+
 	@Override
 	public int compare(boolean unsignedType, Number extractedValue, Number testValue) {
 		if (unsignedType) {
@@ -1,5 +1,9 @@
 package com.j256.simplemagic.types;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import com.j256.simplemagic.entries.MagicFormatter;
 import com.j256.simplemagic.entries.MagicMatcher;
 
@@ -23,14 +27,36 @@ public class DefaultType implements MagicMatcher {
 		return EMPTY;
 	}
 
+	@Override
+	public void writeTestValue(DataOutput output, Object testValue) {
+		// nothing to write
+	}
+
+	@Override
+	public Object readTestValue(DataInput input) {
+		return EMPTY;
+	}
+
 	@Override
 	public Object extractValueFromBytes(int offset, byte[] bytes, boolean required) {
+		return extractValueFromBytes(offset, bytes, 0, PatternUtils.lengthOf(bytes), required);
+	}
+
+	@Override
+	public Object extractValueFromBytes(int offset, byte[] bytes, int start, int length, boolean required) {
 		return EMPTY;
 	}
 
 	@Override
 	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
 			MutableOffset offset, byte[] bytes) {
+		return isMatch(testValue, andValue, unsignedType, extractedValue, offset, bytes, 0,
+				PatternUtils.lengthOf(bytes));
+	}
+
+	@Override
+	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
+			MutableOffset offset, byte[] bytes, int start, int length) {
 		// always matches
 		return EMPTY;
 	}
@@ -44,4 +70,15 @@ public class DefaultType implements MagicMatcher {
 	public byte[] getStartingBytes(Object testValue) {
 		return null;
 	}
+
+	@Override
+	public byte[] getRequiredBytes(Object testValue) {
+		return null;
+	}
+
+	@Override
+	public int getReadLength(Object testValue) {
+		// we don't look at the bytes
+		return 0;
+	}
 }
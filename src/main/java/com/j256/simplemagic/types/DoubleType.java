@@ -21,8 +21,11 @@ public class DoubleType extends NumberType {
 	}
 
 	@Override
-	public Object extractValueFromBytes(int offset, byte[] bytes, boolean required) {
-		Long val = endianConverter.convertNumber(offset, bytes, getBytesPerType());
+	public Object extractValueFromBytes(int offset, byte[] bytes, int start, int length, boolean required) {
+		if (offset < 0 || offset + getBytesPerType() > length) {
+			return null;
+		}
+		Long val = endianConverter.convertNumber(start + offset, bytes, getBytesPerType());
 		if (val == null) {
 			return null;
 		} else {
@@ -48,6 +51,11 @@ public class DoubleType extends NumberType {
 		return null;
 	}
 
+	@Override
+	public byte[] getRequiredBytes(Object testValue) {
+		return null;
+	}
+
 	/**
 	 * Convert a long to the type.
 	 */
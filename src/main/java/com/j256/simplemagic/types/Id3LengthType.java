@@ -14,14 +14,14 @@ public class Id3LengthType extends IntegerType {
 	}
 
 	@Override
-	public Object extractValueFromBytes(int offset, byte[] bytes, boolean required) {
-		// because we only use the lower 7-bits of each byte, we need to copy into a local byte array
-		int bytesPerType = getBytesPerType();
-		byte[] sevenBitBytes = new byte[bytesPerType];
-		for (int i = 0; i < bytesPerType; i++) {
-			sevenBitBytes[i] = (byte) (bytes[offset + i] & 0x7F);
-		}
-		// because we've copied into a local array, we use the 0 offset
-		return endianConverter.convertNumber(0, sevenBitBytes, bytesPerType);
+	public long extractLong(int offset, byte[] bytes) {
+		// we only use the lower 7-bits of each byte
+		return endianConverter.convertLong(offset, bytes, getBytesPerType()) & 0x7F7F7F7FL;
+	}
+
+	@Override
+	public byte[] getRequiredBytes(Object testValue) {
+		// the high bit of each byte is ignored
+		return null;
 	}
 }
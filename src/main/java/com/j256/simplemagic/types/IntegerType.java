@@ -25,6 +25,15 @@ public class IntegerType extends BaseLongType {
 		return value & 0xFFFFFFFFL;
 	}
 
+	@Override
+	public long toComparisonValue(boolean unsignedType, long value) {
+		if (unsignedType) {
+			return value;
+		} else {
+			return (int) value;
+		}
+	}
+
 	@Override
 	public int compare(boolean unsignedType, Number extractedValue, Number testValue) {
 		if (unsignedType) {
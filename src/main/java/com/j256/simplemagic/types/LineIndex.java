@@ -0,0 +1,167 @@
+package com.j256.simplemagic.types;
+
+import java.util.Arrays;
+
+/**
+ * Index of where the lines start in the bytes so the regex entries don't each have to read the lines themselves. The
+ * lines are found as they are needed and end at a line-feed, carriage-return, or carriage-return followed by a
+ * line-feed. The lines are viewed as characters without copying or decoding the bytes with each byte being one
+ * character like the string type does.
+ *
+ * @author graywatson
+ */
+public class LineIndex {
+
+	private byte[] bytes;
+	/** index in the array of the start of the content and the index after its end */
+	private int start;
+	private int end;
+	/** indexes in the array of the start and end of the lines found so far, not including the line terminator */
+	private int[] lineStarts = new int[4];
+	private int[] lineEnds = new int[4];
+	/** views of the lines which are reused when the index is reset */
+	private ByteCharSequence[] lineViews = new ByteCharSequence[4];
+	private int lineCount;
+	/** where we should look for the next line */
+	private int nextStart;
+
+	public LineIndex(byte[] bytes) {
+		reset(bytes);
+	}
+
+	/**
+	 * Start indexing the lines of new bytes. The arrays of line offsets are kept so they can be reused.
+	 */
+	public void reset(byte[] bytes) {
+		if (bytes == null) {
+			reset(null, 0, 0);
+		} else {
+			reset(bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Start indexing the lines of the content which is the length bytes in the array from the start index. The
+	 * offsets of the lines are relative to the start.
+	 */
+	public void reset(byte[] bytes, int start, int length) {
+		this.bytes = bytes;
+		this.start = start;
+		this.end = start + length;
+		this.lineCount = 0;
+		this.nextStart = start;
+		for (ByteCharSequence lineView : lineViews) {
+			if (lineView != null) {
+				// so we don't hold onto the old bytes
+				lineView.set(bytes, 0, 0);
+			}
+		}
+	}
+
+	/**
+	 * Return the offset in bytes where the line starts or -1 if there aren't that many lines.
+	 */
+	public int getLineStart(int lineNumber) {
+		if (findLines(lineNumber)) {
+			return lineStarts[lineNumber] - start;
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Return the characters of the line or null if there aren't that many lines. The characters are only valid until
+	 * the index is reset.
+	 */
+	public CharSequence getLine(int lineNumber) {
+		if (findLines(lineNumber)) {
+			ByteCharSequence lineView = lineViews[lineNumber];
+			if (lineView == null) {
+				lineView = new ByteCharSequence(bytes, lineStarts[lineNumber], lineEnds[lineNumber]);
+				lineViews[lineNumber] = lineView;
+			} else {
+				lineView.set(bytes, lineStarts[lineNumber], lineEnds[lineNumber]);
+			}
+			return lineView;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Find the lines up to and including the line-number. Returns false if there aren't that many lines.
+	 */
+	private boolean findLines(int lineNumber) {
+		if (lineNumber < 0) {
+			return false;
+		}
+		while (lineCount <= lineNumber) {
+			if (nextStart >= end) {
+				// no more lines
+				return false;
+			}
+			int lineEnd = nextStart;
+			while (lineEnd < end && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') {
+				lineEnd++;
+			}
+			if (lineCount == lineStarts.length) {
+				lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+				lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+				lineViews = Arrays.copyOf(lineViews, lineCount * 2);
+			}
+			lineStarts[lineCount] = nextStart;
+			lineEnds[lineCount] = lineEnd;
+			lineCount++;
+			if (lineEnd < end && bytes[lineEnd] == '\r' && lineEnd + 1 < end && bytes[lineEnd + 1] == '\n') {
+				nextStart = lineEnd + 2;
+			} else {
+				nextStart = lineEnd + 1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * View of some of the bytes as characters.
+	 */
+	private static class ByteCharSequence implements CharSequence {
+
+		private byte[] bytes;
+		private int start;
+		private int end;
+
+		public ByteCharSequence(byte[] bytes, int start, int end) {
+			set(bytes, start, end);
+		}
+
+		void set(byte[] bytes, int start, int end) {
+			this.bytes = bytes;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (bytes[start + index] & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int subStart, int subEnd) {
+			return new ByteCharSequence(bytes, start + subStart, start + subEnd);
+		}
+
+		@Override
+		public String toString() {
+			char[] chars = new char[end - start];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = (char) (bytes[start + i] & 0xFF);
+			}
+			return new String(chars);
+		}
+	}
+}
@@ -8,6 +8,9 @@ public class NumberComparison {
 	private final NumberType numberType;
 	private final TestOperator operator;
 	private final Number value;
+	/** set if the number-type is a long type so we can compare the values as primitives */
+	private final BaseLongType longType;
+	private final long longValue;
 
 	/**
 	 * Pre-process the test string into an operator and a value.
@@ -28,6 +31,19 @@ public class NumberComparison {
 		} catch (NumberFormatException e) {
 			throw new IllegalArgumentException("Could not parse number from: '" + valueStr + "'");
 		}
+		this.longType = longTypeOf(numberType);
+		this.longValue = value.longValue();
+	}
+
+	/**
+	 * Used when the operator and value have already been parsed.
+	 */
+	public NumberComparison(NumberType numberType, TestOperator operator, Number value) {
+		this.numberType = numberType;
+		this.operator = operator;
+		this.value = value;
+		this.longType = longTypeOf(numberType);
+		this.longValue = value.longValue();
 	}
 
 	public boolean isMatch(Long andValue, boolean unsignedType, Number extractedValue) {
@@ -37,10 +53,33 @@ public class NumberComparison {
 		return operator.doTest(unsignedType, extractedValue, value, numberType);
 	}
 
+	/**
+	 * Primitive version of {@link #isMatch(Long, boolean, Number)} which can only be used if the number-type is a
+	 * {@link BaseLongType}.
+	 */
+	public boolean isMatch(Long andValue, boolean unsignedType, long extractedValue) {
+		if (andValue != null) {
+			extractedValue &= andValue;
+		}
+		return operator.doTest(unsignedType, extractedValue, longValue, longType);
+	}
+
 	public Number getValue() {
 		return value;
 	}
 
+	public TestOperator getOperator() {
+		return operator;
+	}
+
+	private static BaseLongType longTypeOf(NumberType numberType) {
+		if (numberType instanceof BaseLongType) {
+			return (BaseLongType) numberType;
+		} else {
+			return null;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return operator + ", value " + value;
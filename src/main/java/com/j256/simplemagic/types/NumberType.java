@@ -1,5 +1,9 @@
 package com.j256.simplemagic.types;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import com.j256.simplemagic.endian.EndianConverter;
 import com.j256.simplemagic.endian.EndianType;
 import com.j256.simplemagic.entries.MagicFormatter;
@@ -12,6 +16,11 @@ import com.j256.simplemagic.entries.MagicMatcher;
  */
 public abstract class NumberType implements MagicMatcher {
 
+	private static final byte LONG_VALUE = 1;
+	private static final byte FLOAT_VALUE = 2;
+	private static final byte DOUBLE_VALUE = 3;
+	private static final TestOperator[] OPERATORS = TestOperator.values();
+
 	protected final EndianConverter endianConverter;
 
 	public NumberType(EndianType endianType) {
@@ -28,6 +37,13 @@ public abstract class NumberType implements MagicMatcher {
 	 */
 	public abstract int getBytesPerType();
 
+	/**
+	 * Return the converter that reads the bytes of this type.
+	 */
+	public EndianConverter getEndianConverter() {
+		return endianConverter;
+	}
+
 	/**
 	 * Return -1 if extractedValue is &lt; testValue, 1 if it is &gt;, 0 if it is equals.
 	 */
@@ -43,14 +59,62 @@ public abstract class NumberType implements MagicMatcher {
 		return new NumberComparison(this, testStr);
 	}
 
+	@Override
+	public void writeTestValue(DataOutput output, Object testValue) throws IOException {
+		NumberComparison comparison = (NumberComparison) testValue;
+		output.writeByte(comparison.getOperator().ordinal());
+		Number value = comparison.getValue();
+		if (value instanceof Long) {
+			output.writeByte(LONG_VALUE);
+			output.writeLong(value.longValue());
+		} else if (value instanceof Float) {
+			output.writeByte(FLOAT_VALUE);
+			output.writeFloat(value.floatValue());
+		} else {
+			output.writeByte(DOUBLE_VALUE);
+			output.writeDouble(value.doubleValue());
+		}
+	}
+
+	@Override
+	public Object readTestValue(DataInput input) throws IOException {
+		TestOperator operator = OPERATORS[input.readUnsignedByte()];
+		byte valueType = input.readByte();
+		Number value;
+		if (valueType == LONG_VALUE) {
+			value = input.readLong();
+		} else if (valueType == FLOAT_VALUE) {
+			value = input.readFloat();
+		} else {
+			value = input.readDouble();
+		}
+		return new NumberComparison(this, operator, value);
+	}
+
 	@Override
 	public Object extractValueFromBytes(int offset, byte[] bytes, boolean required) {
-		return endianConverter.convertNumber(offset, bytes, getBytesPerType());
+		return extractValueFromBytes(offset, bytes, 0, PatternUtils.lengthOf(bytes), required);
+	}
+
+	@Override
+	public Object extractValueFromBytes(int offset, byte[] bytes, int start, int length, boolean required) {
+		if (offset < 0 || offset + getBytesPerType() > length) {
+			return null;
+		} else {
+			return endianConverter.convertNumber(start + offset, bytes, getBytesPerType());
+		}
 	}
 
 	@Override
 	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
 			MutableOffset mutableOffset, byte[] bytes) {
+		return isMatch(testValue, andValue, unsignedType, extractedValue, mutableOffset, bytes, 0,
+				PatternUtils.lengthOf(bytes));
+	}
+
+	@Override
+	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
+			MutableOffset mutableOffset, byte[] bytes, int start, int length) {
 		if (((NumberComparison) testValue).isMatch(andValue, unsignedType, (Number) extractedValue)) {
 			mutableOffset.offset += getBytesPerType();
 			return extractedValue;
@@ -63,4 +127,9 @@ public abstract class NumberType implements MagicMatcher {
 	public void renderValue(StringBuilder sb, Object extractedValue, MagicFormatter formatter) {
 		formatter.format(sb, extractedValue);
 	}
+
+	@Override
+	public int getReadLength(Object testValue) {
+		return getBytesPerType();
+	}
 }
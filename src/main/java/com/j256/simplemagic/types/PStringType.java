@@ -12,23 +12,23 @@ public class PStringType extends StringType {
 	 * Extracted value is the extracted string using the first byte as the length.
 	 */
 	@Override
-	public Object extractValueFromBytes(int offset, byte[] bytes, boolean required) {
+	public Object extractValueFromBytes(int offset, byte[] bytes, int start, int length, boolean required) {
 		// we don't need to extract the value if all we are doing is matching
 		if (!required) {
 			return EMPTY;
 		}
-		if (offset >= bytes.length) {
+		if (offset < 0 || offset >= length) {
 			return null;
 		}
 		// length is from the first byte of the string
-		int len = (bytes[offset] & 0xFF);
-		int left = bytes.length - offset - 1;
+		int len = (bytes[start + offset] & 0xFF);
+		int left = length - offset - 1;
 		if (len > left) {
 			len = left;
 		}
 		char[] chars = new char[len];
 		for (int i = 0; i < chars.length; i++) {
-			chars[i] = (char) (bytes[offset + 1 + i] & 0xFF);
+			chars[i] = (char) (bytes[start + offset + 1 + i] & 0xFF);
 		}
 		/*
 		 * NOTE: we need to make a new string because it might be returned if we don't match below.
@@ -38,19 +38,37 @@ public class PStringType extends StringType {
 
 	@Override
 	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
-			MutableOffset mutableOffset, byte[] bytes) {
+			MutableOffset mutableOffset, byte[] bytes, int start, int length) {
 
-		if (mutableOffset.offset >= bytes.length) {
+		if (mutableOffset.offset < 0 || mutableOffset.offset >= length) {
 			return null;
 		}
 		// our maximum position is +1 to move past the length byte and then add in the length
-		int len = (bytes[mutableOffset.offset] & 0xFF);
+		int len = (bytes[start + mutableOffset.offset] & 0xFF);
 		int maxPos = 1 + len;
-		if (maxPos > bytes.length) {
-			maxPos = bytes.length;
+		if (maxPos > length) {
+			maxPos = length;
 		}
 
 		// we start matching past the length byte so the starting offset is +1
-		return findOffsetMatch((TestInfo) testValue, mutableOffset.offset + 1, mutableOffset, bytes, null, maxPos);
+		return findOffsetMatch((TestInfo) testValue, mutableOffset.offset + 1, mutableOffset, bytes, start, null,
+				maxPos);
+	}
+
+	@Override
+	public byte[] getRequiredBytes(Object testValue) {
+		// the pattern starts after the length byte
+		return null;
+	}
+
+	@Override
+	public int getReadLength(Object testValue) {
+		int length = super.getReadLength(testValue);
+		if (length < 0) {
+			return length;
+		} else {
+			// plus the length byte
+			return 1 + length;
+		}
 	}
 }
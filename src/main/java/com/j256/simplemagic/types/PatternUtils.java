@@ -7,6 +7,13 @@ package com.j256.simplemagic.types;
  */
 public class PatternUtils {
 
+	/**
+	 * Return the length of the bytes or 0 if they are null which some of the types allow if they don't look at them.
+	 */
+	static int lengthOf(byte[] bytes) {
+		return (bytes == null ? 0 : bytes.length);
+	}
+
 	/**
 	 * Pre-processes the pattern by handling backslash escapes such as \b and \007.
 	 */
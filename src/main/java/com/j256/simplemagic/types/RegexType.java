@@ -1,14 +1,15 @@
 package com.j256.simplemagic.types;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.InputStreamReader;
+
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.j256.simplemagic.entries.MagicFormatter;
 import com.j256.simplemagic.entries.MagicMatcher;
+import com.j256.simplemagic.entries.TextEncoding;
 
 /**
  * From the magic(5) man page: A regular expression match in extended POSIX regular expression syntax (like egrep).
@@ -47,48 +48,82 @@ public class RegexType implements MagicMatcher {
 		return patternInfo;
 	}
 
+	@Override
+	public void writeTestValue(DataOutput output, Object testValue) throws IOException {
+		PatternInfo patternInfo = (PatternInfo) testValue;
+		output.writeInt(patternInfo.patternFlags);
+		output.writeBoolean(patternInfo.updateOffsetStart);
+		output.writeUTF(patternInfo.pattern.pattern());
+	}
+
+	@Override
+	public Object readTestValue(DataInput input) throws IOException {
+		PatternInfo patternInfo = new PatternInfo();
+		patternInfo.patternFlags = input.readInt();
+		patternInfo.updateOffsetStart = input.readBoolean();
+		patternInfo.pattern = Pattern.compile(input.readUTF(), patternInfo.patternFlags);
+		return patternInfo;
+	}
+
 	@Override
 	public Object extractValueFromBytes(int offset, byte[] bytes, boolean required) {
+		return extractValueFromBytes(offset, bytes, 0, PatternUtils.lengthOf(bytes), required);
+	}
+
+	@Override
+	public Object extractValueFromBytes(int offset, byte[] bytes, int start, int length, boolean required) {
 		return EMPTY;
 	}
 
 	@Override
 	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
 			MutableOffset mutableOffset, byte[] bytes) {
-		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes)));
-		String line = null;
-		int bytesOffset = 0;
-		for (int i = 0; i <= mutableOffset.offset; i++) {
-			try {
-				line = reader.readLine();
-				// if eof then no match
-				if (line == null) {
-					return null;
-				}
-				// TODO: this doesn't take into account multiple line-feeds and multi-byte chars
-				if (i < mutableOffset.offset) {
-					bytesOffset += line.length() + 1;
-				}
-			} catch (IOException e) {
-				// probably won't get here
-				return null;
-			}
-		}
+		return isMatch(testValue, andValue, unsignedType, extractedValue, mutableOffset, bytes, 0,
+				PatternUtils.lengthOf(bytes));
+	}
+
+	@Override
+	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
+			MutableOffset mutableOffset, byte[] bytes, int start, int length) {
+		LineIndex lineIndex = new LineIndex(null);
+		lineIndex.reset(bytes, start, length);
+		return isMatch(testValue, mutableOffset, lineIndex);
+	}
+
+	/**
+	 * Matches against the line in the index whose number is the offset. The index can be shared by all of the regex
+	 * entries that are testing the same bytes.
+	 */
+	public Object isMatch(Object testValue, MutableOffset mutableOffset, LineIndex lineIndex) {
+		return isMatch(testValue, mutableOffset, lineIndex, newMatcher(testValue));
+	}
+
+	/**
+	 * Same as {@link #isMatch(Object, MutableOffset, LineIndex)} but with a matcher from {@link #newMatcher(Object)}
+	 * which is reset and reused for each match.
+	 */
+	public Object isMatch(Object testValue, MutableOffset mutableOffset, LineIndex lineIndex, Matcher matcher) {
+		CharSequence line = lineIndex.getLine(mutableOffset.offset);
+		// if not enough lines then no match
 		if (line == null) {
-			// may never get here
 			return null;
 		}
-		PatternInfo patternInfo = (PatternInfo) testValue;
-		Matcher matcher = patternInfo.pattern.matcher(line);
+		matcher.reset(line);
 		if (matcher.matches()) {
-			// TODO: need to time this
-			mutableOffset.offset = bytesOffset + matcher.end(1);
+			mutableOffset.offset = lineIndex.getLineStart(mutableOffset.offset) + matcher.end(1);
 			return matcher.group(1);
 		} else {
 			return null;
 		}
 	}
 
+	/**
+	 * Return a matcher for the pattern of the test-value which can be reused by multiple matches on the same thread.
+	 */
+	public Matcher newMatcher(Object testValue) {
+		return ((PatternInfo) testValue).pattern.matcher("");
+	}
+
 	@Override
 	public void renderValue(StringBuilder sb, Object extractedValue, MagicFormatter formatter) {
 		formatter.format(sb, extractedValue);
@@ -99,9 +134,26 @@ public class RegexType implements MagicMatcher {
 		return null;
 	}
 
+	@Override
+	public byte[] getRequiredBytes(Object testValue) {
+		return null;
+	}
+
+	@Override
+	public int getReadLength(Object testValue) {
+		// the offset is a line number so it depends on the length of the lines
+		return -1;
+	}
+
+	/**
+	 * Return true if the pattern only has text characters and so can't match binary content.
+	 */
+	public boolean isTextPattern(Object testValue) {
+		return TextEncoding.isTextString(((PatternInfo) testValue).pattern.pattern());
+	}
+
 	private static class PatternInfo {
 		int patternFlags;
-		@SuppressWarnings("unused")
 		boolean updateOffsetStart;
 		Pattern pattern;
 	}
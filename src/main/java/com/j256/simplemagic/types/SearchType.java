@@ -1,5 +1,7 @@
 package com.j256.simplemagic.types;
 
+import com.j256.simplemagic.entries.TextEncoding;
+
 /**
  * From the magic(5) man page: A literal string search starting at the given line offset. The same modifier flags can be
  * used as for string patterns. The modifier flags (if any) must be followed by /number range, that is, the number of
@@ -17,24 +19,87 @@ public class SearchType extends StringType {
 
 	@Override
 	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
-			MutableOffset mutableOffset, byte[] bytes) {
+			MutableOffset mutableOffset, byte[] bytes, int start, int length) {
 		TestInfo info = (TestInfo) testValue;
 		int maxOffset = info.maxOffset;
 		if (info.optionalWhiteSpace) {
 			// we have to look at all of the bytes unfortunately
-			maxOffset = bytes.length;
+			maxOffset = length;
 		}
 		// if offset is 1 then we need to pre-read 1 char
 		int end = mutableOffset.offset + maxOffset + info.pattern.length();
-		if (end > bytes.length) {
-			end = bytes.length;
+		boolean clipped = false;
+		if (end > length) {
+			end = length;
+			clipped = true;
 		}
 		for (int offset = mutableOffset.offset; offset < end; offset++) {
-			String match = findOffsetMatch(info, offset, mutableOffset, bytes, null, bytes.length);
+			String match = findOffsetMatch(info, offset, mutableOffset, bytes, start, null, length);
 			if (match != null) {
 				return match;
 			}
 		}
+		if (clipped) {
+			// the pattern might have been found in the bytes past the end
+			mutableOffset.endReached = true;
+		}
+		return null;
+	}
+
+	@Override
+	public byte[] getRequiredBytes(Object testValue) {
+		// the pattern can be found anywhere in the range
 		return null;
 	}
+
+	@Override
+	public int getReadLength(Object testValue) {
+		if (testValue == null) {
+			return -1;
+		}
+		TestInfo info = (TestInfo) testValue;
+		if (info.optionalWhiteSpace) {
+			// we have to look at all of the bytes
+			return -1;
+		} else {
+			// the pattern can start anywhere in the range
+			return info.maxOffset + info.pattern.length();
+		}
+	}
+
+	/**
+	 * Return true if the pattern only has text characters and so can't match binary content.
+	 */
+	public boolean isTextPattern(Object testValue) {
+		return TextEncoding.isTextString(((TestInfo) testValue).pattern);
+	}
+
+	/**
+	 * Return the bytes of the pattern if it can be found with a simple search of the bytes or null if it has flags or
+	 * an operator that need the full matching logic.
+	 */
+	public byte[] getSearchBytes(Object testValue) {
+		return ((TestInfo) testValue).getRequiredBytes();
+	}
+
+	/**
+	 * Matches using the offset where the pattern was found in the bytes instead of searching the bytes ourselves. This
+	 * should only be used if {@link #getSearchBytes(Object)} returned non-null.
+	 * 
+	 * @param foundOffset
+	 *            First offset at or after the offset in mutableOffset where the pattern was found or -1 if none.
+	 */
+	public Object isMatch(Object testValue, MutableOffset mutableOffset, int foundOffset) {
+		if (foundOffset < 0) {
+			return null;
+		}
+		TestInfo info = (TestInfo) testValue;
+		// this is the same range that we would search
+		int end = mutableOffset.offset + info.maxOffset + info.pattern.length();
+		if (foundOffset >= end) {
+			return null;
+		}
+		mutableOffset.offset = foundOffset + info.pattern.length();
+		return info.pattern;
+	}
 }
@@ -25,6 +25,15 @@ public class ShortType extends BaseLongType {
 		return value & 0xFFFFL;
 	}
 
+	@Override
+	public long toComparisonValue(boolean unsignedType, long value) {
+		if (unsignedType) {
+			return value;
+		} else {
+			return (short) value;
+		}
+	}
+
 	@Override
 	public int compare(boolean unsignedType, Number extractedValue, Number testValue) {
 		if (unsignedType) {
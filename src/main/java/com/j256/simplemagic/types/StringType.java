@@ -1,6 +1,9 @@
 package com.j256.simplemagic.types;
 
-import java.util.Arrays;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,6 +24,8 @@ public class StringType implements MagicMatcher {
 
 	private final static Pattern TYPE_PATTERN = Pattern.compile("[^/]+(/\\d+)?(/[BbcwWt]*)?");
 	protected static final String EMPTY = "";
+	private static final StringOperator[] OPERATORS = StringOperator.values();
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
 
 	@Override
 	public Object convertTestString(String typeStr, String testStr) {
@@ -80,15 +85,49 @@ public class StringType implements MagicMatcher {
 				maxOffset);
 	}
 
+	@Override
+	public void writeTestValue(DataOutput output, Object testValue) throws IOException {
+		TestInfo info = (TestInfo) testValue;
+		output.writeByte(info.operator.ordinal());
+		output.writeUTF(info.pattern);
+		output.writeBoolean(info.compactWhiteSpace);
+		output.writeBoolean(info.optionalWhiteSpace);
+		output.writeBoolean(info.caseInsensitive);
+		output.writeInt(info.maxOffset);
+	}
+
+	@Override
+	public Object readTestValue(DataInput input) throws IOException {
+		StringOperator operator = OPERATORS[input.readUnsignedByte()];
+		String pattern = input.readUTF();
+		boolean compactWhiteSpace = input.readBoolean();
+		boolean optionalWhiteSpace = input.readBoolean();
+		boolean caseInsensitive = input.readBoolean();
+		int maxOffset = input.readInt();
+		return new TestInfo(operator, pattern, compactWhiteSpace, optionalWhiteSpace, caseInsensitive, maxOffset);
+	}
+
 	@Override
 	public Object extractValueFromBytes(int offset, byte[] bytes, boolean required) {
+		return extractValueFromBytes(offset, bytes, 0, PatternUtils.lengthOf(bytes), required);
+	}
+
+	@Override
+	public Object extractValueFromBytes(int offset, byte[] bytes, int start, int length, boolean required) {
 		return EMPTY;
 	}
 
 	@Override
 	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
 			MutableOffset mutableOffset, byte[] bytes) {
-		return findOffsetMatch((TestInfo) testValue, mutableOffset.offset, mutableOffset, bytes, null, bytes.length);
+		return isMatch(testValue, andValue, unsignedType, extractedValue, mutableOffset, bytes, 0,
+				PatternUtils.lengthOf(bytes));
+	}
+
+	@Override
+	public Object isMatch(Object testValue, Long andValue, boolean unsignedType, Object extractedValue,
+			MutableOffset mutableOffset, byte[] bytes, int start, int length) {
+		return findOffsetMatch((TestInfo) testValue, mutableOffset.offset, mutableOffset, bytes, start, null, length);
 	}
 
 	@Override
@@ -105,11 +144,36 @@ public class StringType implements MagicMatcher {
 		}
 	}
 
+	@Override
+	public byte[] getRequiredBytes(Object testValue) {
+		if (testValue == null) {
+			return null;
+		} else {
+			return ((TestInfo) testValue).getRequiredBytes();
+		}
+	}
+
+	@Override
+	public int getReadLength(Object testValue) {
+		if (testValue == null) {
+			// any string matches and it is read up to its end
+			return -1;
+		}
+		TestInfo info = (TestInfo) testValue;
+		if (info.compactWhiteSpace || info.optionalWhiteSpace) {
+			// the content can have any amount of white-space
+			return -1;
+		} else {
+			return info.pattern.length();
+		}
+	}
+
 	/**
-	 * Find offset match either in an array of bytes or chars, which ever is not null.
+	 * Find offset match either in an array of bytes or chars, which ever is not null. The offsets and maximum position
+	 * are relative to the start index of the content in the bytes.
 	 */
 	protected String findOffsetMatch(TestInfo info, int startOffset, MutableOffset mutableOffset, final byte[] bytes,
-			final char[] chars, final int maxPos) {
+			final int start, final char[] chars, final int maxPos) {
 
 		// verify the starting offset
 		if (startOffset < 0) {
@@ -123,13 +187,14 @@ public class StringType implements MagicMatcher {
 			boolean lastChar = (magicPos == info.pattern.length() - 1);
 			// did we reach the end?
 			if (targetPos >= maxPos) {
+				mutableOffset.endReached = true;
 				return null;
 			}
 			char targetCh;
 			if (bytes == null) {
 				targetCh = chars[targetPos];
 			} else {
-				targetCh = charFromByte(bytes, targetPos);
+				targetCh = charFromByte(bytes, start + targetPos);
 			}
 			targetPos++;
 
@@ -145,12 +210,13 @@ public class StringType implements MagicMatcher {
 			if ((lastMagicCompactWhitespace || info.optionalWhiteSpace) && Character.isWhitespace(targetCh)) {
 				do {
 					if (targetPos >= maxPos) {
+						mutableOffset.endReached = true;
 						break;
 					}
 					if (bytes == null) {
 						targetCh = chars[targetPos];
 					} else {
-						targetCh = charFromByte(bytes, targetPos);
+						targetCh = charFromByte(bytes, start + targetPos);
 					}
 					targetPos++;
 				} while (Character.isWhitespace(targetCh));
@@ -176,17 +242,13 @@ public class StringType implements MagicMatcher {
 			return null;
 		}
 
-		char[] resultChars;
+		mutableOffset.offset = targetPos;
 		if (bytes == null) {
-			resultChars = Arrays.copyOfRange(chars, startOffset, targetPos);
+			return new String(chars, startOffset, targetPos - startOffset);
 		} else {
-			resultChars = new char[targetPos - startOffset];
-			for (int i = 0; i < resultChars.length; i++) {
-				resultChars[i] = charFromByte(bytes, startOffset + i);
-			}
+			// each byte is one character so we don't need to copy them into a char array first
+			return new String(bytes, start + startOffset, targetPos - startOffset, ISO_8859_1);
 		}
-		mutableOffset.offset = targetPos;
-		return new String(resultChars);
 	}
 
 	private char charFromByte(byte[] bytes, int index) {
@@ -227,6 +289,27 @@ public class StringType implements MagicMatcher {
 			}
 		}
 
+		/**
+		 * Get the bytes that must be at the offset for the pattern to match or null if the pattern has an operator or
+		 * flags which allow other bytes to match.
+		 */
+		public byte[] getRequiredBytes() {
+			if (pattern == null || pattern.length() == 0 || operator != StringOperator.EQUALS || compactWhiteSpace
+					|| optionalWhiteSpace || caseInsensitive) {
+				return null;
+			}
+			byte[] bytes = new byte[pattern.length()];
+			for (int i = 0; i < bytes.length; i++) {
+				char ch = pattern.charAt(i);
+				if (ch > 0xFF) {
+					// we only match characters from single bytes
+					return null;
+				}
+				bytes[i] = (byte) ch;
+			}
+			return bytes;
+		}
+
 		@Override
 		public String toString() {
 			return pattern;
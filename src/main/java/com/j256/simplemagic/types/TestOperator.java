@@ -10,24 +10,44 @@ public enum TestOperator {
 		public boolean doTest(boolean unsignedType, Number extractedValue, Number testValue, NumberType numberType) {
 			return (numberType.compare(unsignedType, extractedValue, testValue) == 0);
 		}
+
+		@Override
+		public boolean doTest(boolean unsignedType, long extractedValue, long testValue, BaseLongType numberType) {
+			return (numberType.compare(unsignedType, extractedValue, testValue) == 0);
+		}
 	},
 	NOT_EQUALS('!') {
 		@Override
 		public boolean doTest(boolean unsignedType, Number extractedValue, Number testValue, NumberType numberType) {
 			return (numberType.compare(unsignedType, extractedValue, testValue) != 0);
 		}
+
+		@Override
+		public boolean doTest(boolean unsignedType, long extractedValue, long testValue, BaseLongType numberType) {
+			return (numberType.compare(unsignedType, extractedValue, testValue) != 0);
+		}
 	},
 	GREATER_THAN('>') {
 		@Override
 		public boolean doTest(boolean unsignedType, Number extractedValue, Number testValue, NumberType numberType) {
 			return (numberType.compare(unsignedType, extractedValue, testValue) > 0);
 		}
+
+		@Override
+		public boolean doTest(boolean unsignedType, long extractedValue, long testValue, BaseLongType numberType) {
+			return (numberType.compare(unsignedType, extractedValue, testValue) > 0);
+		}
 	},
 	LESS_THAN('<') {
 		@Override
 		public boolean doTest(boolean unsignedType, Number extractedValue, Number testValue, NumberType numberType) {
 			return (numberType.compare(unsignedType, extractedValue, testValue) < 0);
 		}
+
+		@Override
+		public boolean doTest(boolean unsignedType, long extractedValue, long testValue, BaseLongType numberType) {
+			return (numberType.compare(unsignedType, extractedValue, testValue) < 0);
+		}
 	},
 	AND_ALL_SET('&') {
 		@Override
@@ -36,6 +56,11 @@ public enum TestOperator {
 			long testValueLong = testValue.longValue();
 			return ((extractedValue.longValue() & testValueLong) == testValueLong);
 		}
+
+		@Override
+		public boolean doTest(boolean unsignedType, long extractedValue, long testValue, BaseLongType numberType) {
+			return ((extractedValue & testValue) == testValue);
+		}
 	},
 	AND_ALL_CLEARED('^') {
 		@Override
@@ -43,6 +68,11 @@ public enum TestOperator {
 			// NOTE: we assume that we are dealing with decimal numbers here
 			return ((extractedValue.longValue() & testValue.longValue()) == 0);
 		}
+
+		@Override
+		public boolean doTest(boolean unsignedType, long extractedValue, long testValue, BaseLongType numberType) {
+			return ((extractedValue & testValue) == 0);
+		}
 	},
 	NEGATE('~') {
 		@Override
@@ -52,6 +82,11 @@ public enum TestOperator {
 			long negatedValue = numberType.maskValue(~testValue.longValue());
 			return (extractedValue.longValue() == negatedValue);
 		}
+
+		@Override
+		public boolean doTest(boolean unsignedType, long extractedValue, long testValue, BaseLongType numberType) {
+			return (extractedValue == numberType.maskValue(~testValue));
+		}
 	},
 	// end
 	;
@@ -73,6 +108,12 @@ public enum TestOperator {
 	public abstract boolean doTest(boolean unsignedType, Number extractedValue, Number testValue,
 			NumberType numberType);
 
+	/**
+	 * Perform the test on primitive values so they don't have to be boxed.
+	 */
+	public abstract boolean doTest(boolean unsignedType, long extractedValue, long testValue,
+			BaseLongType numberType);
+
 	/**
 	 * Returns the operator if the first character is an operator. Otherwise this returns null and you should use the
 	 * {@link #DEFAULT_OPERATOR}.
@@ -0,0 +1,78 @@
+package com.j256.simplemagic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class AsynchronousFileContentSourceTest {
+
+	private static final File OUTPUT_TEST_DIR =
+			new File("target/" + AsynchronousFileContentSourceTest.class.getSimpleName());
+
+	@BeforeClass
+	public static void beforeClass() {
+		OUTPUT_TEST_DIR.mkdirs();
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		byte[] bytes = FileChannelContentSourceTest.createBytes(10000);
+		AsynchronousFileContentSource source = openSource("read", bytes);
+		try {
+			assertEquals(bytes.length, source.getLength());
+			source.preload(1000).get();
+			assertEquals(1000, source.getBytesRead());
+			// from the preloaded bytes
+			byte[] buffer = new byte[200];
+			assertEquals(100, source.read(10, buffer, 100, 100));
+			assertArrayEquals(Arrays.copyOfRange(bytes, 10, 110), Arrays.copyOfRange(buffer, 100, 200));
+			assertEquals(1000, source.getBytesRead());
+			// across the end of the preloaded bytes only reads the rest from the file
+			assertEquals(200, source.read(900, buffer, 0, 200));
+			assertArrayEquals(Arrays.copyOfRange(bytes, 900, 1100), buffer);
+			assertEquals(1100, source.getBytesRead());
+			// short read at the end
+			assertEquals(50, source.read(bytes.length - 50, buffer, 0, buffer.length));
+			assertArrayEquals(Arrays.copyOfRange(bytes, bytes.length - 50, bytes.length), Arrays.copyOf(buffer, 50));
+			assertEquals(-1, source.read(bytes.length, buffer, 0, buffer.length));
+			try {
+				source.read(-1, buffer, 0, 1);
+				fail("should have thrown");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test
+	public void testPreloadPastEnd() throws Exception {
+		byte[] bytes = FileChannelContentSourceTest.createBytes(100);
+		AsynchronousFileContentSource source = openSource("preload", bytes);
+		try {
+			source.preload(4096).get();
+			assertEquals(bytes.length, source.getBytesRead());
+			byte[] buffer = new byte[200];
+			assertEquals(bytes.length, source.read(0, buffer, 0, buffer.length));
+			assertArrayEquals(bytes, Arrays.copyOf(buffer, bytes.length));
+			assertEquals(bytes.length, source.getBytesRead());
+		} finally {
+			source.close();
+		}
+	}
+
+	private AsynchronousFileContentSource openSource(String name, byte[] bytes) throws IOException {
+		File file = FileChannelContentSourceTest.writeFile(new File(OUTPUT_TEST_DIR, name), bytes);
+		return new AsynchronousFileContentSource(AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ));
+	}
+}
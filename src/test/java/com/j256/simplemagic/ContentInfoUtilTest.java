@@ -1,5 +1,6 @@
 package com.j256.simplemagic;
 
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.replay;
@@ -7,11 +8,14 @@ import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
@@ -20,12 +24,33 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.easymock.EasyMock;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.j256.simplemagic.ContentInfoUtil.ErrorCallBack;
+import com.j256.simplemagic.ContentInfoUtil.MatchCallBack;
+import com.j256.simplemagic.entries.MagicEntries;
+
 public class ContentInfoUtilTest {
 
 	private ContentInfoUtil contentInfoUtil;
@@ -137,6 +162,294 @@ public class ContentInfoUtilTest {
 		}
 	}
 
+	@Test
+	public void testFindMimeType() throws Exception {
+		ContentInfoUtil util = getContentInfoUtil();
+		for (FileType fileType : fileTypes) {
+			byte[] bytes = readResource(fileType.fileName);
+			ContentInfo info = util.findMatch(bytes);
+			String mimeType = util.findMimeType(bytes);
+			if (info == null) {
+				assertNull(mimeType);
+			} else {
+				assertEquals("bad mime-type of " + fileType.fileName, info.getMimeType(), mimeType);
+			}
+		}
+		assertEquals(ContentInfo.EMPTY_INFO.getMimeType(), util.findMimeType(new byte[0]));
+		assertNull(util.findMimeType(new byte[] { 1, 2, 3 }));
+	}
+
+	@Test
+	public void testFindMatchByteBuffer() throws Exception {
+		ContentInfoUtil util = getContentInfoUtil();
+		for (FileType fileType : fileTypes) {
+			byte[] bytes = readResource(fileType.fileName);
+			String expected = String.valueOf(util.findMatch(bytes));
+			// put some other bytes before and after the content so we can see if they are looked at
+			byte[] padded = new byte[bytes.length + 20];
+			Arrays.fill(padded, (byte) 0xFF);
+			System.arraycopy(bytes, 0, padded, 10, bytes.length);
+
+			ByteBuffer heap = ByteBuffer.wrap(padded, 10, bytes.length);
+			assertEquals(fileType.fileName, expected, String.valueOf(util.findMatch(heap)));
+			assertEquals(10, heap.position());
+			assertEquals(10 + bytes.length, heap.limit());
+
+			ByteBuffer slice = ((ByteBuffer) heap.duplicate().position(10)).slice();
+			assertEquals(fileType.fileName, expected, String.valueOf(util.findMatch(slice)));
+
+			ByteBuffer readOnly = heap.asReadOnlyBuffer();
+			assertEquals(fileType.fileName, expected, String.valueOf(util.findMatch(readOnly)));
+			assertEquals(10, readOnly.position());
+
+			ByteBuffer direct = ByteBuffer.allocateDirect(padded.length);
+			direct.put(padded);
+			direct.position(10);
+			direct.limit(10 + bytes.length);
+			assertEquals(fileType.fileName, expected, String.valueOf(util.findMatch(direct)));
+			assertEquals(10, direct.position());
+		}
+		assertEquals(ContentInfo.EMPTY_INFO, util.findMatch(ByteBuffer.allocate(0)));
+		assertNull(util.findMatch(ByteBuffer.wrap(new byte[] { 'x', 1, 2, 3, 'y' }, 1, 3)));
+	}
+
+	@Test
+	public void testConcurrentUse() throws Exception {
+		final int numThreads = 64;
+		final List<byte[]> contents = new ArrayList<byte[]>();
+		final List<String> expected = new ArrayList<String>();
+		ContentInfoUtil util = getContentInfoUtil();
+		for (FileType fileType : fileTypes) {
+			byte[] bytes = readResource(fileType.fileName);
+			contents.add(bytes);
+			expected.add(String.valueOf(util.findMatch(bytes)));
+		}
+		final ContentInfoUtil sharedUtil = new ContentInfoUtil();
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int i = 0; i < numThreads; i++) {
+				final int threadNum = i;
+				futures.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						startLatch.await();
+						// half of the threads construct their own utility with the shared internal entries
+						ContentInfoUtil threadUtil;
+						if (threadNum % 2 == 0) {
+							threadUtil = sharedUtil;
+						} else {
+							threadUtil = new ContentInfoUtil();
+						}
+						for (int pass = 0; pass < 20; pass++) {
+							for (int fileNum = 0; fileNum < contents.size(); fileNum++) {
+								byte[] bytes = contents.get(fileNum);
+								ContentInfo info;
+								switch ((threadNum + pass + fileNum) % 3) {
+									case 0:
+										info = threadUtil.findMatch(bytes);
+										break;
+									case 1:
+										info = threadUtil.findMatch(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+										break;
+									default:
+										info = threadUtil.findMatch(new ByteArrayInputStream(bytes));
+										break;
+								}
+								if (!expected.get(fileNum).equals(String.valueOf(info))) {
+									return fileTypes[fileNum].fileName + " matched " + info;
+								}
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			startLatch.countDown();
+			for (Future<String> future : futures) {
+				assertNull(future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFindMatches() throws Exception {
+		ContentInfoUtil util = getContentInfoUtil();
+		final Map<Path, String> expected = new HashMap<Path, String>();
+		List<Path> paths = new ArrayList<Path>();
+		// more paths than can be in progress at once
+		for (int i = 0; i < 5; i++) {
+			for (FileType fileType : fileTypes) {
+				File file = new File(OUTPUT_TEST_DIR, i + "-" + new File(fileType.fileName).getName());
+				copyResourceToFile(fileType.fileName, file);
+				expected.put(file.toPath(), String.valueOf(util.findMatch(file)));
+				paths.add(file.toPath());
+			}
+		}
+		final Path missingPath = new File(OUTPUT_TEST_DIR, "missing-file").toPath();
+		paths.add(missingPath);
+		final Map<Path, String> matches = new HashMap<Path, String>();
+		final List<Path> errorPaths = new ArrayList<Path>();
+		BatchStats stats = util.findMatches(paths, 2, 3, new MatchCallBack() {
+			@Override
+			public void match(Path path, ContentInfo info) {
+				assertNull(matches.put(path, String.valueOf(info)));
+			}
+
+			@Override
+			public void error(Path path, IOException e) {
+				assertTrue(e instanceof NoSuchFileException);
+				errorPaths.add(path);
+			}
+		});
+		assertEquals(expected, matches);
+		assertEquals(Arrays.asList(missingPath), errorPaths);
+		assertEquals(paths.size(), stats.getFileCount());
+		assertEquals(1, stats.getErrorCount());
+		assertTrue(stats.getBytesRead() > 0);
+		assertTrue(stats.getElapsedNanos() > 0);
+	}
+
+	@Test
+	public void testFindMatchesCallBackThrows() throws Exception {
+		File file = new File(OUTPUT_TEST_DIR, "x.gif");
+		copyResourceToFile("/files/x.gif", file);
+		final RuntimeException exception = new RuntimeException("problem");
+		try {
+			getContentInfoUtil().findMatches(Arrays.asList(file.toPath(), file.toPath()), new MatchCallBack() {
+				@Override
+				public void match(Path path, ContentInfo info) {
+					throw exception;
+				}
+
+				@Override
+				public void error(Path path, IOException e) {
+					fail("should not have gotten an error: " + e);
+				}
+			});
+			fail("should have thrown");
+		} catch (RuntimeException e) {
+			assertEquals(exception, e);
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testFindMatchesMatchError() throws Exception {
+		File file = new File(OUTPUT_TEST_DIR, "x.gif");
+		copyResourceToFile("/files/x.gif", file);
+		final Error error = new AssertionError("problem");
+		// the error is thrown by a CPU thread and must not leave us waiting for its result
+		ContentInfoUtil util = new ContentInfoUtil() {
+			@Override
+			public ContentInfo findMatch(ContentSource source) {
+				throw error;
+			}
+		};
+		try {
+			util.findMatches(Arrays.asList(file.toPath()), 1, 1, new MatchCallBack() {
+				@Override
+				public void match(Path path, ContentInfo info) {
+					fail("should not have matched");
+				}
+
+				@Override
+				public void error(Path path, IOException e) {
+					fail("should not have gotten an error: " + e);
+				}
+			});
+			fail("should have thrown");
+		} catch (AssertionError e) {
+			assertSame(error, e);
+		}
+	}
+
+	@Test
+	public void testFileResultCache() throws Exception {
+		ContentInfoUtil util = getContentInfoUtil();
+		FileResultCache cache = new FileResultCache(100);
+		util.setFileResultCache(cache);
+		File file = new File(OUTPUT_TEST_DIR, "cached.gif");
+		copyResourceToFile("/files/x.gif", file);
+		ContentInfo info = util.findMatch(file);
+		assertEquals(ContentType.GIF, info.getContentType());
+		assertEquals(0, cache.getHitCount());
+		assertSame(info, util.findMatch(file));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		// replaced with a different file
+		copyResourceToFile("/files/x.png", file);
+		assertTrue(file.setLastModified(file.lastModified() + 10000));
+		assertEquals(ContentType.PNG, util.findMatch(file).getContentType());
+		assertEquals(2, cache.getMissCount());
+
+		// the batch uses the same cache
+		final List<ContentInfo> infos = new ArrayList<ContentInfo>();
+		BatchStats stats = util.findMatches(Arrays.asList(file.toPath(), file.toPath()), 1, 1, new MatchCallBack() {
+			@Override
+			public void match(Path path, ContentInfo info) {
+				infos.add(info);
+			}
+
+			@Override
+			public void error(Path path, IOException e) {
+				fail("unexpected error: " + e);
+			}
+		});
+		assertEquals(2, infos.size());
+		assertEquals(ContentType.PNG, infos.get(0).getContentType());
+		assertEquals(ContentType.PNG, infos.get(1).getContentType());
+		assertEquals(0, stats.getBytesRead());
+		assertEquals(3, cache.getHitCount());
+
+		// the attributes of the file are read before the cache is checked
+		try {
+			util.findMatch(new File(OUTPUT_TEST_DIR, "not-there.gif"));
+			fail("should have thrown");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFindMatchAsync() throws Exception {
+		ContentInfoUtil util = getContentInfoUtil();
+		final AtomicInteger executeCount = new AtomicInteger();
+		util.setAsyncExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				executeCount.incrementAndGet();
+				new Thread(command).start();
+			}
+		});
+		List<File> files = new ArrayList<File>();
+		List<CompletableFuture<ContentInfo>> futures = new ArrayList<CompletableFuture<ContentInfo>>();
+		for (FileType fileType : fileTypes) {
+			File file = new File(OUTPUT_TEST_DIR, "async-" + new File(fileType.fileName).getName());
+			copyResourceToFile(fileType.fileName, file);
+			files.add(file);
+			futures.add(util.findMatchAsync(file.toPath()));
+		}
+		for (int i = 0; i < files.size(); i++) {
+			assertEquals(String.valueOf(util.findMatch(files.get(i))), String.valueOf(futures.get(i).get()));
+		}
+		assertEquals(files.size(), executeCount.get());
+
+		File emptyFile = new File(OUTPUT_TEST_DIR, "async-empty");
+		new FileOutputStream(emptyFile).close();
+		assertEquals(ContentInfo.EMPTY_INFO, util.findMatchAsync(emptyFile.toPath()).get());
+
+		try {
+			util.findMatchAsync(new File(OUTPUT_TEST_DIR, "missing-file").toPath()).get();
+			fail("should have thrown");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NoSuchFileException);
+		}
+	}
+
 	@Test
 	public void testSpecific() throws Exception {
 		ContentInfoUtil util = getContentInfoUtil();
@@ -239,6 +552,225 @@ public class ContentInfoUtilTest {
 		assertEquals(fileType.expectedType, util.findMatch(outputFile.getPath()).getContentType());
 	}
 
+	@Test
+	public void testFindMatchPartOfArray() throws IOException {
+		ContentInfoUtil util = getContentInfoUtil();
+		byte[] bytes = readResource(fileTypes[0].fileName);
+		byte[] buffer = new byte[bytes.length + 100];
+		Arrays.fill(buffer, (byte) 'x');
+		System.arraycopy(bytes, 0, buffer, 50, bytes.length);
+		assertEquals(String.valueOf(util.findMatch(bytes)),
+				String.valueOf(util.findMatch(buffer, 50, bytes.length)));
+		assertEquals(ContentInfo.EMPTY_INFO, util.findMatch(buffer, 10, 0));
+		assertNull(util.findMatch(new byte[] { 'x', 1, 2, 3, 'y' }, 1, 3));
+		try {
+			util.findMatch(buffer, 51, bytes.length + 50);
+			fail("should have thrown");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			util.findMatch(buffer, -1, 10);
+			fail("should have thrown");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFileReadBufferReused() throws IOException {
+		ContentInfoUtil util = getContentInfoUtil();
+		// the second file is shorter so the end of the read buffer still has the bytes of the first
+		File largeFile = new File(OUTPUT_TEST_DIR, "large.pdf");
+		copyResourceToFile("/files/x.pdf", largeFile);
+		File smallFile = new File(OUTPUT_TEST_DIR, "small");
+		byte[] smallBytes = new byte[] { 'h', 'i', '\n' };
+		FileOutputStream output = new FileOutputStream(smallFile);
+		try {
+			output.write(smallBytes);
+		} finally {
+			output.close();
+		}
+		String expected = String.valueOf(util.findMatch(smallBytes));
+		assertEquals("application/pdf", util.findMatch(largeFile).getMimeType());
+		assertEquals(expected, String.valueOf(util.findMatch(smallFile)));
+		InputStream input = new FileInputStream(largeFile);
+		try {
+			assertEquals("application/pdf", util.findMatch(input).getMimeType());
+		} finally {
+			input.close();
+		}
+		assertEquals(expected, String.valueOf(util.findMatch(new ByteArrayInputStream(smallBytes))));
+	}
+
+	@Test
+	public void testFileFarOffset() throws Exception {
+		ContentInfoUtil util = getContentInfoUtil();
+		// iso9660 images have their magic at 32769 which is far past the bytes that we read from the start
+		byte[] bytes = new byte[40000];
+		System.arraycopy("CD001".getBytes(), 0, bytes, 32769, 5);
+		File isoFile = new File(OUTPUT_TEST_DIR, "far.iso");
+		FileOutputStream output = new FileOutputStream(isoFile);
+		try {
+			output.write(bytes);
+		} finally {
+			output.close();
+		}
+		assertNull(util.findMatch(Arrays.copyOf(bytes, ContentInfoUtil.DEFAULT_READ_SIZE)));
+		assertEquals("application/x-iso9660-image", util.findMatch(isoFile).getMimeType());
+
+		FileChannelContentSource source = new FileChannelContentSource(isoFile);
+		try {
+			assertEquals("application/x-iso9660-image", util.findMatch(source).getMimeType());
+			// only the pages that were tested were read and not the whole file
+			assertTrue(source.getPageReadCount() < bytes.length / FileChannelContentSource.PAGE_SIZE);
+		} finally {
+			source.close();
+		}
+		assertEquals("application/x-iso9660-image", util.findMatchAsync(isoFile.toPath()).get().getMimeType());
+	}
+
+	@Test
+	public void testContentInfoCache() throws Exception {
+		ContentInfoUtil util = getContentInfoUtil();
+		StubContentInfoCache cache = new StubContentInfoCache();
+		util.setContentInfoCache(cache);
+		for (FileType fileType : fileTypes) {
+			byte[] bytes = readResource(fileType.fileName);
+			ContentInfo info = util.findMatch(bytes);
+			if (fileType.expectedName == null) {
+				assertNull(info);
+			} else {
+				assertEquals(String.valueOf(info), String.valueOf(util.findMatch(bytes)));
+			}
+		}
+		assertTrue(cache.hitCount > 0);
+		assertEquals(cache.infos.size(), cache.putCount);
+
+		// the same bytes in a copy are found by their fingerprint
+		byte[] bytes = readResource("/files/x.png");
+		int hitCount = cache.hitCount;
+		assertEquals(ContentType.PNG, util.findMatch(Arrays.copyOf(bytes, bytes.length)).getContentType());
+		assertEquals(hitCount + 1, cache.hitCount);
+
+		// more bytes than the fingerprint size are not cached
+		util.setFingerprintSize(bytes.length - 1);
+		int getCount = cache.getCount;
+		assertEquals(ContentType.PNG, util.findMatch(bytes).getContentType());
+		assertEquals(getCount, cache.getCount);
+	}
+
+	@Test
+	public void testContentInfoCacheBypass() throws Exception {
+		ContentInfoUtil util = getContentInfoUtil();
+		StubContentInfoCache cache = new StubContentInfoCache();
+		util.setContentInfoCache(cache);
+		// the iso9660 magic is past the bytes that are fingerprinted so the result can't be cached
+		byte[] bytes = new byte[40000];
+		System.arraycopy("CD001".getBytes(), 0, bytes, 32769, 5);
+		File isoFile = new File(OUTPUT_TEST_DIR, "cached.iso");
+		FileOutputStream output = new FileOutputStream(isoFile);
+		try {
+			output.write(bytes);
+		} finally {
+			output.close();
+		}
+		assertEquals("application/x-iso9660-image", util.findMatch(isoFile).getMimeType());
+		assertEquals(0, cache.putCount);
+		// same starting bytes but not an image
+		File otherFile = new File(OUTPUT_TEST_DIR, "cached-not.iso");
+		output = new FileOutputStream(otherFile);
+		try {
+			output.write(new byte[bytes.length]);
+		} finally {
+			output.close();
+		}
+		ContentInfo info = util.findMatch(otherFile);
+		assertTrue(info == null || !"application/x-iso9660-image".equals(info.getMimeType()));
+		assertEquals("application/x-iso9660-image", util.findMatch(isoFile).getMimeType());
+	}
+
+	@Test
+	public void testContentSourceError() {
+		final IOException exception = new IOException("problem");
+		ContentSource source = new ContentSource() {
+			@Override
+			public long getLength() {
+				return 1000000;
+			}
+
+			@Override
+			public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+				if (position == 0) {
+					Arrays.fill(buffer, offset, offset + length, (byte) 0);
+					return length;
+				} else {
+					throw exception;
+				}
+			}
+		};
+		try {
+			getContentInfoUtil().findMatch(source);
+			fail("should have thrown");
+		} catch (IOException e) {
+			assertEquals(exception, e);
+		}
+	}
+
+	@Test
+	public void testRulesReadSize() throws IOException {
+		ContentInfoUtil util = new ContentInfoUtil(new StringReader("0 string PK\\003\\004 Zip archive\n"
+				+ ">4 leshort x \\b, version %d\n" + "0 belong 0xcafebabe Java class\n" + "20 search/100 hello hi\n"));
+		assertEquals(125, util.getRulesReadSize());
+		util.setFileReadSize(100);
+		assertEquals(100, util.getRulesReadSize());
+		// a regex matches lines so we don't know how far it looks
+		util = new ContentInfoUtil(new StringReader("0 string PK Zip\n" + "0 regex ^hello hi\n"));
+		assertEquals(ContentInfoUtil.DEFAULT_READ_SIZE, util.getRulesReadSize());
+		// the internal entries have regexes
+		assertEquals(ContentInfoUtil.DEFAULT_READ_SIZE, getContentInfoUtil().getRulesReadSize());
+	}
+
+	@Test
+	public void testTieredReadSize() throws IOException {
+		ContentInfoUtil util = new ContentInfoUtil();
+		util.setReadSizePolicy(ReadSizePolicy.TIERED);
+		// binary content only needs the first bytes
+		byte[] bytes = readResource("/files/x.png");
+		HeadCountingSource source = new HeadCountingSource(bytes);
+		assertEquals(String.valueOf(util.findMatch(bytes)), String.valueOf(util.findMatch(source)));
+		assertEquals(ContentInfoUtil.DEFAULT_FIRST_READ_SIZE, source.maxHeadRead);
+		// the text classification looked at all of the bytes so they are matched again with more of them
+		bytes = readResource("/files/x.svg");
+		source = new HeadCountingSource(bytes);
+		ContentInfo info = util.findMatch(source);
+		assertEquals(ContentType.SVG, info.getContentType());
+		assertEquals(String.valueOf(util.findMatch(Arrays.copyOf(bytes, ContentInfoUtil.DEFAULT_READ_SIZE))),
+				String.valueOf(info));
+		// the svg is shorter than the read size
+		assertEquals(bytes.length, source.maxHeadRead);
+	}
+
+	@Test
+	public void testSourceWindowPastBytes() throws IOException {
+		ContentInfoUtil util = new ContentInfoUtil(new StringReader("0 string/B \\001hello\\ there Hello\n"));
+		util.setReadSizePolicy(ReadSizePolicy.FIXED);
+		util.setFileReadSize(512);
+		byte[] bytes = new byte[20000];
+		Arrays.fill(bytes, (byte) ' ');
+		System.arraycopy("\001hello there".getBytes(), 0, bytes, 0, 12);
+		// the entry matched in the bytes that were read so the source isn't read again
+		HeadCountingSource source = new HeadCountingSource(bytes);
+		assertEquals("Hello", util.findMatch(source).getMessage());
+		assertEquals(1, source.readCount);
+		// the whitespace runs off the end of the bytes so the entry is tested again with the bytes from the source
+		Arrays.fill(bytes, 6, 12, (byte) ' ');
+		System.arraycopy("there".getBytes(), 0, bytes, 1000, 5);
+		source = new HeadCountingSource(bytes);
+		assertEquals("Hello", util.findMatch(source).getMessage());
+		assertEquals(2, source.readCount);
+	}
+
 	@Test
 	public void testEmptyFile() throws IOException {
 		File outputFile = new File(OUTPUT_TEST_DIR, "empty");
@@ -250,7 +782,7 @@ public class ContentInfoUtilTest {
 	@Test
 	public void testErrorFile() throws IOException {
 		InputStream input = EasyMock.createMock(InputStream.class);
-		expect(input.read(isA(byte[].class))).andReturn(-1);
+		expect(input.read(isA(byte[].class), eq(0), eq(ContentInfoUtil.DEFAULT_READ_SIZE))).andReturn(-1);
 		ContentInfoUtil util = getContentInfoUtil();
 		replay(input);
 		assertNull(util.findMatch(input));
@@ -314,6 +846,55 @@ public class ContentInfoUtilTest {
 		assertEquals(ContentType.EMPTY, util.findMatch(file.getPath()).getContentType());
 	}
 
+	@Test
+	public void testCompiledEntries() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		getContentInfoUtil().writeCompiledEntries(outputStream);
+		ContentInfoUtil util =
+				new ContentInfoUtil(new ByteArrayInputStream(outputStream.toByteArray()), null, null);
+		for (FileType fileType : fileTypes) {
+			checkFile(util, fileType);
+		}
+	}
+
+	@Test
+	public void testCompiledEntriesFallback() throws Exception {
+		Reader reader = new StringReader("0   string   BZh   bzip2 compressed data\n" //
+				+ "!:mime	application/x-bzip2\n");
+		ContentInfoUtil util =
+				new ContentInfoUtil(new ByteArrayInputStream("not compiled".getBytes()), reader, null);
+		checkFile(util, new FileType("/files/x.bz2", ContentType.BZIP2, "bzip2", "application/x-bzip2",
+				"bzip2 compressed data", false));
+	}
+
+	@Test(expected = IOException.class)
+	public void testCompiledEntriesNoFallback() throws Exception {
+		new ContentInfoUtil(new ByteArrayInputStream(new byte[0]), null, null);
+	}
+
+	@Test
+	public void testMagicDirectory() throws Exception {
+		File dir = new File(OUTPUT_TEST_DIR, "magicdir");
+		dir.mkdirs();
+		writeFile(new File(dir, "first"), "0 string abc first\n>3 string d \\b, with d\n!:mime text/x-first\n");
+		writeFile(new File(dir, "second"), "# comment\n0 string xyz second\n>>1 byte x bad\n");
+		final List<String> errors = new ArrayList<String>();
+		ContentInfoUtil util = new ContentInfoUtil(dir, new ErrorCallBack() {
+			@Override
+			public void error(String line, String details, Exception e) {
+				errors.add(line);
+			}
+		});
+		ContentInfo info = util.findMatch("abcd".getBytes());
+		assertNotNull(info);
+		assertEquals("first, with d", info.getMessage());
+		assertEquals("text/x-first", info.getMimeType());
+		info = util.findMatch("xyz".getBytes());
+		assertNotNull(info);
+		assertEquals("second", info.getMessage());
+		assertEquals(Arrays.asList(">>1 byte x bad"), errors);
+	}
+
 	@Test
 	public void testFindExtension() {
 		assertNull(ContentInfoUtil.findExtensionMatch(""));
@@ -354,6 +935,41 @@ public class ContentInfoUtilTest {
 		util.findMatch(x);
 	}
 
+	@Test
+	public void testInternalEntriesCorruptCompiled() throws Exception {
+		File compiledFile = File.createTempFile(getClass().getSimpleName(), ".db");
+		// written next to the test resources so it is in the class-path
+		File corruptFile = new File(new File(getClass().getResource("/magic").toURI()).getParentFile(), "corrupt.db");
+		try {
+			copyResourceToFile("/magic.db", compiledFile);
+			byte[] compiled = Files.readAllBytes(compiledFile.toPath());
+			byte[] pdf = "%PDF-1.4\n".getBytes();
+
+			// truncated so the read throws an IOException
+			Files.write(corruptFile.toPath(), Arrays.copyOf(compiled, compiled.length / 2));
+			List<String[]> errors = new ArrayList<String[]>();
+			MagicEntries entries = ContentInfoUtil.readInternalEntries("/corrupt.db", "/magic.gz", errors);
+			assertEquals("application/pdf", entries.findMatch(pdf).getMimeType());
+
+			// a negative number of strings after the header so the read throws a RuntimeException
+			byte[] bytes = Arrays.copyOf(compiled, 16);
+			Arrays.fill(bytes, 12, 16, (byte) 0xFF);
+			Files.write(corruptFile.toPath(), bytes);
+			entries = ContentInfoUtil.readInternalEntries("/corrupt.db", "/magic.gz", errors);
+			assertEquals("application/pdf", entries.findMatch(pdf).getMimeType());
+
+			try {
+				ContentInfoUtil.readInternalEntries("/corrupt.db", "/not-found.gz", errors);
+				fail("should have thrown");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		} finally {
+			compiledFile.delete();
+			corruptFile.delete();
+		}
+	}
+
 	private void copyResourceToFile(String resource, File outputFile) throws IOException {
 		InputStream input = null;
 		OutputStream output = null;
@@ -403,6 +1019,18 @@ public class ContentInfoUtilTest {
 		}
 	}
 
+	private byte[] readResource(String resource) throws IOException {
+		InputStream stream = getClass().getResourceAsStream(resource);
+		assertNotNull("Could not file resource: " + resource, stream);
+		try {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			copyStream(stream, outputStream);
+			return outputStream.toByteArray();
+		} finally {
+			stream.close();
+		}
+	}
+
 	private ContentInfo contentInfoFromStreamWrapper(ContentInfoUtil util, String resource) throws IOException {
 		InputStream resourceStream = getClass().getResourceAsStream(resource);
 		ByteArrayOutputStream outputStream;
@@ -443,6 +1071,15 @@ public class ContentInfoUtilTest {
 		}
 	}
 
+	private void writeFile(File file, String contents) throws IOException {
+		OutputStream output = new FileOutputStream(file);
+		try {
+			output.write(contents.getBytes());
+		} finally {
+			output.close();
+		}
+	}
+
 	private void copyStream(InputStream input, OutputStream output) throws IOException {
 		byte[] buffer = new byte[1024];
 		while (true) {
@@ -454,6 +1091,67 @@ public class ContentInfoUtilTest {
 		}
 	}
 
+	/**
+	 * Cache which stands in for an external store and counts how it is used.
+	 */
+	private static class StubContentInfoCache implements ContentInfoCache {
+
+		final Map<String, ContentInfo> infos = new HashMap<String, ContentInfo>();
+		int getCount;
+		int hitCount;
+		int putCount;
+
+		@Override
+		public synchronized ContentInfo get(ContentFingerprint fingerprint) {
+			getCount++;
+			// the string form is what an external store would use as its key
+			ContentInfo info = infos.get(fingerprint.toString());
+			if (info != null) {
+				hitCount++;
+			}
+			return info;
+		}
+
+		@Override
+		public synchronized void put(ContentFingerprint fingerprint, ContentInfo info) {
+			putCount++;
+			infos.put(fingerprint.toString(), info);
+		}
+	}
+
+	/**
+	 * Content source which records the most bytes that were read from the start of the content and the number of reads.
+	 */
+	private static class HeadCountingSource implements ContentSource {
+
+		private final byte[] bytes;
+		int maxHeadRead;
+		int readCount;
+
+		public HeadCountingSource(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public long getLength() {
+			return bytes.length;
+		}
+
+		@Override
+		public int read(long position, byte[] buffer, int offset, int length) {
+			readCount++;
+			if (position >= bytes.length) {
+				return -1;
+			}
+			int numRead = Math.min(length, bytes.length - (int) position);
+			System.arraycopy(bytes, (int) position, buffer, offset, numRead);
+			if (position == 0) {
+				maxHeadRead = Math.max(maxHeadRead, numRead);
+			}
+			return numRead;
+		}
+	}
+
 	private static class FileType {
 		final String fileName;
 		final ContentType expectedType;
@@ -0,0 +1,136 @@
+package com.j256.simplemagic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class FileChannelContentSourceTest {
+
+	private static final int PAGE_SIZE = FileChannelContentSource.PAGE_SIZE;
+	private static final File OUTPUT_TEST_DIR =
+			new File("target/" + FileChannelContentSourceTest.class.getSimpleName());
+
+	@BeforeClass
+	public static void beforeClass() {
+		OUTPUT_TEST_DIR.mkdirs();
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		byte[] bytes = createBytes(3 * PAGE_SIZE + 100);
+		File file = writeFile(new File(OUTPUT_TEST_DIR, "read"), bytes);
+		FileChannelContentSource source = new FileChannelContentSource(file);
+		try {
+			assertEquals(bytes.length, source.getLength());
+			// read across the page boundary
+			byte[] buffer = new byte[200];
+			assertEquals(100, source.read(PAGE_SIZE - 50, buffer, 100, 100));
+			assertArrayEquals(Arrays.copyOfRange(bytes, PAGE_SIZE - 50, PAGE_SIZE + 50),
+					Arrays.copyOfRange(buffer, 100, 200));
+			assertEquals(2, source.getPageReadCount());
+			// same pages come from the cache
+			assertEquals(10, source.read(PAGE_SIZE + 10, buffer, 0, 10));
+			assertEquals(2, source.getPageReadCount());
+			// short read at the end
+			assertEquals(60, source.read(bytes.length - 60, buffer, 0, buffer.length));
+			assertArrayEquals(Arrays.copyOfRange(bytes, bytes.length - 60, bytes.length),
+					Arrays.copyOf(buffer, 60));
+			assertEquals(3, source.getPageReadCount());
+			assertEquals(-1, source.read(bytes.length, buffer, 0, buffer.length));
+			assertEquals(-1, source.read(bytes.length + 1000, buffer, 0, buffer.length));
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		byte[] bytes = createBytes(4 * PAGE_SIZE);
+		File file = writeFile(new File(OUTPUT_TEST_DIR, "eviction"), bytes);
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		FileChannelContentSource source = new FileChannelContentSource(randomAccessFile.getChannel(), 2);
+		try {
+			byte[] buffer = new byte[1];
+			source.read(0, buffer, 0, 1);
+			source.read(PAGE_SIZE, buffer, 0, 1);
+			source.read(0, buffer, 0, 1);
+			assertEquals(2, source.getPageReadCount());
+			// the second page is the least recently used so it is evicted
+			source.read(2 * PAGE_SIZE, buffer, 0, 1);
+			source.read(0, buffer, 0, 1);
+			assertEquals(3, source.getPageReadCount());
+			source.read(PAGE_SIZE + 1, buffer, 0, 1);
+			assertEquals(bytes[PAGE_SIZE + 1], buffer[0]);
+			assertEquals(4, source.getPageReadCount());
+			// the reused page has the right bytes
+			source.read(3 * PAGE_SIZE + 7, buffer, 0, 1);
+			assertEquals(bytes[3 * PAGE_SIZE + 7], buffer[0]);
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test
+	public void testFileShrunk() throws IOException {
+		byte[] bytes = createBytes(3 * PAGE_SIZE);
+		File file = writeFile(new File(OUTPUT_TEST_DIR, "shrunk"), bytes);
+		FileChannelContentSource source = new FileChannelContentSource(file);
+		try {
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+			try {
+				randomAccessFile.setLength(PAGE_SIZE + 10);
+			} finally {
+				randomAccessFile.close();
+			}
+			// we only get the bytes that are still in the file
+			byte[] buffer = new byte[100];
+			assertEquals(10, source.read(PAGE_SIZE, buffer, 0, buffer.length));
+			assertArrayEquals(Arrays.copyOfRange(bytes, PAGE_SIZE, PAGE_SIZE + 10), Arrays.copyOf(buffer, 10));
+			assertEquals(PAGE_SIZE + 10, source.getLength());
+			assertEquals(-1, source.read(2 * PAGE_SIZE, buffer, 0, buffer.length));
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativePosition() throws IOException {
+		FileChannelContentSource source =
+				new FileChannelContentSource(writeFile(new File(OUTPUT_TEST_DIR, "negative"), createBytes(10)));
+		try {
+			source.read(-1, new byte[1], 0, 1);
+		} finally {
+			source.close();
+		}
+	}
+
+	/**
+	 * Return bytes that are different in each page so reading the wrong page is noticed. Also used by the other
+	 * source tests.
+	 */
+	static byte[] createBytes(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (i * 31 + i / PAGE_SIZE);
+		}
+		return bytes;
+	}
+
+	static File writeFile(File file, byte[] bytes) throws IOException {
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(bytes);
+		} finally {
+			output.close();
+		}
+		return file;
+	}
+}
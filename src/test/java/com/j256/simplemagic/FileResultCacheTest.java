@@ -0,0 +1,80 @@
+package com.j256.simplemagic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.j256.simplemagic.FileResultCache.Key;
+
+public class FileResultCacheTest {
+
+	private static final File OUTPUT_TEST_DIR = new File("target/" + FileResultCacheTest.class.getSimpleName());
+
+	private static int fileCount;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OUTPUT_TEST_DIR.mkdirs();
+	}
+
+	@Test
+	public void testGetPut() throws Exception {
+		FileResultCache cache = new FileResultCache(10);
+		Path path = createFile("hello");
+		Key key = createKey(path);
+		assertNull(cache.get(key));
+		ContentInfo info = new ContentInfo(ContentType.TEXT);
+		cache.put(key, info);
+		assertSame(info, cache.get(createKey(path)).info);
+		// no match is cached as well
+		Key otherKey = createKey(createFile("there"));
+		cache.put(otherKey, null);
+		assertNotNull(cache.get(otherKey));
+		assertNull(cache.get(otherKey).info);
+		// the same path by another name is the same file
+		Path sameFile = path.getParent().resolve(".").resolve(path.getFileName());
+		assertSame(info, cache.get(createKey(sameFile)).info);
+		assertEquals(4, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testFileChanged() throws Exception {
+		FileResultCache cache = new FileResultCache(10);
+		Path path = createFile("hello");
+		cache.put(createKey(path), ContentInfo.EMPTY_INFO);
+		// same size but modified later
+		Files.write(path, "jello".getBytes());
+		Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 10000));
+		assertNull(cache.get(createKey(path)));
+		// a different size
+		Path otherPath = createFile("hello");
+		FileTime lastModified = Files.getLastModifiedTime(otherPath);
+		cache.put(createKey(otherPath), ContentInfo.EMPTY_INFO);
+		Files.write(otherPath, "hello there".getBytes());
+		Files.setLastModifiedTime(otherPath, lastModified);
+		assertNull(cache.get(createKey(otherPath)));
+	}
+
+	private Path createFile(String contents) throws IOException {
+		Path path = new File(OUTPUT_TEST_DIR, "file" + fileCount++).toPath();
+		Files.write(path, contents.getBytes());
+		return path;
+	}
+
+	private Key createKey(Path path) throws IOException {
+		return new Key(path, Files.readAttributes(path, BasicFileAttributes.class));
+	}
+}
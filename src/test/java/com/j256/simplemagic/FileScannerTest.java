@@ -0,0 +1,143 @@
+package com.j256.simplemagic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class FileScannerTest {
+
+	private static final File OUTPUT_TEST_DIR = new File("target/" + FileScannerTest.class.getSimpleName());
+
+	@BeforeClass
+	public static void beforeClass() throws IOException {
+		File subDir = new File(OUTPUT_TEST_DIR, "sub");
+		subDir.mkdirs();
+		copyResource("/files/x.gif", new File(OUTPUT_TEST_DIR, "x.gif"));
+		copyResource("/files/x.png", new File(subDir, "x.png"));
+		Files.write(new File(subDir, "empty").toPath(), new byte[0]);
+	}
+
+	@Test
+	public void testText() throws Exception {
+		StringWriter writer = new StringWriter();
+		assertEquals(0, FileScanner.scan(new String[] { OUTPUT_TEST_DIR.getPath() }, new PrintWriter(writer),
+				nullPrintStream()));
+		List<String> lines = sortedLines(writer);
+		assertEquals(Arrays.asList(path("sub", "empty") + ": other",
+				path("sub", "x.png") + ": PNG image, 205 x 189, 8-bit/color RGB, non-interlaced",
+				path("x.gif") + ": GIF image data, version 89a, 32 x 32"), lines);
+	}
+
+	@Test
+	public void testTsv() throws Exception {
+		StringWriter writer = new StringWriter();
+		File gif = new File(OUTPUT_TEST_DIR, "x.gif");
+		File missing = new File(OUTPUT_TEST_DIR, "missing");
+		assertEquals(1, FileScanner.scan(new String[] { "-format", "tsv", "-io", "1", "-cpu", "1", gif.getPath(),
+				missing.getPath() }, new PrintWriter(writer), nullPrintStream()));
+		String[] lines = writer.toString().split(System.lineSeparator());
+		assertEquals(3, lines.length);
+		assertEquals("path\tname\tmime-type\tmessage\terror", lines[0]);
+		List<String> results = new ArrayList<String>(Arrays.asList(lines[1], lines[2]));
+		Collections.sort(results);
+		assertTrue(results.get(0).startsWith(missing.getPath() + "\t\t\t\tjava.nio.file.NoSuchFileException"));
+		assertEquals(gif.getPath() + "\tgif\timage/gif\tGIF image data, version 89a, 32 x 32\t", results.get(1));
+	}
+
+	@Test
+	public void testJson() throws Exception {
+		StringWriter writer = new StringWriter();
+		File empty = new File(new File(OUTPUT_TEST_DIR, "sub"), "empty");
+		File png = new File(new File(OUTPUT_TEST_DIR, "sub"), "x.png");
+		assertEquals(0, FileScanner.scan(new String[] { "-format", "json", empty.getPath(), png.getPath() },
+				new PrintWriter(writer), nullPrintStream()));
+		assertEquals(Arrays.asList("{\"path\":" + json(empty.getPath())
+				+ ",\"name\":\"other\",\"mimeType\":\"application/octet-stream\",\"message\":null}",
+				"{\"path\":" + json(png.getPath()) + ",\"name\":\"png\",\"mimeType\":\"image/png\","
+						+ "\"message\":\"PNG image, 205 x 189, 8-bit/color RGB, non-interlaced\"}"),
+				sortedLines(writer));
+	}
+
+	@Test
+	public void testStats() throws Exception {
+		ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+		FileScanner.scan(new String[] { OUTPUT_TEST_DIR.getPath() }, new PrintWriter(new StringWriter()),
+				new PrintStream(errBytes, true));
+		String err = errBytes.toString();
+		assertTrue(err, err.startsWith("3 files (0 errors) in "));
+		assertTrue(err, err.contains(" files/sec, "));
+	}
+
+	@Test
+	public void testBadArguments() throws Exception {
+		assertEquals(2, FileScanner.scan(new String[0], new PrintWriter(new StringWriter()), nullPrintStream()));
+		assertEquals(2, FileScanner.scan(new String[] { "-format", "xml", "." }, new PrintWriter(new StringWriter()),
+				nullPrintStream()));
+		assertEquals(2, FileScanner.scan(new String[] { "-io", "0", "." }, new PrintWriter(new StringWriter()),
+				nullPrintStream()));
+		assertEquals(2,
+				FileScanner.scan(new String[] { "-cpu" }, new PrintWriter(new StringWriter()), nullPrintStream()));
+	}
+
+	@Test
+	public void testEscaping() {
+		StringBuilder sb = new StringBuilder();
+		FileScanner.appendJson(sb, "a\"b\\c\nd\u0001");
+		assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", sb.toString());
+		sb.setLength(0);
+		FileScanner.appendTsv(sb, "a\tb\\c\n");
+		assertEquals("a\\tb\\\\c\\n", sb.toString());
+	}
+
+	private List<String> sortedLines(StringWriter writer) {
+		List<String> lines = new ArrayList<String>(Arrays.asList(writer.toString().split(System.lineSeparator())));
+		Collections.sort(lines);
+		return lines;
+	}
+
+	private String path(String... names) {
+		Path path = OUTPUT_TEST_DIR.toPath();
+		for (String name : names) {
+			path = path.resolve(name);
+		}
+		return path.toString();
+	}
+
+	private String json(String str) {
+		StringBuilder sb = new StringBuilder();
+		FileScanner.appendJson(sb, str);
+		return sb.toString();
+	}
+
+	private PrintStream nullPrintStream() {
+		return new PrintStream(new ByteArrayOutputStream());
+	}
+
+	private static void copyResource(String resource, File outputFile) throws IOException {
+		InputStream input = FileScannerTest.class.getResourceAsStream(resource);
+		assertNotNull(resource + " not found", input);
+		try {
+			Files.copy(input, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.j256.simplemagic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LruCacheTest {
+
+	@Test
+	public void testGetPut() {
+		LruCache<String, String> cache = new LruCache<String, String>(10);
+		assertNull(cache.get("hello"));
+		cache.put("hello", "there");
+		assertEquals("there", cache.get("hello"));
+		cache.put("hello", "world");
+		assertEquals("world", cache.get("hello"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+		assertEquals(10, cache.getMaxSize());
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get("hello"));
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		// a batch of 1 is evicted past the max-size
+		LruCache<String, String> cache = new LruCache<String, String>(4);
+		for (int i = 0; i < 4; i++) {
+			cache.put("key" + i, "value" + i);
+			Thread.sleep(2);
+		}
+		// the first is now the most recently used
+		assertEquals("value0", cache.get("key0"));
+		Thread.sleep(2);
+		cache.put("key4", "value4");
+		assertEquals(3, cache.size());
+		assertEquals(2, cache.getEvictionCount());
+		assertEquals("value0", cache.get("key0"));
+		assertNull(cache.get("key1"));
+		assertNull(cache.get("key2"));
+		assertEquals("value3", cache.get("key3"));
+		assertEquals("value4", cache.get("key4"));
+	}
+
+	@Test
+	public void testEvictionBatch() {
+		LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(32);
+		for (int i = 0; i < 32; i++) {
+			cache.put(i, i);
+		}
+		assertEquals(32, cache.size());
+		// a sixteenth of the max-size is evicted so the next puts don't have to
+		cache.put(32, 32);
+		assertEquals(30, cache.size());
+		assertEquals(3, cache.getEvictionCount());
+		cache.put(33, 33);
+		cache.put(34, 34);
+		assertEquals(32, cache.size());
+		assertEquals(3, cache.getEvictionCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadMaxSize() {
+		new LruCache<String, String>(0);
+	}
+}
@@ -0,0 +1,58 @@
+package com.j256.simplemagic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class LruContentInfoCacheTest {
+
+	@Test
+	public void testGetPut() {
+		LruContentInfoCache cache = new LruContentInfoCache(10);
+		ContentFingerprint fingerprint = fingerprint("hello there", false);
+		assertNull(cache.get(fingerprint));
+		ContentInfo info = new ContentInfo(ContentType.TEXT);
+		cache.put(fingerprint, info);
+		// found by the fingerprint of the same bytes in a different array
+		assertSame(info, cache.get(fingerprint("hello there", false)));
+		// but not if there was more content after them or they are different
+		assertNull(cache.get(fingerprint("hello there", true)));
+		assertNull(cache.get(fingerprint("hello where", false)));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testFingerprint() {
+		byte[] bytes = new byte[100];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		ContentFingerprint fingerprint = ContentFingerprint.fromBytes(bytes, 0, bytes.length, false);
+		assertEquals(bytes.length, fingerprint.getLength());
+		assertFalse(fingerprint.isTruncated());
+		// same bytes at a different offset
+		byte[] shifted = new byte[bytes.length + 3];
+		System.arraycopy(bytes, 0, shifted, 3, bytes.length);
+		assertEquals(fingerprint, ContentFingerprint.fromBytes(shifted, 3, bytes.length, false));
+		assertEquals(fingerprint.toString(), ContentFingerprint.fromBytes(shifted, 3, bytes.length, false).toString());
+		// every byte, including the ones past the last 8 byte block, changes the hash
+		for (int i = 0; i < bytes.length; i++) {
+			byte[] changed = bytes.clone();
+			changed[i]++;
+			long hash = ContentFingerprint.fromBytes(changed, 0, bytes.length, false).getHash();
+			assertFalse(fingerprint.getHash() == hash);
+		}
+		assertFalse(fingerprint.equals(ContentFingerprint.fromBytes(bytes, 0, bytes.length - 1, false)));
+		assertFalse(fingerprint.equals(ContentFingerprint.fromBytes(bytes, 0, bytes.length, true)));
+	}
+
+	private ContentFingerprint fingerprint(String str, boolean truncated) {
+		byte[] bytes = str.getBytes();
+		return ContentFingerprint.fromBytes(bytes, 0, bytes.length, truncated);
+	}
+}
@@ -28,4 +28,15 @@ public class BigEndianConverterTest {
 		// BADC: 1*2^21 + 2*2^14 + 3*2^7 + 4
 		assertEquals(2130308, val);
 	}
+
+	@Test
+	public void testConvertLong() {
+		EndianConverter converter = EndianType.BIG.getConverter();
+		byte[] bytes = new byte[] { 10, 127, -100, 0, -128, 1, 62, -62 };
+		for (int size = 1; size <= 8; size++) {
+			assertEquals((long) converter.convertNumber(0, bytes, size), converter.convertLong(0, bytes, size));
+			assertEquals((long) converter.convertId3(8 - size, bytes, size),
+					converter.convertId3Long(8 - size, bytes, size));
+		}
+	}
 }
@@ -28,4 +28,15 @@ public class LittleEndianConverterTest {
 		// BADC: 4*2^21 + 3*2^14 + 2*2^7 + 1
 		assertEquals(8438017, val);
 	}
+
+	@Test
+	public void testConvertLong() {
+		EndianConverter converter = EndianType.LITTLE.getConverter();
+		byte[] bytes = new byte[] { 10, 127, -100, 0, -128, 1, 62, -62 };
+		for (int size = 1; size <= 8; size++) {
+			assertEquals((long) converter.convertNumber(0, bytes, size), converter.convertLong(0, bytes, size));
+			assertEquals((long) converter.convertId3(8 - size, bytes, size),
+					converter.convertId3Long(8 - size, bytes, size));
+		}
+	}
 }
@@ -35,6 +35,19 @@ public class MiddleEndianConverterTest {
 		assertEquals(4211203, val);
 	}
 
+	@Test
+	public void testConvertLong() {
+		EndianConverter converter = EndianType.MIDDLE.getConverter();
+		byte[] bytes = new byte[] { 0, 0, 1, 2, 3, 4 };
+		assertEquals(33620995, converter.convertLong(2, bytes, 4));
+		assertEquals(4211203, converter.convertId3Long(2, bytes, 4));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testConvertLongInvalidLength() {
+		EndianType.MIDDLE.getConverter().convertLong(0, new byte[8], 8);
+	}
+
 	@Test(expected = UnsupportedOperationException.class)
 	public void testInvalidLength() {
 		EndianType.MIDDLE.getConverter().convertNumber(0, new byte[0], 2);
@@ -0,0 +1,170 @@
+package com.j256.simplemagic.entries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.j256.simplemagic.ContentInfo;
+import com.j256.simplemagic.ContentInfoUtil;
+
+public class CompiledTestTest {
+
+	private static final File FILES_DIR = new File("target/test-classes/files");
+
+	@Test
+	public void testCompile() throws IOException {
+		MagicEntries entries = readEntries("0 belong 0x12345678 big\n" //
+				+ "0 lequad&0xff >3 little\n" //
+				+ "0 ubyte ^0x80 byte\n" //
+				+ "0 melong 1 middle\n" //
+				+ ">4 medate x date\n" //
+				+ "0 string ABCD string\n" //
+				+ "0 string/c abcd case\n" //
+				+ "0 search/10 abcd search\n" //
+				+ "0 regex abcd regex\n");
+		List<MagicEntry> list = entries.getEntryList();
+		assertNotNull(CompiledTest.compile(list.get(0)));
+		assertNotNull(CompiledTest.compile(list.get(1)));
+		assertNotNull(CompiledTest.compile(list.get(2)));
+		assertNotNull(CompiledTest.compile(list.get(3)));
+		// no test value
+		assertNull(CompiledTest.compile(list.get(3).getChildren().get(0)));
+		assertNotNull(CompiledTest.compile(list.get(4)));
+		assertNull(CompiledTest.compile(list.get(5)));
+		assertNull(CompiledTest.compile(list.get(6)));
+		assertNull(CompiledTest.compile(list.get(7)));
+	}
+
+	@Test
+	public void testOperators() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		String[] types = new String[] { "byte", "ubyte", "beshort", "ubeshort", "leshort", "belong", "ubelong",
+				"lelong", "ulelong", "melong", "bequad", "lequad", "ulequad", "beid3", "bedate", "leldate" };
+		String[] tests = new String[] { "0x80", "=-1", "!0", ">0x7f", "<-2", "&0x81", "^0x81", "~0x7e", ">0xF0000000",
+				"<0x8000" };
+		for (String type : types) {
+			for (String test : tests) {
+				sb.append("0 ").append(type).append(' ').append(test).append(' ').append(type).append(' ');
+				sb.append(test).append(" %d\n");
+				sb.append("0 ").append(type).append("&0xf0f0 ").append(test).append(' ').append(type);
+				sb.append(" masked ").append(test).append('\n');
+				sb.append(">1 ").append(type).append(' ').append(test).append(" then %x\n");
+			}
+		}
+		MagicEntries compiled = readEntries(sb.toString());
+		assertEquals(types.length * tests.length * 2, compiled.getEntryList().size());
+		MagicEntries interpreted = readEntries(sb.toString());
+		interpreted.setCompileTests(false);
+		Random random = new Random(123);
+		List<byte[]> inputs = new ArrayList<byte[]>();
+		for (int i = 0; i < 2000; i++) {
+			byte[] bytes = new byte[1 + random.nextInt(10)];
+			random.nextBytes(bytes);
+			if (i % 3 == 0) {
+				// lots of high bits to test the signs
+				for (int j = 0; j < bytes.length; j++) {
+					bytes[j] |= 0x80;
+				}
+			}
+			inputs.add(bytes);
+		}
+		assertSameMatches(interpreted, compiled, inputs);
+	}
+
+	@Test
+	public void testSameAsInterpreted() throws IOException {
+		MagicEntries compiled = readInternalEntries();
+		MagicEntries interpreted = readInternalEntries();
+		interpreted.setCompileTests(false);
+		List<byte[]> inputs = new ArrayList<byte[]>();
+		File[] files = FILES_DIR.listFiles();
+		assertNotNull(files);
+		Random random = new Random(456);
+		for (File file : files) {
+			byte[] bytes = readFile(file);
+			inputs.add(bytes);
+			// change some of the bytes at the start to get to other entries
+			for (int i = 0; i < 20; i++) {
+				byte[] changed = bytes.clone();
+				for (int j = 0; j < 4 && changed.length > 0; j++) {
+					changed[random.nextInt(Math.min(changed.length, 128))] = (byte) random.nextInt(256);
+				}
+				if (i % 5 == 0 && changed.length > 1) {
+					changed = Arrays.copyOf(changed, 1 + random.nextInt(Math.min(changed.length, 64)));
+				}
+				inputs.add(changed);
+			}
+		}
+		assertSameMatches(interpreted, compiled, inputs);
+	}
+
+	private void assertSameMatches(MagicEntries interpreted, MagicEntries compiled, List<byte[]> inputs) {
+		int matchCount = 0;
+		for (byte[] bytes : inputs) {
+			ContentInfo expected = interpreted.findMatch(bytes);
+			ContentInfo info = compiled.findMatch(bytes);
+			String label = Arrays.toString(Arrays.copyOf(bytes, Math.min(bytes.length, 16)));
+			if (expected == null) {
+				assertNull(label, info);
+				continue;
+			}
+			assertNotNull(label, info);
+			assertEquals(label, expected.toString(), info.toString());
+			assertEquals(label, expected.isPartial(), info.isPartial());
+			assertEquals(label, interpreted.findMimeType(bytes), compiled.findMimeType(bytes));
+			matchCount++;
+		}
+		// make sure that we are testing something
+		assertEquals(true, matchCount > inputs.size() / 4);
+	}
+
+	private MagicEntries readEntries(String magic) throws IOException {
+		MagicEntries entries = new MagicEntries();
+		entries.readEntries(new BufferedReader(new StringReader(magic)), null);
+		entries.optimizeFirstBytes();
+		return entries;
+	}
+
+	private MagicEntries readInternalEntries() throws IOException {
+		InputStream stream = getClass().getResourceAsStream("/magic.gz");
+		assertNotNull(stream);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(stream), "UTF-8"));
+		try {
+			MagicEntries entries = new MagicEntries();
+			entries.readEntries(reader, null);
+			entries.optimizeFirstBytes();
+			return entries;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private byte[] readFile(File file) throws IOException {
+		byte[] bytes = new byte[(int) Math.min(file.length(), ContentInfoUtil.DEFAULT_READ_SIZE)];
+		InputStream input = new FileInputStream(file);
+		try {
+			int numRead = input.read(bytes);
+			if (numRead < bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(numRead, 0));
+			}
+			return bytes;
+		} finally {
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.j256.simplemagic.entries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import com.j256.simplemagic.ContentInfo;
+import com.j256.simplemagic.ContentInfoUtil;
+
+public class MagicCompilerTest {
+
+	private static final String MAGIC_PATH = "src/test/resources/magic";
+
+	@Test
+	public void testNormalizeLine() {
+		assertNull(MagicCompiler.normalizeLine(""));
+		assertNull(MagicCompiler.normalizeLine("   \t "));
+		assertNull(MagicCompiler.normalizeLine("# comment"));
+		assertEquals("0\tstring\tPK\tzip", MagicCompiler.normalizeLine("0   string \t PK   zip"));
+		assertEquals(">>4\tbyte\tx", MagicCompiler.normalizeLine("  >>4 byte   x"));
+		// the whitespace in the format is shown to the user
+		assertEquals("0\tstring\t\\ a\tsome  space ", MagicCompiler.normalizeLine("0 string  \\ a  some  space "));
+		assertEquals("!:mime  application/zip", MagicCompiler.normalizeLine("!:mime  application/zip"));
+		// can't be split so it is left alone to generate the error
+		assertEquals("0 string", MagicCompiler.normalizeLine("0 string"));
+	}
+
+	@Test
+	public void testNormalizedSameEntries() throws IOException {
+		MagicEntries entries = new MagicEntries();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(MAGIC_PATH), "UTF-8"));
+		try {
+			entries.readEntries(reader, null);
+		} finally {
+			reader.close();
+		}
+		MagicEntries normalizedEntries = new MagicEntries();
+		normalizedEntries.readEntries(new BufferedReader(new StringReader(MagicCompiler.normalize(MAGIC_PATH))), null);
+		assertArrayEquals(compile(entries), compile(normalizedEntries));
+	}
+
+	@Test
+	public void testMain() throws IOException {
+		File compiledFile = File.createTempFile(getClass().getSimpleName(), ".db");
+		File normalizedFile = File.createTempFile(getClass().getSimpleName(), ".txt");
+		try {
+			MagicCompiler.main(new String[] { MAGIC_PATH, compiledFile.getPath(), normalizedFile.getPath(),
+					"src/test/resources/magic-unsupported" });
+			InputStream stream = new FileInputStream(compiledFile);
+			ContentInfoUtil util;
+			try {
+				util = new ContentInfoUtil(stream, null, null);
+			} finally {
+				stream.close();
+			}
+			byte[] bytes = "%PDF-1.4\n".getBytes();
+			ContentInfo info = util.findMatch(bytes);
+			assertNotNull(info);
+			assertEquals("application/pdf", info.getMimeType());
+			assertEquals(info.getMessage(), new ContentInfoUtil(normalizedFile).findMatch(bytes).getMessage());
+		} finally {
+			compiledFile.delete();
+			normalizedFile.delete();
+		}
+	}
+
+	private byte[] compile(MagicEntries entries) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		entries.writeCompiledEntries(outputStream);
+		return outputStream.toByteArray();
+	}
+}
@@ -0,0 +1,496 @@
+package com.j256.simplemagic.entries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.j256.simplemagic.ContentInfo;
+import com.j256.simplemagic.ContentInfoUtil;
+import com.j256.simplemagic.ContentInfoUtil.ErrorCallBack;
+import com.j256.simplemagic.entries.MagicMatcher.MutableOffset;
+
+public class MagicEntriesTest {
+
+	private static final File FILES_DIR = new File("target/test-classes/files");
+
+	@Test
+	public void testPrefixEntries() throws IOException {
+		MagicEntries entries = readEntries("0 string abcdef full\n" //
+				+ "0 string abcxyz other\n" //
+				+ "0 string >abcd greater\n" //
+				+ "0 string abc short\n" //
+				+ "0 belong 0x61626364 number\n");
+		// short patterns are not indexed, > is only indexed by the first byte
+		assertEquals(Arrays.asList("full", "greater", "number"), names(entries.findPrefixEntries(bytes("abcdefg"))));
+		assertEquals(Arrays.asList("other", "greater"), names(entries.findPrefixEntries(bytes("abcxyz"))));
+		assertEquals(Arrays.asList("greater"), names(entries.findPrefixEntries(bytes("abc"))));
+		assertEquals(Arrays.asList("greater"), names(entries.findPrefixEntries(bytes("azzzzz"))));
+		assertEquals(null, entries.findPrefixEntries(bytes("zzzzzz")));
+		ContentInfo info = entries.findMatch(bytes("abcxyz"));
+		assertNotNull(info);
+		assertEquals("other", info.getName());
+	}
+
+	@Test
+	public void testFindMatchInputStream() throws IOException {
+		MagicEntries entries = readEntries("0 string abc short\n" //
+				+ "100000 string xyz large\n");
+		ContentInfo info = entries.findMatch(new ByteArrayInputStream(bytes("abcdef")), 10, null);
+		assertNotNull(info);
+		assertEquals("short", info.getName());
+		// the read-size is larger than the copy buffer that is kept
+		byte[] bytes = new byte[100010];
+		System.arraycopy(bytes("xyz"), 0, bytes, 100000, 3);
+		info = entries.findMatch(new ByteArrayInputStream(bytes), bytes.length, null);
+		assertNotNull(info);
+		assertEquals("large", info.getName());
+		assertEquals(ContentInfo.EMPTY_INFO, entries.findMatch(new ByteArrayInputStream(bytes("abc")), 0, null));
+		assertNull(entries.findMatch(new ByteArrayInputStream(new byte[0]), 10, null));
+	}
+
+	@Test
+	public void testFixedOffsetFilter() throws IOException {
+		MagicEntries entries = readEntries("0 string abcdef full\n" //
+				+ "4 string ustar tar\n" //
+				+ "2 beshort 0x6364 short\n" //
+				+ "2 beshort&0xff00 0x6300 masked\n" //
+				+ "10 string >a greater\n" //
+				+ "0 search/10 ustar search\n");
+		assertEquals(Arrays.asList("full", "short", "masked", "greater", "search"),
+				names(entries.findCandidateEntries(bytes("abcdefghijk"))));
+		assertEquals(Arrays.asList("tar", "masked", "greater", "search"),
+				names(entries.findCandidateEntries(bytes("zzzzustarzzz"))));
+		// too short for the tests at larger offsets
+		assertEquals(Arrays.asList("full", "short", "masked", "greater", "search"),
+				names(entries.findCandidateEntries(bytes("abcdef"))));
+		assertEquals(Arrays.asList("masked", "greater", "search"), names(entries.findCandidateEntries(bytes("zz"))));
+		ContentInfo info = entries.findMatch(bytes("zzzzustarzzz"));
+		assertNotNull(info);
+		assertEquals("tar", info.getName());
+	}
+
+	@Test
+	public void testFixedOffsetFilterFewerCandidates() throws IOException {
+		MagicEntries entries = readInternalEntries();
+		long total = 0;
+		long candidateTotal = 0;
+		File[] files = FILES_DIR.listFiles();
+		assertNotNull(files);
+		for (File file : files) {
+			byte[] bytes = readFile(file);
+			total += entries.getEntryList().size();
+			candidateTotal += entries.findCandidateEntries(bytes).size();
+		}
+		assertTrue(candidateTotal < total);
+	}
+
+	@Test
+	public void testNumberEqualsDispatch() throws IOException {
+		MagicEntries entries = readEntries("0 beshort&0xfff0 0x6160 first\n" //
+				+ "0 beshort&0xfff0 0x7a70 second\n" //
+				+ "0 beshort&0xfff0 0x6160 third\n" //
+				+ "0 beshort&0xfff0 >0x6160 greater\n" //
+				+ "2 ubyte&0xf0 0x60 fourth\n" //
+				+ "2 ubyte&0xf0 0x70 fifth\n");
+		assertEquals(Arrays.asList("first", "third", "greater", "fourth"),
+				names(entries.findCandidateEntries(bytes("abcd"))));
+		assertEquals(Arrays.asList("second", "greater", "fifth"), names(entries.findCandidateEntries(bytes("zzzz"))));
+		// not enough bytes for the ubyte at offset 2
+		assertEquals(Arrays.asList("second", "greater"), names(entries.findCandidateEntries(bytes("zz"))));
+		ContentInfo info = entries.findMatch(bytes("zzzz"));
+		assertNotNull(info);
+		assertEquals("second", info.getName());
+	}
+
+	@Test
+	public void testNumberEqualsDispatchSameAsEachEntry() throws IOException {
+		MagicEntries entries = readInternalEntries();
+		List<MagicEntry> entryList = entries.getEntryList();
+		NumberEqualsDispatch dispatch = new NumberEqualsDispatch(entryList);
+		int[] entryIndexes = dispatch.getEntryIndexes();
+		assertTrue(entryIndexes.length > 0);
+		File[] files = FILES_DIR.listFiles();
+		assertNotNull(files);
+		long[] candidates = new long[(entryList.size() + 63) / 64];
+		int matchCount = 0;
+		for (File file : files) {
+			byte[] bytes = readFile(file);
+			Arrays.fill(candidates, -1L);
+			dispatch.filterCandidates(bytes, candidates);
+			// the entries that are left are the ones whose number test matches when they are tested one at a time
+			for (int entryIndex : entryIndexes) {
+				MagicEntry entry = entryList.get(entryIndex);
+				int offset = entry.getFixedOffset();
+				MagicMatcher matcher = entry.getMatcher();
+				Object val = matcher.extractValueFromBytes(offset, bytes, false);
+				boolean matches = (val != null && matcher.isMatch(entry.getTestValue(), entry.getAndValue(),
+						entry.isUnsignedType(), val, new MutableOffset(offset), bytes) != null);
+				boolean candidate = ((candidates[entryIndex >> 6] & (1L << entryIndex)) != 0);
+				assertEquals(file + ": " + entry, matches, candidate);
+				if (matches) {
+					matchCount++;
+				}
+			}
+		}
+		assertTrue(matchCount > 0);
+	}
+
+	@Test
+	public void testMultiPatternSearch() {
+		MultiPatternSearch search = new MultiPatternSearch();
+		int he = search.addPattern(bytes("he"));
+		int she = search.addPattern(bytes("she"));
+		int hers = search.addPattern(bytes("hers"));
+		assertEquals(he, search.addPattern(bytes("he")));
+		assertEquals(3, search.getPatternCount());
+		search.finish();
+		MultiPatternSearch.Hits hits = search.findHits(bytes("ushers she"));
+		assertEquals(2, hits.findOffset(he, 0));
+		assertEquals(8, hits.findOffset(he, 3));
+		assertEquals(-1, hits.findOffset(he, 9));
+		assertEquals(1, hits.findOffset(she, 0));
+		assertEquals(7, hits.findOffset(she, 2));
+		assertEquals(2, hits.findOffset(hers, 0));
+		assertEquals(-1, hits.findOffset(hers, 3));
+	}
+
+	@Test
+	public void testSearchEntries() throws IOException {
+		MagicEntries entries = readEntries("0 search/10 ustar tar\n" //
+				+ ">&0 search/5 zip zip\n" //
+				+ "0 search/10/c hello hello\n");
+		ContentInfo info = entries.findMatch(bytes("abcustarabczip"));
+		assertNotNull(info);
+		assertEquals("tar", info.getName());
+		assertEquals("tar zip", info.getMessage());
+		info = entries.findMatch(bytes("abcustarabcdefghzip"));
+		assertNotNull(info);
+		assertEquals("tar", info.getMessage());
+		info = entries.findMatch(bytes("abcHELLO"));
+		assertNotNull(info);
+		assertEquals("hello", info.getName());
+		assertNull(entries.findMatch(bytes("abcdefghijklmnopustar")));
+	}
+
+	@Test
+	public void testTextOnlyEntries() throws IOException {
+		MagicEntries entries = readEntries("0 search/10 hello text\n" //
+				+ "0 search/10 hello\0 binary\n" //
+				+ "0 regex ^wor[a-z]+ regex\n");
+		ContentInfo info = entries.findMatch(bytes("abc hello there"));
+		assertNotNull(info);
+		assertEquals("text", info.getName());
+		info = entries.findMatch(bytes("world"));
+		assertNotNull(info);
+		assertEquals("regex", info.getName());
+		// binary content so the text entries are skipped
+		info = entries.findMatch(new byte[] { 'a', 'h', 'e', 'l', 'l', 'o', 0, 1 });
+		assertNotNull(info);
+		assertEquals("binary", info.getName());
+		assertNull(entries.findMatch(new byte[] { 'w', 'o', 'r', 'l', 'd', 1 }));
+	}
+
+	@Test
+	public void testPrefixEntriesFewerThanFirstByte() throws IOException {
+		MagicEntries entries = readInternalEntries();
+		long firstByteTotal = 0;
+		long prefixTotal = 0;
+		File[] files = FILES_DIR.listFiles();
+		assertNotNull(files);
+		for (File file : files) {
+			byte[] bytes = readFile(file);
+			if (bytes.length == 0) {
+				continue;
+			}
+			int firstByteCount = 0;
+			for (MagicEntry entry : entries.getEntryList()) {
+				byte[] startingBytes = entry.getStartsWithByte();
+				if (startingBytes != null && startingBytes.length > 0 && startingBytes[0] == bytes[0]) {
+					firstByteCount++;
+				}
+			}
+			List<MagicEntry> prefixEntries = entries.findPrefixEntries(bytes);
+			int prefixCount = (prefixEntries == null ? 0 : prefixEntries.size());
+			assertTrue(file.getName(), prefixCount <= firstByteCount);
+			firstByteTotal += firstByteCount;
+			prefixTotal += prefixCount;
+		}
+		assertTrue(prefixTotal < firstByteTotal);
+	}
+
+	@Test
+	public void testNoAllocationsWithoutMatch() throws IOException {
+		java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocBean = (com.sun.management.ThreadMXBean) threadBean;
+		assumeTrue(allocBean.isThreadAllocatedMemorySupported() && allocBean.isThreadAllocatedMemoryEnabled());
+		MagicEntries entries = readEntries("0 string abcdef prefix\n" //
+				+ "0 string/c hello case\n" //
+				+ "0 search/100 needle search\n" //
+				+ "0 search/100/c haystack search-case\n" //
+				+ "0 regex ^[0-9]+z$ regex\n" //
+				+ "10 string xyz offset\n");
+		byte[] bytes = bytes("abcxyz some text\nwhich has\nseveral lines\nbut none match\n");
+		long threadId = Thread.currentThread().getId();
+		long allocated = 0;
+		// the first passes are to warm up the JIT
+		for (int pass = 0; pass < 3; pass++) {
+			long before = allocBean.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < 10000; i++) {
+				assertNull(entries.findMatch(bytes));
+			}
+			allocated = allocBean.getThreadAllocatedBytes(threadId) - before;
+		}
+		// the context is reused so only a match should allocate
+		assertTrue("allocated " + allocated + " bytes", allocated < 10000);
+	}
+
+	@Test
+	public void testMatchContextPerThread() throws Exception {
+		final MagicEntries entries = readInternalEntries();
+		File[] files = FILES_DIR.listFiles();
+		assertNotNull(files);
+		final List<byte[]> fileBytes = new ArrayList<byte[]>();
+		final List<String> expected = new ArrayList<String>();
+		for (File file : files) {
+			byte[] bytes = readFile(file);
+			fileBytes.add(bytes);
+			expected.add(String.valueOf(entries.findMatch(bytes)));
+		}
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int offset = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int pass = 0; pass < 20; pass++) {
+							for (int j = 0; j < fileBytes.size(); j++) {
+								// each thread goes through the files in a different order
+								int index = (j + offset * 7) % fileBytes.size();
+								assertEquals(expected.get(index),
+										String.valueOf(entries.findMatch(fileBytes.get(index))));
+							}
+						}
+					} catch (Throwable th) {
+						synchronized (failures) {
+							failures.add(th);
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(new ArrayList<Throwable>(), failures);
+	}
+
+	@Test
+	public void testLazyMessage() throws Exception {
+		MagicEntries entries = readEntries("0 string abc first\n" //
+				+ ">3 byte x \\b-%d\n" //
+				+ ">4 string xy second\n" //
+				+ ">>6 string z \\rcleared\n");
+		ContentInfo info = entries.findMatch(bytes("abc1xy"));
+		assertNotNull(info);
+		assertEquals("first", info.getName());
+		assertEquals("first-49 second", info.getMessage());
+		// rendered once
+		assertTrue(info.getMessage() == info.getMessage());
+		// the context is reused so the first info has to keep its own values
+		ContentInfo cleared = entries.findMatch(bytes("abc2xyz"));
+		assertEquals("cleared", cleared.getMessage());
+		assertEquals("first-49 second", info.getMessage());
+
+		// serialized as a regular content-info
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		ObjectOutputStream objectOutput = new ObjectOutputStream(outputStream);
+		objectOutput.writeObject(info);
+		objectOutput.close();
+		ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+		ContentInfo read = (ContentInfo) objectInput.readObject();
+		assertEquals(ContentInfo.class, read.getClass());
+		assertEquals(info.getName(), read.getName());
+		assertEquals(info.getMessage(), read.getMessage());
+		assertEquals(info.toString(), read.toString());
+	}
+
+	@Test
+	public void testFindMimeType() throws IOException {
+		MagicEntries entries = readEntries("0 string abc first\n" //
+				+ "!:mime text/first\n" //
+				+ ">3 string x with x\n" //
+				+ ">>4 string y and y\n" //
+				+ ">>>5 string z\n" //
+				+ "!:mime text/first-z\n" //
+				+ "0 string ab second\n" //
+				+ "!:mime text/second\n");
+		assertEquals("text/first-z", entries.findMimeType(bytes("abcxyz")));
+		// first is only a partial match so the second wins
+		assertEquals("text/second", entries.findMimeType(bytes("abcxy")));
+		assertEquals("text/second", entries.findMimeType(bytes("abcq")));
+		assertNull(entries.findMimeType(bytes("xyz")));
+		for (String str : new String[] { "abcxy", "abcxyz", "abcq" }) {
+			assertEquals(entries.findMatch(bytes(str)).getMimeType(), entries.findMimeType(bytes(str)));
+		}
+	}
+
+	@Test
+	public void testBuilderFrozen() throws IOException {
+		MagicEntries.Builder builder = new MagicEntries.Builder();
+		builder.readEntries(new BufferedReader(new StringReader("0 string abc first\n")), null);
+		MagicEntries entries = builder.build();
+		assertTrue(entries.isFrozen());
+		assertEquals("first", entries.findMatch(bytes("abcdef")).getName());
+		try {
+			entries.readEntries(new BufferedReader(new StringReader("0 string def second\n")), null);
+			fail("should have thrown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			entries.optimizeFirstBytes();
+			fail("should have thrown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			entries.setCompileTests(false);
+			fail("should have thrown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			builder.build();
+			fail("should have thrown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertFalse(new MagicEntries().isFrozen());
+	}
+
+	@Test
+	public void testParallelReadEntries() throws IOException {
+		String magic = readMagicText();
+		List<String> errors = new ArrayList<String>();
+		MagicEntries entries = new MagicEntries();
+		entries.readEntries(new BufferedReader(new StringReader(magic)), new ErrorListCallBack(errors), null);
+		List<String> parallelErrors = new ArrayList<String>();
+		MagicEntries parallelEntries = new MagicEntries();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			parallelEntries.readEntries(new BufferedReader(new StringReader(magic)),
+					new ErrorListCallBack(parallelErrors), pool);
+		} finally {
+			pool.shutdown();
+		}
+		assertFalse(errors.isEmpty());
+		assertEquals(errors, parallelErrors);
+		assertArrayEquals(compile(entries), compile(parallelEntries));
+	}
+
+	private MagicEntries readEntries(String magic) throws IOException {
+		return new MagicEntries.Builder().readEntries(new BufferedReader(new StringReader(magic)), null).build();
+	}
+
+	private MagicEntries readInternalEntries() throws IOException {
+		InputStream stream = getClass().getResourceAsStream("/magic.gz");
+		assertNotNull(stream);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(stream)));
+		try {
+			return new MagicEntries.Builder().readEntries(reader, null).build();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private String readMagicText() throws IOException {
+		InputStream stream = getClass().getResourceAsStream("/magic");
+		assertNotNull(stream);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+		try {
+			StringBuilder sb = new StringBuilder();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				sb.append(line).append('\n');
+			}
+			return sb.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private byte[] compile(MagicEntries entries) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		entries.writeCompiledEntries(outputStream);
+		return outputStream.toByteArray();
+	}
+
+	private byte[] readFile(File file) throws IOException {
+		byte[] bytes = new byte[(int) Math.min(file.length(), ContentInfoUtil.DEFAULT_READ_SIZE)];
+		InputStream input = new FileInputStream(file);
+		try {
+			int numRead = input.read(bytes);
+			if (numRead < bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(numRead, 0));
+			}
+			return bytes;
+		} finally {
+			input.close();
+		}
+	}
+
+	private byte[] bytes(String str) {
+		return str.getBytes();
+	}
+
+	private List<String> names(List<MagicEntry> entries) {
+		String[] names = new String[entries.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = entries.get(i).getName();
+		}
+		return Arrays.asList(names);
+	}
+
+	private static class ErrorListCallBack implements ErrorCallBack {
+
+		private final List<String> errors;
+
+		public ErrorListCallBack(List<String> errors) {
+			this.errors = errors;
+		}
+
+		@Override
+		public void error(String line, String details, Exception e) {
+			errors.add(details + ": " + line);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.j256.simplemagic.entries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class TextEncodingTest {
+
+	@Test
+	public void testAscii() {
+		assertEquals(TextEncoding.ASCII, TextEncoding.fromBytes("hello there\r\n\tthis is some text".getBytes()));
+		assertEquals(TextEncoding.ASCII, TextEncoding.fromBytes("x".getBytes()));
+		assertTrue(TextEncoding.ASCII.isText());
+	}
+
+	@Test
+	public void testBinary() {
+		assertEquals(TextEncoding.BINARY, TextEncoding.fromBytes(new byte[] { 'h', 'e', 'l', 'l', 'o', 0 }));
+		assertEquals(TextEncoding.BINARY,
+				TextEncoding.fromBytes(new byte[] { 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 0x7F }));
+		assertEquals(TextEncoding.BINARY, TextEncoding.fromBytes(new byte[] { (byte) 0x89, 'P', 'N', 'G', 1, 2 }));
+		assertFalse(TextEncoding.BINARY.isText());
+	}
+
+	@Test
+	public void testUtf8() {
+		Charset utf8 = Charset.forName("UTF-8");
+		assertEquals(TextEncoding.UTF_8, TextEncoding.fromBytes("café naïve €".getBytes(utf8)));
+		// cut off in the middle of the euro sign
+		byte[] bytes = "price €".getBytes(utf8);
+		byte[] truncated = new byte[bytes.length - 1];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		assertEquals(TextEncoding.UTF_8, TextEncoding.fromBytes(truncated));
+	}
+
+	@Test
+	public void testLatin1() {
+		assertEquals(TextEncoding.LATIN_1, TextEncoding.fromBytes("café ok".getBytes(Charset.forName("ISO-8859-1"))));
+	}
+
+	@Test
+	public void testUtf16() {
+		assertEquals(TextEncoding.UTF_16LE,
+				TextEncoding.fromBytes(new byte[] { (byte) 0xFF, (byte) 0xFE, 'h', 0, 'i', 0 }));
+		assertEquals(TextEncoding.UTF_16BE,
+				TextEncoding.fromBytes(new byte[] { (byte) 0xFE, (byte) 0xFF, 0, 'h', 0, 'i' }));
+		assertEquals(TextEncoding.BINARY,
+				TextEncoding.fromBytes(new byte[] { (byte) 0xFF, (byte) 0xFE, 1, 0, 'i', 0 }));
+	}
+
+	@Test
+	public void testTextString() {
+		assertTrue(TextEncoding.isTextString("<?xml version"));
+		assertTrue(TextEncoding.isTextString("café\n"));
+		assertFalse(TextEncoding.isTextString("FONT\0"));
+	}
+}
@@ -0,0 +1,55 @@
+package com.j256.simplemagic.types;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LineIndexTest {
+
+	@Test
+	public void testLines() {
+		LineIndex lineIndex = new LineIndex("first\r\nsecond\rthird\n\nfifth".getBytes());
+		assertEquals("fifth", lineIndex.getLine(4).toString());
+		assertEquals("first", lineIndex.getLine(0).toString());
+		assertEquals(0, lineIndex.getLineStart(0));
+		assertEquals("second", lineIndex.getLine(1).toString());
+		assertEquals(7, lineIndex.getLineStart(1));
+		assertEquals("third", lineIndex.getLine(2).toString());
+		assertEquals(14, lineIndex.getLineStart(2));
+		assertEquals("", lineIndex.getLine(3).toString());
+		assertEquals(20, lineIndex.getLineStart(3));
+		assertEquals(21, lineIndex.getLineStart(4));
+		assertNull(lineIndex.getLine(5));
+		assertEquals(-1, lineIndex.getLineStart(5));
+		assertNull(lineIndex.getLine(-1));
+	}
+
+	@Test
+	public void testTrailingLineFeed() {
+		LineIndex lineIndex = new LineIndex("one\n".getBytes());
+		assertEquals("one", lineIndex.getLine(0).toString());
+		assertNull(lineIndex.getLine(1));
+		assertNull(new LineIndex(new byte[0]).getLine(0));
+	}
+
+	@Test
+	public void testPartOfBytes() {
+		LineIndex lineIndex = new LineIndex(null);
+		lineIndex.reset("xx\none\ntwo\nyy".getBytes(), 3, 7);
+		assertEquals("one", lineIndex.getLine(0).toString());
+		assertEquals(0, lineIndex.getLineStart(0));
+		assertEquals("two", lineIndex.getLine(1).toString());
+		assertEquals(4, lineIndex.getLineStart(1));
+		assertNull(lineIndex.getLine(2));
+	}
+
+	@Test
+	public void testHighBytes() {
+		LineIndex lineIndex = new LineIndex(new byte[] { 'a', (byte) 0xE9, 'b' });
+		CharSequence line = lineIndex.getLine(0);
+		assertEquals(3, line.length());
+		assertEquals((char) 0xE9, line.charAt(1));
+		assertEquals("éb", line.subSequence(1, 3).toString());
+	}
+}
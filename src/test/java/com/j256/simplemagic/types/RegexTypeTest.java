@@ -2,6 +2,7 @@ package com.j256.simplemagic.types;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import org.junit.Test;
 
@@ -44,6 +45,29 @@ public class RegexTypeTest {
 		assertEquals("hrm\t\0\13\\wow", renderValue(extracted, type, new MagicFormatter("%s")));
 	}
 
+	@Test
+	public void testLineOffset() {
+		RegexType type = new RegexType();
+		Object test = type.convertTestString("regex", "hello[abc]");
+		byte[] bytes = "first line\r\nsecond helloa line".getBytes();
+		MutableOffset mutableOffset = new MutableOffset(1);
+		Object extracted = type.isMatch(test, null, false, null, mutableOffset, bytes);
+		assertNotNull(extracted);
+		assertEquals("helloa", renderValue(extracted, type, new MagicFormatter("%s")));
+		// the offset is in bytes after the match
+		assertEquals(25, mutableOffset.offset);
+		assertNull(type.isMatch(test, null, false, null, new MutableOffset(2), bytes));
+	}
+
+	@Test
+	public void testSharedLineIndex() {
+		RegexType type = new RegexType();
+		LineIndex lineIndex = new LineIndex("line one\nline two".getBytes());
+		assertEquals("one", type.isMatch(type.convertTestString("regex", "o[a-z]e"), new MutableOffset(0), lineIndex));
+		assertEquals("two", type.isMatch(type.convertTestString("regex", "t[a-z]o"), new MutableOffset(1), lineIndex));
+		assertNull(type.isMatch(type.convertTestString("regex", "t[a-z]o"), new MutableOffset(0), lineIndex));
+	}
+
 	@Test
 	public void testExtractValueFromBytes() {
 		new RegexType().extractValueFromBytes(0, null, true);
@@ -1,5 +1,6 @@
 package com.j256.simplemagic.types;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -85,4 +86,21 @@ public class SearchTypeTest {
 		info = type.convertTestString("search/9/b", str);
 		assertEquals("hel l o", type.isMatch(info, null, false, null, new MutableOffset(1), bytes));
 	}
+
+	@Test
+	public void testFoundOffsetMatch() {
+		SearchType type = new SearchType();
+		String str = "hello";
+		Object info = type.convertTestString("search/4", str);
+		assertArrayEquals(new byte[] { 'h', 'e', 'l', 'l', 'o' }, type.getSearchBytes(info));
+		MutableOffset mutableOffset = new MutableOffset(1);
+		assertEquals(str, type.isMatch(info, mutableOffset, 4));
+		assertEquals(9, mutableOffset.offset);
+		// past the end of the range
+		assertNull(type.isMatch(info, new MutableOffset(1), 10));
+		assertNull(type.isMatch(info, new MutableOffset(1), -1));
+		// flags need the full matching
+		assertNull(type.getSearchBytes(type.convertTestString("search/4/b", str)));
+		assertNull(type.getSearchBytes(type.convertTestString("search/4/c", str)));
+	}
 }
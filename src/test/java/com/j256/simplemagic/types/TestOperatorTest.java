@@ -0,0 +1,61 @@
+package com.j256.simplemagic.types;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.j256.simplemagic.endian.EndianType;
+
+public class TestOperatorTest {
+
+	private static final long[] VALUES = new long[] { 0, 1, 2, 0x7F, 0x80, 0xFF, 0x7FFF, 0x8000, 0xFFFF, 0x7FFFFFFFL,
+			0x80000000L, 0xFFFFFFFFL, 0x123456789AL, Long.MAX_VALUE, Long.MIN_VALUE, -1, -2, -0x80 };
+
+	@Test
+	public void testPrimitiveSameAsNumber() {
+		BaseLongType[] types = new BaseLongType[] { new ByteType(), new ShortType(EndianType.BIG),
+				new IntegerType(EndianType.LITTLE), new LongType(EndianType.BIG), new Id3LengthType(EndianType.BIG) };
+		for (BaseLongType type : types) {
+			for (TestOperator operator : TestOperator.values()) {
+				for (long testValue : VALUES) {
+					NumberComparison comparison = new NumberComparison(type, operator, testValue);
+					for (long extractedValue : VALUES) {
+						for (boolean unsignedType : new boolean[] { false, true }) {
+							String label = type.getClass().getSimpleName() + " " + operator + " " + extractedValue
+									+ " " + testValue + " " + unsignedType;
+							assertEquals(label, operator.doTest(unsignedType, (Number) extractedValue, testValue, type),
+									operator.doTest(unsignedType, extractedValue, testValue, type));
+							for (Long andValue : new Long[] { null, 0xFFL, 0xF0F0L }) {
+								assertEquals(label + " & " + andValue,
+										comparison.isMatch(andValue, unsignedType, (Number) extractedValue),
+										comparison.isMatch(andValue, unsignedType, extractedValue));
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testExtractLong() {
+		byte[] bytes = new byte[] { (byte) 0x81, 0x02, (byte) 0xF3, 0x04, 0x05, 0x06, 0x07, (byte) 0x88, 0x09 };
+		BaseLongType[] types = new BaseLongType[] { new ByteType(), new ShortType(EndianType.LITTLE),
+				new IntegerType(EndianType.BIG), new IntegerType(EndianType.MIDDLE), new LongType(EndianType.LITTLE) };
+		for (BaseLongType type : types) {
+			for (int offset = -1; offset <= bytes.length; offset++) {
+				Object value = type.extractValueFromBytes(offset, bytes, false);
+				if (type.hasBytes(offset, bytes)) {
+					assertEquals(type.endianConverter.convertNumber(offset, bytes, type.getBytesPerType()), value);
+					assertEquals(value, type.extractLong(offset, bytes));
+				} else {
+					assertEquals(null, value);
+				}
+			}
+		}
+		// the high bit of each byte is ignored
+		Id3LengthType id3Type = new Id3LengthType(EndianType.BIG);
+		assertEquals(0x01027304L, id3Type.extractLong(0, bytes));
+		assertEquals(0x01027304L, id3Type.extractValueFromBytes(0, bytes, false));
+	}
+}